@@ -0,0 +1,119 @@
+package telemetry;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Основа загрузчиков на {@link TmDecoder}: наследник задаёт декодер
+ * (и тем самым обработчик записей), счётчики и статистика параметров
+ * берутся у декодера.
+ */
+public abstract class AbstractTmReader implements TmReader {
+    protected Dim dim;
+    protected DatXML datXML;
+    protected TmDecoder decoder;
+
+    /** Статистика по именам параметров и количество записей, для которого она собрана */
+    private Map<String, TmParamStats> paramStatsByName;
+    private int paramStatsRecords = -1;
+
+    @Override
+    public void load(String filename, Dim dim, DatXML datXML) throws IOException {
+        this.dim = dim;
+        this.datXML = datXML;
+        TmLoadMetrics metrics = TmLoadMetrics.get();
+        metrics.beginDecode(this, filename);
+        try {
+            long start = System.nanoTime();
+            TmEvents.LoadPhase decodeEvent = TmEvents.LoadPhase.start("Разбор ТМ-файла", filename);
+            this.decoder = createDecoder(filename);
+            decode(filename);
+            decodeEvent.finish(decoder.getBytesNum(), decoder.getTotalRecords(), 0);
+            long decoded = System.nanoTime();
+            metrics.addPhase(TmLoadMetrics.Phase.DECODE, decoded - start);
+
+            TmEvents.LoadPhase groupEvent = TmEvents.LoadPhase.start("Группировка записей", filename);
+            finish();
+            groupEvent.finish(decoder.getBytesNum(), decoder.getTotalRecords(), getRecordsByName().size());
+            metrics.addPhase(TmLoadMetrics.Phase.GROUPING, System.nanoTime() - decoded);
+            metrics.storeChanged(this);
+        } finally {
+            metrics.endLoad();
+        }
+
+        System.out.println("File size: " + decoder.getBytesNum() + " bytes");
+        System.out.println("Total records: " + decoder.getTotalRecords());
+        System.out.println("Useful records: " + decoder.getUsefulRecords());
+    }
+
+    /**
+     * Создаёт декодер с обработчиком, собирающим записи.
+     * Вызывается в начале load, когда справочники уже заданы.
+     */
+    protected abstract TmDecoder createDecoder(String filename) throws IOException;
+
+    /**
+     * Разбирает файл созданным декодером.
+     */
+    protected void decode(String filename) throws IOException {
+        decoder.decodeFile(filename);
+    }
+
+    /**
+     * Вызывается после разбора всего файла.
+     */
+    protected void finish() {
+    }
+
+    /**
+     * Статистика параметра из накопленной декодером, без прохода по записям.
+     * Ряды с одинаковым именем объединяются.
+     */
+    @Override
+    public TmParamStats getParamStats(String name) {
+        return getAllParamStats().get(name);
+    }
+
+    @Override
+    public synchronized Map<String, TmParamStats> getAllParamStats() {
+        // При слежении за файлом декодер продолжает накапливать записи
+        if (paramStatsRecords != decoder.getTotalRecords()) {
+            paramStatsRecords = decoder.getTotalRecords();
+            paramStatsByName = paramStatsByName(decoder);
+        }
+        return paramStatsByName;
+    }
+
+    /** Статистика рядов декодера по именам параметров */
+    protected Map<String, TmParamStats> paramStatsByName(TmDecoder decoder) {
+        Map<String, TmParamStats> byName = new TreeMap<>();
+        for (int key = 0; key < 2 * TmColumnStore.UNKNOWN_FLAG; key++) {
+            TmParamStats stats = decoder.getParamStats(key);
+            if (stats != null) {
+                byName.computeIfAbsent(seriesName(key), k -> new TmParamStats())
+                        .merge(stats);
+            }
+        }
+        return Collections.unmodifiableMap(byName);
+    }
+
+    /** Имя ряда с ключом key (по умолчанию из справочника параметров) */
+    protected String seriesName(int key) {
+        return TmColumnStore.seriesName(key, datXML);
+    }
+
+    // Геттеры для статистики
+
+    public TmDecoder getDecoder() { return decoder; }
+    public long getBytesNum() { return decoder.getBytesNum(); }
+    @Override public int getTotalRecords() { return decoder.getTotalRecords(); }
+    @Override public int getServiceRecords() { return decoder.getServiceRecords(); }
+    @Override public int getUsefulRecords() { return decoder.getUsefulRecords(); }
+    @Override public int getUnknownRecords() { return decoder.getUnknownRecords(); }
+    @Override public int[] getTypeCounts() { return decoder.getTypeCounts(); }
+    @Override public int getPointLess4() { return decoder.getPointLess4(); }
+    @Override public int getPointGreater4() { return decoder.getPointGreater4(); }
+    @Override public int getCodeLess8() { return decoder.getCodeLess8(); }
+    @Override public int getCodeGreater8() { return decoder.getCodeGreater8(); }
+    @Override public int[] getDimensionCounts() { return decoder.getDimensionCounts(); }
+}
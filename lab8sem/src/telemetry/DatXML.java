@@ -2,24 +2,183 @@ package telemetry;
 
 import org.w3c.dom.*;
 import javax.xml.parsers.*;
-import javax.swing.*;
-import javax.swing.event.ListSelectionEvent;
-import java.awt.*;
+import javax.xml.stream.*;
 import java.io.*;
-import java.nio.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.List;
 
 /**
  * Загружает файл KNP-173.14.33.58.dat.xml, содержащий информацию о параметрах:
- * номер, имя, полное имя, возможные текстовые значения.
+ * номер, имя, полное имя, описание, вложенность параметров и текстовые
+ * значения кодов (элементы Textes/Text).
+ *
+ * Файл читается за один проход потоковым разборщиком (StAX), данные хранятся
+ * в массивах, индексированных номером параметра. Повторяющиеся строки
+ * (одинаковые тексты кодов) хранятся в пуле в одном экземпляре.
+ *
+ * {@link #loadCached} сохраняет справочник в двоичный снимок рядом с XML-файлом
+ * и при следующих запусках отображает снимок в память вместо разбора XML;
+ * строки декодируются из снимка при первом обращении.
  */
 public class DatXML {
-    private final Map<Integer, String> paramNames = new TreeMap<>();
-    private final Map<Integer, String> paramFullNames = new TreeMap<>();
-    private final Map<Integer, List<String>> paramTextValues = new HashMap<>();
+    private static final int NO_PARAM = -1;
+    private static final int[] NO_CODES = new int[0];
 
+    // Строки справочника; в массивах ниже хранятся их номера в пуле
+    private TmStringPool strings = new TmStringPool();
+
+    // Данные параметров по номеру (TmStringPool.NONE / NO_PARAM - нет)
+    private int[] names = new int[0];
+    private int[] fullNames = new int[0];
+    private int[] descriptions = new int[0];
+    private int[] parents = new int[0];
+    /** Коды текстовых значений параметра по возрастанию и номера их текстов */
+    private int[][] textCodes = new int[0][];
+    private int[][] texts = new int[0][];
+
+    // Номера параметров в порядке файла, в том числе первого уровня
+    private int[] order = new int[0];
+    private int count = 0;
+    private int[] roots = new int[0];
+    private int rootCount = 0;
+
+    // Дочерние параметры: первый ребёнок и следующий брат (в порядке файла)
+    private int[] firstChild = new int[0];
+    private int[] lastChild = new int[0];
+    private int[] nextSibling = new int[0];
+
+    /** Загружает справочник потоковым разбором (StAX) */
     public void load(String filename) throws Exception {
+        clear();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16)) {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                // Номера вложенных параметров, в которых находится разборщик
+                int[] stack = new int[16];
+                int depth = 0;
+                // Коды и номера текстов текущего параметра
+                List<Integer> codes = new ArrayList<>();
+                List<Integer> values = new ArrayList<>();
+
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String tag = xml.getLocalName();
+                        if (tag.equals("Param")) {
+                            int number = Integer.parseInt(xml.getAttributeValue(null, "number"));
+                            int parent = depth > 0 ? stack[depth - 1] : NO_PARAM;
+                            addParam(number, strings.add(xml.getAttributeValue(null, "name")),
+                                    strings.add(xml.getAttributeValue(null, "fullname")), parent);
+                            if (depth == stack.length) {
+                                stack = Arrays.copyOf(stack, depth * 2);
+                            }
+                            stack[depth++] = number;
+                            codes.clear();
+                            values.clear();
+                        } else if (depth > 0 && tag.equals("Description")) {
+                            descriptions[stack[depth - 1]] = strings.add(xml.getElementText().trim());
+                        } else if (depth > 0 && tag.equals("Text")) {
+                            codes.add(Integer.parseInt(xml.getAttributeValue(null, "number")));
+                            values.add(strings.add(xml.getElementText()));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String tag = xml.getLocalName();
+                        if (tag.equals("Textes") && depth > 0) {
+                            setTexts(stack[depth - 1], codes, values);
+                            codes.clear();
+                            values.clear();
+                        } else if (tag.equals("Param")) {
+                            depth--;
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Загружает справочник из двоичного снимка, если он соответствует файлу,
+     * иначе разбирает XML и сохраняет снимок для следующих запусков.
+     * Не удавшаяся запись снимка не считается ошибкой.
+     */
+    public void loadCached(String filename) throws Exception {
+        ByteBuffer snapshot = TmSnapshotFile.open(filename, TmSnapshotFile.KIND_DAT_XML);
+        if (snapshot != null) {
+            readSnapshot(snapshot);
+            return;
+        }
+        load(filename);
+        try {
+            TmSnapshotFile.write(filename, TmSnapshotFile.KIND_DAT_XML, this::writeSnapshot);
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить снимок справочника: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Тело снимка: массивы по номеру параметра, порядок и корни иерархии,
+     * таблицы текстов и пул строк
+     */
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        int length = names.length;
+        TmSnapshotFile.writeInts(out, names, length);
+        TmSnapshotFile.writeInts(out, fullNames, length);
+        TmSnapshotFile.writeInts(out, descriptions, length);
+        TmSnapshotFile.writeInts(out, parents, length);
+        TmSnapshotFile.writeInts(out, firstChild, length);
+        TmSnapshotFile.writeInts(out, nextSibling, length);
+        TmSnapshotFile.writeInts(out, order, count);
+        TmSnapshotFile.writeInts(out, roots, rootCount);
+        int withTexts = 0;
+        for (int[] codes : textCodes) {
+            if (codes != null) withTexts++;
+        }
+        out.writeInt(withTexts);
+        for (int number = 0; number < length; number++) {
+            if (textCodes[number] != null) {
+                out.writeInt(number);
+                TmSnapshotFile.writeInts(out, textCodes[number], textCodes[number].length);
+                TmSnapshotFile.writeInts(out, texts[number], texts[number].length);
+            }
+        }
+        strings.write(out);
+    }
+
+    private void readSnapshot(ByteBuffer buf) {
+        names = TmSnapshotFile.readInts(buf);
+        fullNames = TmSnapshotFile.readInts(buf);
+        descriptions = TmSnapshotFile.readInts(buf);
+        parents = TmSnapshotFile.readInts(buf);
+        firstChild = TmSnapshotFile.readInts(buf);
+        nextSibling = TmSnapshotFile.readInts(buf);
+        lastChild = null; // нужен только при построении
+        order = TmSnapshotFile.readInts(buf);
+        count = order.length;
+        roots = TmSnapshotFile.readInts(buf);
+        rootCount = roots.length;
+        textCodes = new int[names.length][];
+        texts = new int[names.length][];
+        int withTexts = buf.getInt();
+        for (int i = 0; i < withTexts; i++) {
+            int number = buf.getInt();
+            textCodes[number] = TmSnapshotFile.readInts(buf);
+            texts[number] = TmSnapshotFile.readInts(buf);
+        }
+        strings = TmStringPool.map(buf);
+    }
+
+    /**
+     * Прежняя загрузка через DOM (для сравнения в TmBenchmark).
+     * Заполняет те же данные, что и {@link #load}.
+     */
+    public void loadDom(String filename) throws Exception {
+        clear();
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         DocumentBuilder builder = factory.newDocumentBuilder();
         Document doc = builder.parse(new File(filename));
@@ -29,32 +188,210 @@ public class DatXML {
         for (int i = 0; i < paramNodes.getLength(); i++) {
             Element paramElem = (Element) paramNodes.item(i);
             int number = Integer.parseInt(paramElem.getAttribute("number"));
-            String name = paramElem.getAttribute("name");
-            String fullName = paramElem.getAttribute("fullname");
-
-            paramNames.put(number, name);
-            paramFullNames.put(number, fullName);
-
-            // Чтение дочерних элементов TextValue
-            NodeList textNodes = paramElem.getElementsByTagName("TextValue");
-            List<String> texts = new ArrayList<>();
-            for (int j = 0; j < textNodes.getLength(); j++) {
-                Element textElem = (Element) textNodes.item(j);
-                texts.add(textElem.getAttribute("value"));
+            Node parentNode = paramElem.getParentNode();
+            int parent = parentNode instanceof Element && ((Element) parentNode).getTagName().equals("Param")
+                    ? Integer.parseInt(((Element) parentNode).getAttribute("number")) : NO_PARAM;
+            String fullName = paramElem.hasAttribute("fullname") ? paramElem.getAttribute("fullname") : null;
+            addParam(number, strings.add(paramElem.getAttribute("name")), strings.add(fullName), parent);
+
+            // Собственные дочерние элементы Description и Textes/Text
+            List<Integer> codes = new ArrayList<>();
+            List<Integer> values = new ArrayList<>();
+            for (Node child = paramElem.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (!(child instanceof Element)) continue;
+                Element elem = (Element) child;
+                if (elem.getTagName().equals("Description")) {
+                    descriptions[number] = strings.add(elem.getTextContent().trim());
+                } else if (elem.getTagName().equals("Textes")) {
+                    NodeList textNodes = elem.getElementsByTagName("Text");
+                    for (int j = 0; j < textNodes.getLength(); j++) {
+                        Element textElem = (Element) textNodes.item(j);
+                        codes.add(Integer.parseInt(textElem.getAttribute("number")));
+                        values.add(strings.add(textElem.getTextContent()));
+                    }
+                }
             }
-            paramTextValues.put(number, texts);
+            if (!codes.isEmpty()) {
+                setTexts(number, codes, values);
+            }
+        }
+        trim();
+    }
+
+    private void clear() {
+        strings = new TmStringPool();
+        names = new int[0];
+        fullNames = new int[0];
+        descriptions = new int[0];
+        parents = new int[0];
+        textCodes = new int[0][];
+        texts = new int[0][];
+        firstChild = new int[0];
+        lastChild = new int[0];
+        nextSibling = new int[0];
+        order = new int[64];
+        count = 0;
+        roots = new int[16];
+        rootCount = 0;
+    }
+
+    /** Расширяет массивы, индексированные номером, до number включительно */
+    private void ensureNumber(int number) {
+        if (number < names.length) return;
+        int oldLength = names.length;
+        int length = Math.max(number + 1, oldLength + (oldLength >> 1));
+        names = Arrays.copyOf(names, length);
+        fullNames = Arrays.copyOf(fullNames, length);
+        descriptions = Arrays.copyOf(descriptions, length);
+        textCodes = Arrays.copyOf(textCodes, length);
+        texts = Arrays.copyOf(texts, length);
+        parents = Arrays.copyOf(parents, length);
+        firstChild = Arrays.copyOf(firstChild, length);
+        lastChild = Arrays.copyOf(lastChild, length);
+        nextSibling = Arrays.copyOf(nextSibling, length);
+        Arrays.fill(names, oldLength, length, TmStringPool.NONE);
+        Arrays.fill(fullNames, oldLength, length, TmStringPool.NONE);
+        Arrays.fill(descriptions, oldLength, length, TmStringPool.NONE);
+        Arrays.fill(parents, oldLength, length, NO_PARAM);
+        Arrays.fill(firstChild, oldLength, length, NO_PARAM);
+        Arrays.fill(lastChild, oldLength, length, NO_PARAM);
+        Arrays.fill(nextSibling, oldLength, length, NO_PARAM);
+    }
+
+    /**
+     * Добавляет параметр. Повторное описание того же номера (в справочнике
+     * такие есть) обновляет имя, но место в иерархии остаётся прежним.
+     */
+    private void addParam(int number, int name, int fullName, int parent) {
+        if (number < 0) {
+            throw new IllegalArgumentException("Отрицательный номер параметра: " + number);
+        }
+        ensureNumber(number);
+        boolean repeated = names[number] != TmStringPool.NONE;
+        names[number] = name;
+        fullNames[number] = fullName;
+        if (repeated) {
+            return;
+        }
+        if (count == order.length) order = Arrays.copyOf(order, count * 2);
+        order[count++] = number;
+        parents[number] = parent;
+        if (parent == NO_PARAM) {
+            if (rootCount == roots.length) roots = Arrays.copyOf(roots, rootCount * 2);
+            roots[rootCount++] = number;
+        } else if (firstChild[parent] == NO_PARAM) {
+            firstChild[parent] = number;
+            lastChild[parent] = number;
+        } else {
+            nextSibling[lastChild[parent]] = number;
+            lastChild[parent] = number;
+        }
+    }
+
+    /** Сохраняет таблицу "код -> текст", упорядочив её по кодам */
+    private void setTexts(int number, List<Integer> codes, List<Integer> values) {
+        Integer[] idx = new Integer[codes.size()];
+        for (int i = 0; i < idx.length; i++) idx[i] = i;
+        Arrays.sort(idx, Comparator.comparingInt(codes::get));
+        int[] c = new int[idx.length];
+        int[] v = new int[idx.length];
+        for (int i = 0; i < idx.length; i++) {
+            c[i] = codes.get(idx[i]);
+            v[i] = values.get(idx[i]);
         }
+        textCodes[number] = c;
+        texts[number] = v;
+    }
+
+    /** Обрезает вспомогательные массивы до фактического размера */
+    private void trim() {
+        order = Arrays.copyOf(order, count);
+        roots = Arrays.copyOf(roots, rootCount);
+    }
+
+    private boolean exists(int number) {
+        return number >= 0 && number < names.length && names[number] != TmStringPool.NONE;
+    }
+
+    /** Есть ли параметр с этим номером в справочнике */
+    public boolean contains(int number) {
+        return exists(number);
     }
 
     public String getName(int number) {
-        return paramNames.getOrDefault(number, "UNKNOWN_" + number);
+        return exists(number) ? strings.get(names[number]) : "UNKNOWN_" + number;
     }
 
     public String getFullName(int number) {
-        return paramFullNames.getOrDefault(number, "");
+        return exists(number) && fullNames[number] != TmStringPool.NONE ? strings.get(fullNames[number]) : "";
     }
 
+    /** Описание параметра (элемент Description) или пустая строка */
+    public String getDescription(int number) {
+        return exists(number) && descriptions[number] != TmStringPool.NONE ? strings.get(descriptions[number]) : "";
+    }
+
+    /** Номер родительского параметра или -1 для параметра первого уровня и неизвестного номера */
+    public int getParent(int number) {
+        return exists(number) ? parents[number] : NO_PARAM;
+    }
+
+    /** Номера вложенных параметров в порядке файла */
+    public int[] getChildren(int number) {
+        if (!exists(number)) return NO_CODES;
+        int n = 0;
+        for (int c = firstChild[number]; c != NO_PARAM; c = nextSibling[c]) n++;
+        int[] result = new int[n];
+        n = 0;
+        for (int c = firstChild[number]; c != NO_PARAM; c = nextSibling[c]) result[n++] = c;
+        return result;
+    }
+
+    /** Номера параметров первого уровня в порядке файла */
+    public int[] getRootParams() {
+        return roots.clone();
+    }
+
+    /** Путь параметра в иерархии: имена от корня через "/" */
+    public String getPath(int number) {
+        if (!exists(number)) return getName(number);
+        StringBuilder sb = new StringBuilder(strings.get(names[number]));
+        for (int p = parents[number]; p != NO_PARAM; p = parents[p]) {
+            sb.insert(0, '/').insert(0, strings.get(names[p]));
+        }
+        return sb.toString();
+    }
+
+    /** Номера всех параметров справочника по возрастанию */
+    public int[] getParamNumbers() {
+        int[] result = order.clone();
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Текстовые значения параметра в порядке возрастания кодов */
     public List<String> getTextValues(int number) {
-        return paramTextValues.getOrDefault(number, Collections.emptyList());
+        if (!exists(number) || texts[number] == null) return Collections.emptyList();
+        int[] ids = texts[number];
+        return new AbstractList<String>() {
+            @Override public String get(int index) { return strings.get(ids[index]); }
+            @Override public int size() { return ids.length; }
+        };
+    }
+
+    /** Коды, для которых у параметра есть текстовое значение, по возрастанию */
+    public int[] getTextCodes(int number) {
+        if (!exists(number) || textCodes[number] == null) return NO_CODES;
+        return textCodes[number].clone();
+    }
+
+    /**
+     * Текст значения кода параметра
+     * @return текст или null, если для кода текста нет
+     */
+    public String getText(int number, int code) {
+        if (!exists(number) || textCodes[number] == null) return null;
+        int i = Arrays.binarySearch(textCodes[number], code);
+        return i >= 0 ? strings.get(texts[number][i]) : null;
     }
 }
@@ -1,10 +1,5 @@
 package telemetry;
 
-import org.w3c.dom.*;
-import javax.xml.parsers.*;
-import javax.swing.*;
-import javax.swing.event.ListSelectionEvent;
-import java.awt.*;
 import java.io.*;
 import java.nio.*;
 import java.util.*;
@@ -13,33 +8,140 @@ import java.util.List;
 /**
  * Загружает файл dimens.ion, где каждая строка — текст размерности.
  * Номер строки (начиная с 1) соответствует коду размерности.
+ *
+ * Код размерности занимает один байт, поэтому таблица - массив из 256 строк,
+ * заполненный при загрузке; поиск не выделяет память и ничего не печатает.
+ * Коды без расшифровки учитываются в статистике загрузки
+ * ({@link #countMisses}, {@link #getMissedCodes}).
  */
 public class Dim {
-    private final Map<Integer, String> dimensions = new TreeMap<>();
+    /** Количество возможных кодов размерности */
+    public static final int CODE_COUNT = 256;
+    /** Коды меньше 32 задают формат значения, а не размерность */
+    public static final int FORMAT_CODES = 32;
+
+    private static final String[] FORMATS = new String[FORMAT_CODES];
+    private static final String[] MISSING = new String[CODE_COUNT];
+
+    static {
+        for (int code = 0; code < FORMAT_CODES; code++) {
+            FORMATS[code] = ("fmt" + code).intern();
+        }
+        for (int code = 0; code < CODE_COUNT; code++) {
+            MISSING[code] = ("[" + code + "]").intern();
+        }
+    }
+
+    /** Размерность из файла по коду (null - в файле нет) */
+    private final String[] dimensions = new String[CODE_COUNT];
 
     public void load(String filename) throws IOException {
+        Arrays.fill(dimensions, null);
         try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
             String line;
             line = reader.readLine();
             int lineNum = 1;
-            while ((line = reader.readLine()) != null) {
+            while ((line = reader.readLine()) != null && lineNum < CODE_COUNT) {
                 line = line.trim();
                 if (!line.isEmpty()) {
-                    dimensions.put(lineNum, line);
+                    dimensions[lineNum] = line.intern();
                 }
                 lineNum++;
             }
         }
-        String line = "";
         // Проверка: по заданию код 32 должен быть "%"
         // (если файл корректен, это выполняется автоматически)
     }
 
+    /**
+     * Загружает таблицу из двоичного снимка, если он соответствует файлу,
+     * иначе читает текстовый файл и сохраняет снимок для следующих запусков.
+     * Строк в таблице немного, поэтому из снимка они декодируются сразу.
+     */
+    public void loadCached(String filename) throws IOException {
+        ByteBuffer snapshot = TmSnapshotFile.open(filename, TmSnapshotFile.KIND_DIM);
+        if (snapshot != null) {
+            int[] codes = TmSnapshotFile.readInts(snapshot);
+            int[] ids = TmSnapshotFile.readInts(snapshot);
+            TmStringPool strings = TmStringPool.map(snapshot);
+            Arrays.fill(dimensions, null);
+            for (int i = 0; i < codes.length; i++) {
+                dimensions[codes[i]] = strings.get(ids[i]).intern();
+            }
+            return;
+        }
+        load(filename);
+        try {
+            TmSnapshotFile.write(filename, TmSnapshotFile.KIND_DIM, out -> {
+                TmStringPool strings = new TmStringPool();
+                int[] codes = new int[CODE_COUNT];
+                int[] ids = new int[CODE_COUNT];
+                int n = 0;
+                for (int code = 0; code < CODE_COUNT; code++) {
+                    if (dimensions[code] != null) {
+                        codes[n] = code;
+                        ids[n] = strings.add(dimensions[code]);
+                        n++;
+                    }
+                }
+                TmSnapshotFile.writeInts(out, codes, n);
+                TmSnapshotFile.writeInts(out, ids, n);
+                strings.write(out);
+            });
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить снимок размерностей: " + e.getMessage());
+        }
+    }
+
+    /** Задаёт размерность кода (например, из файла выгрузки) */
+    public void setDimension(int code, String dimension) {
+        dimensions[code] = dimension == null ? null : dimension.intern();
+    }
+
+    /** Есть ли в таблице размерность с этим кодом */
+    public boolean contains(int code) {
+        return code >= 0 && code < CODE_COUNT && dimensions[code] != null;
+    }
+
     /** Возвращает размерность по коду, или строку "[код]" если код не найден. */
     public String getDimension(int code) {
-        if (! dimensions.containsKey(code)){
-            System.out.println(code);
+        if (code < 0 || code >= CODE_COUNT) {
+            return "[" + code + "]";
+        }
+        String dimension = dimensions[code];
+        return dimension != null ? dimension : MISSING[code];
+    }
+
+    /** Строка размерности записи: коды меньше 32 задают формат ("fmtN"), остальные ищутся в таблице. */
+    public String getDimensionString(int code) {
+        if (code >= 0 && code < FORMAT_CODES) {
+            return FORMATS[code];
+        }
+        return getDimension(code);
+    }
+
+    /**
+     * Количество записей с кодом размерности, которого нет в таблице
+     * @param codeCounts количество записей по кодам размерности (256 элементов)
+     */
+    public int countMisses(int[] codeCounts) {
+        int misses = 0;
+        for (int code = FORMAT_CODES; code < CODE_COUNT; code++) {
+            if (dimensions[code] == null) {
+                misses += codeCounts[code];
+            }
+        }
+        return misses;
+    }
+
+    /** Коды размерности без расшифровки, встретившиеся в записях */
+    public List<Integer> getMissedCodes(int[] codeCounts) {
+        List<Integer> codes = new ArrayList<>();
+        for (int code = FORMAT_CODES; code < CODE_COUNT; code++) {
+            if (dimensions[code] == null && codeCounts[code] > 0) {
+                codes.add(code);
+            }
         }
-        return dimensions.getOrDefault(code, "[" + code + "]");
+        return codes;
     }
-}
\ No newline at end of file
+}
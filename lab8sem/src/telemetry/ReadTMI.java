@@ -3,7 +3,7 @@ package telemetry;
 import java.io.*;
 import java.util.*;
 
-public class ReadTMI {
+public class ReadTMI implements TmReader {
     // Константы
     private static final int SYSTEM_MESSAGE_PARAM = 0xFFFF;
 
@@ -44,10 +44,12 @@ public class ReadTMI {
     private int pointGreater4 = 0;
     private int codeLess8 = 0;
     private int codeGreater8 = 0;
+    private int[] dimensionCounts = new int[Dim.CODE_COUNT];
 
     // Результаты
     private List<TmDat> allRecords = new ArrayList<>();
     private Map<String, List<TmDat>> recordsByName = new TreeMap<>();
+    private TmRecordGroups groups;
 
     // Вспомогательные переменные для определения длины Point
     private boolean readingPointData = false;
@@ -60,9 +62,11 @@ public class ReadTMI {
      * @param datXML объект с данными из XML
      * @throws IOException при ошибках чтения
      */
+    @Override
     public void load(String filename, Dim dim, DatXML datXML) throws IOException {
         this.dim = dim;
         this.datXML = datXML;
+        this.groups = new TmRecordGroups(datXML);
         this.inputStream = new FileInputStream(filename);
 
         // Читаем первый заголовок (32 байта) - служебная запись "начало сеанса"
@@ -79,6 +83,7 @@ public class ReadTMI {
         }
 
         inputStream.close();
+        recordsByName = groups.toRecordsByName();
         System.out.println("File size: " + bytesNum + " bytes");
         System.out.println("Total records: " + totalRecords);
         System.out.println("Useful records: " + usefulRecords);
@@ -399,7 +404,7 @@ public class ReadTMI {
         record.setValueType(valueType);
 
         try {
-            long bits = Long.parseLong(tmpString, 16);
+            long bits = Long.parseUnsignedLong(tmpString, 16);
             record.setValue(Double.longBitsToDouble(bits));
         } catch (NumberFormatException e) {
             record.setValue(0.0);
@@ -467,7 +472,7 @@ public class ReadTMI {
     private void createUnknownRecord() {
         TmUnknown record = new TmUnknown();
         record.setNumber(paramNumber);
-        record.setName(getParamName() + " [unknown type]");
+        record.setName(groups.name(TmColumnStore.key(paramNumber, true)));
         record.setTime(milliseconds);
         record.setDimension(getDimensionString());
         record.setAttribute(attribute);
@@ -482,8 +487,7 @@ public class ReadTMI {
      */
     private void addRecord(TmDat record) {
         allRecords.add(record);
-        String name = record.getName();
-        recordsByName.computeIfAbsent(name, k -> new ArrayList<>()).add(record);
+        groups.add(TmColumnStore.key(record.getNumber(), record.getValueType() > 3), record);
     }
 
     /**
@@ -496,21 +500,18 @@ public class ReadTMI {
     }
 
     /**
-     * Возвращает имя параметра по номеру
+     * Возвращает имя параметра по номеру (строка общая для всех записей параметра)
      */
     private String getParamName() {
-        return datXML.getName(paramNumber);
+        return groups.name(paramNumber);
     }
 
     /**
      * Возвращает строку размерности
      */
     private String getDimensionString() {
-        if (dimensionCode >= 32) {
-            return dim.getDimension(dimensionCode);
-        } else {
-            return "fmt" + dimensionCode;
-        }
+        dimensionCounts[dimensionCode]++;
+        return dim.getDimensionString(dimensionCode);
     }
 
     /**
@@ -565,4 +566,8 @@ public class ReadTMI {
     public int getCodeGreater8() {
         return codeGreater8;
     }
-}
\ No newline at end of file
+
+    public int[] getDimensionCounts() {
+        return dimensionCounts;
+    }
+}
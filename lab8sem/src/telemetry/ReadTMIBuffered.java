@@ -0,0 +1,20 @@
+package telemetry;
+
+import java.util.*;
+
+/**
+ * Блочный декодер ТМ-файла, собирающий записи в объекты TmDat.
+ * Результат и счётчики совпадают с {@link ReadTMI}.
+ */
+public class ReadTMIBuffered extends AbstractTmReader {
+    protected TmRecordCollector collector;
+
+    @Override
+    protected TmDecoder createDecoder(String filename) {
+        collector = new TmRecordCollector(dim, datXML);
+        return new TmDecoder(collector);
+    }
+
+    public List<TmDat> getAllRecords() { return collector.getAllRecords(); }
+    @Override public Map<String, List<TmDat>> getRecordsByName() { return collector.getRecordsByName(); }
+}
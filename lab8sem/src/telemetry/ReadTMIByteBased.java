@@ -3,7 +3,7 @@ package telemetry;
 import java.io.*;
 import java.util.*;
 
-public class ReadTMIByteBased {
+public class ReadTMIByteBased implements TmReader {
     // Константы
     private static final int SYSTEM_MESSAGE_PARAM = 0xFFFF;
 
@@ -14,6 +14,7 @@ public class ReadTMIByteBased {
     // Результирующие коллекции
     private List<TmDat> allRecords = new ArrayList<>();
     private Map<String, List<TmDat>> recordsByName = new TreeMap<>();
+    private TmRecordGroups groups;
 
     // Статистика
     private int totalRecords = 0;
@@ -25,6 +26,7 @@ public class ReadTMIByteBased {
     private int pointGreater4 = 0;
     private int codeLess8 = 0;
     private int codeGreater8 = 0;
+    private int[] dimensionCounts = new int[Dim.CODE_COUNT];
 
     // Переменные состояния разбора
     private InputStream inputStream;
@@ -42,9 +44,11 @@ public class ReadTMIByteBased {
     private int codeLength;         // длина для Code/Point
     private TmDat currentRecord;    // создаваемый объект (для полезных)
 
+    @Override
     public void load(String filename, Dim dim, DatXML datXML) throws IOException {
         this.dim = dim;
         this.datXML = datXML;
+        this.groups = new TmRecordGroups(datXML);
         this.inputStream = new FileInputStream(filename);
 
         // Инициализация
@@ -79,6 +83,7 @@ public class ReadTMIByteBased {
         }
 
         inputStream.close();
+        recordsByName = groups.toRecordsByName();
 
         // Финальная статистика
         System.out.println("Всего байт: " + bytesNum);
@@ -101,8 +106,7 @@ public class ReadTMIByteBased {
                 // Для служебных записей счётчик увеличится позже, когда запись завершится
             } else {
                 // Полезная запись – создаём объект позже, когда узнаем тип
-                // Пока только запомним номер и имя
-                String name = datXML.getName(paramNumber);
+                // Пока только запомним номер
                 // Сам объект будет создан в processValueData после определения типа
                 // Но можно создать временный объект-заготовку
                 currentRecord = null; // создадим позже
@@ -304,17 +308,12 @@ public class ReadTMIByteBased {
     // Заполнение общих полей записи (кроме значения)
     private void fillCommonFields(TmDat rec) {
         rec.setNumber(paramNumber);
-        rec.setName(datXML.getName(paramNumber));
+        rec.setName(groups.name(paramNumber));
         rec.setTime(milliseconds);
         // Размерность: байт 6
         int dimCode = messageType; // на самом деле байт 6 – это размерность для полезных
-        String dimStr;
-        if (dimCode >= 32) {
-            dimStr = dim.getDimension(dimCode);
-        } else {
-            dimStr = "fmt" + dimCode;
-        }
-        rec.setDimension(dimStr);
+        dimensionCounts[dimCode & 0xFF]++;
+        rec.setDimension(dim.getDimensionString(dimCode));
         // Атрибут: старшие 4 бита байта 7 (у нас valueType хранит только младшие)
         // Надо бы сохранить полный байт 7 отдельно. Упростим: атрибут = 0.
         rec.setAttribute(0);
@@ -325,8 +324,7 @@ public class ReadTMIByteBased {
     private void finishRecord() {
         if (currentRecord != null) {
             allRecords.add(currentRecord);
-            String name = currentRecord.getName();
-            recordsByName.computeIfAbsent(name, k -> new ArrayList<>()).add(currentRecord);
+            groups.add(currentRecord.getNumber(), currentRecord);
             usefulRecords++;
             typeCounts[valueType]++; // valueType должен быть в 0..3 для известных, для unknown не попадаем сюда
             totalRecords++;
@@ -367,4 +365,5 @@ public class ReadTMIByteBased {
     public int getPointGreater4() { return pointGreater4; }
     public int getCodeLess8() { return codeLess8; }
     public int getCodeGreater8() { return codeGreater8; }
+    public int[] getDimensionCounts() { return dimensionCounts; }
 }
\ No newline at end of file
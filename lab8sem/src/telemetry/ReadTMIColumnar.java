@@ -0,0 +1,77 @@
+package telemetry;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Загрузчик ТМ-файла, складывающий записи в столбцовое хранилище
+ * {@link TmColumnStore}. Объекты TmDat создаются только при обращении
+ * к спискам из {@link #getRecordsByName()}.
+ * После загрузки ряды упорядочены по времени, выборка по интервалу
+ * времени ищет его границы двоичным поиском.
+ * Записи можно держать вне кучи ({@link #setStoreMemory}); такую память
+ * загрузчик отдаёт вызовом {@link #release}, когда его данные больше не нужны.
+ * Ряды можно хранить сжатыми ({@link #setCompressed}).
+ */
+public class ReadTMIColumnar extends AbstractTmReader {
+    protected TmColumnStore store = new TmColumnStore();
+    protected Map<String, List<TmDat>> recordsByName = new TreeMap<>();
+
+    /**
+     * Задаёт память вне кучи для записей (вызывается до загрузки)
+     * @param memory память или null для хранилища в куче
+     */
+    public void setStoreMemory(TmOffHeapMemory memory) {
+        replaceStore(memory, store.isCompressed());
+    }
+
+    /** Хранить ряды сжатыми (вызывается до загрузки) */
+    public void setCompressed(boolean compressed) {
+        replaceStore(store.getMemory(), compressed);
+    }
+
+    private void replaceStore(TmOffHeapMemory memory, boolean compressed) {
+        if (store.getKeys().length > 0) {
+            throw new IllegalStateException("Хранилище уже заполнено");
+        }
+        if (memory != store.getMemory()) {
+            store.release();
+        }
+        store = new TmColumnStore(memory, compressed);
+    }
+
+    /** Освобождает память хранилища вне кучи; списки записей после этого читать нельзя */
+    public void release() {
+        store.release();
+    }
+
+    @Override
+    protected TmDecoder createDecoder(String filename) throws IOException {
+        return new TmDecoder(store);
+    }
+
+    @Override
+    protected void finish() {
+        store.trimToSize();
+        store.sortByTime();
+        recordsByName = store.buildRecordsByName(datXML, dim);
+    }
+
+    @Override
+    public List<TmDat> query(String name, long from, long to) {
+        List<TmDat> records = recordsByName.get(name);
+        return records == null ? Collections.emptyList() : store.timeRange(records, from, to);
+    }
+
+    /**
+     * Ряды параметра (несколько, если у нескольких номеров одно имя),
+     * упорядоченные по времени; пустой список, если параметра нет
+     */
+    public List<TmSeries> getSeries(String name) {
+        List<TmDat> records = recordsByName.get(name);
+        return records == null ? Collections.emptyList() : store.seriesOf(records);
+    }
+
+    public TmColumnStore getStore() { return store; }
+    @Override public Map<String, List<TmDat>> getRecordsByName() { return recordsByName; }
+}
@@ -0,0 +1,39 @@
+package telemetry;
+
+import java.io.IOException;
+
+/**
+ * Загрузчик файла выгрузки {@link TmColumnarFile} (".tmc").
+ * Записи читаются блоками прямо в столбцовое хранилище, счётчики и статистика
+ * берутся из оглавления файла. Имена параметров и размерности тоже берутся
+ * из файла, переданные справочники не используются.
+ */
+public class ReadTMIColumnarFile extends ReadTMIColumnar {
+    private TmColumnarFile file;
+
+    @Override
+    protected TmDecoder createDecoder(String filename) throws IOException {
+        file = TmColumnarFile.open(filename);
+        dim = file.getDim();
+        return new TmDecoder(store, file.getCounts());
+    }
+
+    @Override
+    protected void decode(String filename) throws IOException {
+        file.decodeInto(store);
+    }
+
+    @Override
+    protected void finish() {
+        store.trimToSize();
+        store.sortByTime();
+        recordsByName = store.buildRecordsByName(this::seriesName, dim);
+    }
+
+    @Override
+    protected String seriesName(int key) {
+        return file.getName(key);
+    }
+
+    public TmColumnarFile getFile() { return file; }
+}
@@ -0,0 +1,69 @@
+package telemetry;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Загрузчик ТМ-файла, который ещё дописывается: после загрузки может следить
+ * за файлом ({@link TmFollower}) и добавлять дописанные записи в хранилище.
+ */
+public class ReadTMIFollow extends ReadTMIColumnar implements Closeable {
+    private TmFollower follower;
+
+    @Override
+    protected TmDecoder createDecoder(String filename) throws IOException {
+        follower = new TmFollower(filename);
+        return new TmDecoder(store);
+    }
+
+    @Override
+    protected void decode(String filename) throws IOException {
+        decoder.countSessionHeader();
+        follower.poll(decoder);
+    }
+
+    /**
+     * Запускает слежение за файлом. Дописанные записи приходят в onBatch
+     * отдельным хранилищем со своими счётчиками в потоке слежения; добавить их
+     * к загруженным нужно вызовом {@link #applyBatch} в том потоке, который читает данные.
+     * @param period период проверки размера файла, мс
+     */
+    public void startFollowing(long period, Consumer<TmFollower.Batch> onBatch) throws IOException {
+        follower.start(period, onBatch);
+    }
+
+    /**
+     * Добавляет к загруженным записи, дописанные в файл, и их счётчики.
+     * @return имена параметров, появившихся впервые
+     */
+    public List<String> applyBatch(TmFollower.Batch batch) {
+        decoder.addCounts(batch.decoder);
+        int[] batchKeys = batch.store.getKeys();
+        int[] newKeys = new int[batchKeys.length];
+        int n = 0;
+        for (int key : batchKeys) {
+            if (store.getSeries(key) == null) {
+                newKeys[n++] = key;
+            }
+        }
+        store.addAll(batch.store);
+        // Дописанные записи обычно новее загруженных, тогда сортировка ничего не делает
+        store.sortByTime(batchKeys);
+        List<String> names = store.addToRecordsByName(recordsByName, Arrays.copyOf(newKeys, n), datXML, dim);
+        TmLoadMetrics.get().storeChanged(this);
+        return names;
+    }
+
+    /** Смещение в файле сразу после последней полностью разобранной записи */
+    public long getDecodedOffset() {
+        return follower.getDecodedOffset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (follower != null) {
+            follower.close();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package telemetry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Загрузчик ТМ-файла через индекс {@link TmFileIndex}.
+ * Список параметров и общая статистика берутся из индекса, поэтому повторное
+ * открытие неизменённого файла не требует его разбора. Записи параметра
+ * разбираются при первом обращении к его списку (кроме размера списка,
+ * который известен из индекса) в собственное хранилище параметра: общее хранилище
+ * после загрузки не меняется, и потоки, читающие другие параметры, ничего не видят
+ * в полузаписанном виде.
+ */
+public class ReadTMIIndexed extends ReadTMIColumnar {
+    private String filename;
+    private TmFileIndex index;
+
+    @Override
+    protected TmDecoder createDecoder(String filename) throws IOException {
+        this.filename = filename;
+        this.index = TmFileIndex.open(filename);
+        return new TmDecoder(store, index.getCounts());
+    }
+
+    @Override
+    protected void decode(String filename) {
+        // Файл уже разобран при построении индекса или не требует разбора
+    }
+
+    @Override
+    protected void finish() {
+        Map<String, List<Integer>> keysByName = new TreeMap<>();
+        for (int key : index.getKeys()) {
+            keysByName.computeIfAbsent(TmColumnStore.seriesName(key, datXML), k -> new ArrayList<>()).add(key);
+        }
+        recordsByName = new TreeMap<>();
+        for (Map.Entry<String, List<Integer>> entry : keysByName.entrySet()) {
+            int[] keys = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            recordsByName.put(entry.getKey(), new LazySeries(entry.getKey(), keys));
+        }
+    }
+
+    @Override
+    public List<TmDat> query(String name, long from, long to) {
+        List<TmDat> records = recordsByName.get(name);
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        Loaded loaded = ((LazySeries) records).loaded();
+        return loaded.store.timeRange(loaded.records, from, to);
+    }
+
+    @Override
+    public List<TmSeries> getSeries(String name) {
+        List<TmDat> records = recordsByName.get(name);
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        Loaded loaded = ((LazySeries) records).loaded();
+        return loaded.store.seriesOf(loaded.records);
+    }
+
+    public TmFileIndex getIndex() { return index; }
+
+    /**
+     * Разбирает ряды одного имени в новое хранилище (той же памяти и того же вида, что общее).
+     * Хранилище заполняется целиком в вызывающем потоке до того, как его увидят другие.
+     */
+    private Loaded load(String name, int[] keys) {
+        TmColumnStore part = new TmColumnStore(store.getMemory(), store.isCompressed());
+        try {
+            for (int key : keys) {
+                index.decodeSeries(filename, key, part);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка чтения " + filename, e);
+        }
+        part.sortByTime(keys);
+        part.trimToSize();
+        Map<String, List<TmDat>> views = new HashMap<>();
+        part.addToRecordsByName(views, keys, datXML, dim);
+        return new Loaded(part, views.get(name));
+    }
+
+    /** Разобранные ряды одного имени: их хранилище и представление записей */
+    private static final class Loaded {
+        final TmColumnStore store;
+        final List<TmDat> records;
+
+        Loaded(TmColumnStore store, List<TmDat> records) {
+            this.store = store;
+            this.records = records;
+        }
+    }
+
+    /** Список записей, разбираемых из файла при первом обращении к элементам */
+    private class LazySeries extends AbstractList<TmDat> implements RandomAccess {
+        private final String name;
+        private final int[] keys;
+        private final int size;
+        /** Публикуется после полного разбора; читается без блокировки */
+        private volatile Loaded loaded;
+
+        LazySeries(String name, int[] keys) {
+            this.name = name;
+            this.keys = keys;
+            int n = 0;
+            for (int key : keys) {
+                n += index.getCount(key);
+            }
+            this.size = n;
+        }
+
+        /** Разобранные записи; параметр разбирается один раз, даже при обращении из нескольких потоков */
+        Loaded loaded() {
+            Loaded result = loaded;
+            if (result == null) {
+                synchronized (this) {
+                    result = loaded;
+                    if (result == null) {
+                        result = load(name, keys);
+                        loaded = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public TmDat get(int i) {
+            return loaded().records.get(i);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package telemetry;
+
+/**
+ * Загрузчик ТМ-файла, отображающий файл в память ({@link TmMappedDecoder}).
+ * Данные Point не копируются: записи получают срезы отображения.
+ */
+public class ReadTMIMapped extends ReadTMIBuffered {
+    private final int windowSize;
+
+    public ReadTMIMapped() {
+        this(1 << 30);
+    }
+
+    /**
+     * @param windowSize размер окна отображения в байтах
+     */
+    public ReadTMIMapped(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    protected TmDecoder createDecoder(String filename) {
+        collector = new TmRecordCollector(dim, datXML, true);
+        return new TmMappedDecoder(collector, windowSize);
+    }
+}
@@ -0,0 +1,254 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Параллельный декодер ТМ-файла.
+ * Файл делится на диапазоны байт, каждый разбирается в своём потоке
+ * (ForkJoinPool) в локальное столбцовое хранилище; затем результаты
+ * сливаются по порядку частей вместе со счётчиками.
+ *
+ * Начало первой записи в части ищется по структуре заголовков: подряд
+ * должны идти несколько правдоподобных заголовков (служебная запись 0xFFFF
+ * или тип значения не больше 3, близкие значения времени, длина Point в пределах
+ * файла). При слиянии граница каждой части сверяется с концом предыдущей;
+ * если эвристика ошиблась, часть разбирается заново от настоящей границы,
+ * поэтому результат всегда совпадает с последовательным разбором.
+ */
+public class ReadTMIParallel extends ReadTMIColumnar {
+    /** Сколько заголовков подряд проверяется при поиске границы */
+    private static final int CHAIN_LENGTH = 8;
+    /** Допустимый разброс времени между соседними записями цепочки, мс */
+    private static final long MAX_TIME_GAP = 3_600_000;
+    private static final long MIN_CHUNK_SIZE = 4 << 20;
+    private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+    private final int parallelism;
+
+    public ReadTMIParallel() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism количество потоков разбора
+     */
+    public ReadTMIParallel(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным");
+        }
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    protected TmDecoder createDecoder(String filename) {
+        return new ParallelDecoder(store, parallelism);
+    }
+
+    /**
+     * Декодер, разбирающий части файла параллельно и сливающий их в общее хранилище
+     */
+    private static class ParallelDecoder extends TmDecoder {
+        private final TmColumnStore target;
+        private final int parallelism;
+
+        ParallelDecoder(TmColumnStore target, int parallelism) {
+            super(target);
+            this.target = target;
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        protected void read(FileChannel channel) throws IOException {
+            long fileSize = channel.size();
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, fileSize / (parallelism * 4L) + 1);
+            chunkSize = Math.min(chunkSize, MAX_CHUNK_SIZE);
+
+            List<ChunkTask> tasks = new ArrayList<>();
+            for (long start = 0; start < fileSize; start += chunkSize) {
+                tasks.add(new ChunkTask(channel, fileSize, start, Math.min(fileSize, start + chunkSize)));
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new RecursiveTask<Void>() {
+                    @Override
+                    protected Void compute() {
+                        invokeAll(tasks);
+                        return null;
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+
+            // Слияние в порядке частей со сверкой границ
+            long expected = 0;
+            for (ChunkTask task : tasks) {
+                if (expected >= task.end) {
+                    // Предыдущая часть уже разобрала этот диапазон целиком
+                    continue;
+                }
+                ChunkResult result = task.getRawResult();
+                if (result == null || result.start != expected) {
+                    result = decodeChunk(channel, fileSize, expected, task.end, expected);
+                }
+                target.addAll(result.store);
+                addCounts(result.decoder);
+                expected = result.end;
+            }
+            counts.setBytesNum(fileSize);
+        }
+    }
+
+    /**
+     * Разбирает записи, начинающиеся в диапазоне [recordStart, end)
+     */
+    private static ChunkResult decodeChunk(FileChannel channel, long fileSize, long regionStart,
+                                           long end, long recordStart) throws IOException {
+        long regionEnd = Math.min(fileSize, end + TmDecoder.MAX_RECORD_SIZE);
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionEnd - regionStart);
+        TmColumnStore store = new TmColumnStore();
+        TmDecoder decoder = new TmDecoder(store);
+        region.position((int) (recordStart - regionStart));
+        decoder.decode(region, (int) (end - regionStart));
+        return new ChunkResult(recordStart, regionStart + region.position(), store, decoder);
+    }
+
+    /**
+     * Ищет в буфере начало записи в диапазоне [from, to).
+     * @return позиция найденной записи или -1
+     */
+    static int findRecordStart(ByteBuffer buf, int from, int to) {
+        for (int pos = from; pos < to; pos++) {
+            if (isRecordChain(buf, pos)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Проверяет, что с позиции pos идут CHAIN_LENGTH правдоподобных заголовков
+     * (или правдоподобные заголовки до конца буфера).
+     */
+    private static boolean isRecordChain(ByteBuffer buf, int pos) {
+        int limit = buf.limit();
+        if (limit - pos < TmDecoder.HEADER_SIZE) {
+            return false;
+        }
+        // Первая запись цепочки - служебная или известного типа
+        int firstParam = buf.getShort(pos) & 0xFFFF;
+        if (firstParam != TmDecoder.SYSTEM_MESSAGE_PARAM && (buf.get(pos + 7) & 0x0F) > 3) {
+            return false;
+        }
+        long firstTime = buf.getInt(pos + 2) & 0xFFFFFFFFL;
+
+        for (int n = 0; n < CHAIN_LENGTH; n++) {
+            if (limit - pos < TmDecoder.HEADER_SIZE) {
+                return true;
+            }
+            long time = buf.getInt(pos + 2) & 0xFFFFFFFFL;
+            if (Math.abs(time - firstTime) > MAX_TIME_GAP) {
+                return false;
+            }
+            int param = buf.getShort(pos) & 0xFFFF;
+            int size = TmDecoder.RECORD_SIZE;
+            if (param != TmDecoder.SYSTEM_MESSAGE_PARAM && (buf.get(pos + 7) & 0x0F) == 3) {
+                size = TmDecoder.HEADER_SIZE + Math.max(buf.getShort(pos + 10) & 0xFFFF, 1);
+            }
+            if (limit - pos < size) {
+                // Запись выходит за конец буфера: допустимо только в конце файла
+                return n > 0;
+            }
+            pos += size;
+        }
+        return true;
+    }
+
+    /** Результат разбора части: диапазон разобранных записей, локальные хранилище и счётчики */
+    private static class ChunkResult {
+        final long start;
+        final long end;
+        final TmColumnStore store;
+        final TmDecoder decoder;
+
+        ChunkResult(long start, long end, TmColumnStore store, TmDecoder decoder) {
+            this.start = start;
+            this.end = end;
+            this.store = store;
+            this.decoder = decoder;
+        }
+    }
+
+    /** Разбор одной части файла */
+    private static class ChunkTask extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long fileSize;
+        private final long start;
+        private final long end;
+
+        ChunkTask(FileChannel channel, long fileSize, long start, long end) {
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            try {
+                if (start == 0) {
+                    return decodeChunk(channel, fileSize, 0, end, 0);
+                }
+                long regionEnd = Math.min(fileSize, end + TmDecoder.MAX_RECORD_SIZE);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, regionEnd - start);
+                int first = findRecordStart(region, 0, (int) (end - start));
+                if (first < 0) {
+                    // Граница не найдена - часть будет разобрана при слиянии
+                    return null;
+                }
+                return decodeChunk(channel, fileSize, start, end, start + first);
+            } catch (IOException e) {
+                // Часть будет разобрана заново при слиянии, где ошибка и проявится
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Кривая масштабирования: время разбора файла при числе потоков от 1 до N.
+     * Запуск: java telemetry.ReadTMIParallel файл.KNP [N] [файл.dat.xml] [dimens.ion]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Использование: ReadTMIParallel файл.KNP [потоков] [файл.dat.xml] [dimens.ion]");
+            return;
+        }
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Dim dim = new Dim();
+        dim.load(args.length > 3 ? args[3] : "dimens.ion");
+        DatXML datXML = new DatXML();
+        datXML.load(args.length > 2 ? args[2] : "KNP-173.14.33.58.dat.xml");
+
+        long fileSize = new File(args[0]).length();
+        for (int threads = 1; threads <= maxThreads; threads = threads < 2 ? threads + 1 : threads * 2) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                ReadTMIParallel reader = new ReadTMIParallel(threads);
+                long t0 = System.nanoTime();
+                reader.load(args[0], dim, datXML);
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            System.out.printf("потоков %2d: %8.1f мс, %8.1f МБ/с%n", threads, best / 1e6,
+                    fileSize / (best / 1e9) / (1 << 20));
+        }
+    }
+}
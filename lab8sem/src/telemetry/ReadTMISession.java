@@ -0,0 +1,390 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Загрузчик сеанса из нескольких ТМ-файлов (продолжения после смены файла,
+ * приём несколькими станциями, повторные передачи).
+ * Каждый файл разбирается своим декодером в своё хранилище, файлы разбираются
+ * параллельно (ForkJoinPool). Затем ряды каждого параметра сливаются по времени
+ * k-путевым слиянием через кучу; точные повторы из пересекающихся приёмов
+ * (тот же ряд, время, тип, значение, атрибут и размерность, но из другого файла)
+ * отбрасываются при слиянии.
+ *
+ * Счётчики и статистика ведутся для каждого файла и для сеанса после слияния.
+ * Путь к сеансу в {@link #load} - пути файлов через {@link #SEPARATOR}.
+ */
+public class ReadTMISession extends ReadTMIColumnar {
+    /** Разделитель путей файлов сеанса */
+    public static final String SEPARATOR = File.pathSeparator;
+
+    private final int parallelism;
+    private List<String> files = Collections.emptyList();
+    private TmDecoder[] fileDecoders = new TmDecoder[0];
+    private long duplicates = 0;
+
+    public ReadTMISession() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism количество потоков разбора
+     */
+    public ReadTMISession(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /** Загружает сеанс из списка файлов */
+    public void load(List<String> filenames, Dim dim, DatXML datXML) throws IOException {
+        load(String.join(SEPARATOR, filenames), dim, datXML);
+    }
+
+    /** Пути файлов, записанные через {@link #SEPARATOR} */
+    public static List<String> splitPaths(String paths) {
+        List<String> result = new ArrayList<>();
+        for (String path : paths.split(SEPARATOR)) {
+            if (!path.trim().isEmpty()) {
+                result.add(path.trim());
+            }
+        }
+        return result;
+    }
+
+    /** Несколько ли файлов в строке путей */
+    public static boolean isSession(String paths) {
+        return splitPaths(paths).size() > 1;
+    }
+
+    @Override
+    protected TmDecoder createDecoder(String filename) {
+        files = Collections.unmodifiableList(splitPaths(filename));
+        return new SessionDecoder();
+    }
+
+    /**
+     * Декодер сеанса: разбирает файлы параллельно и сливает их ряды в общее хранилище.
+     * Его счётчики - счётчики сеанса после удаления повторов
+     * (служебные записи и размер - сумма по файлам).
+     */
+    private class SessionDecoder extends TmDecoder {
+        SessionDecoder() {
+            super(store);
+        }
+
+        @Override
+        public void decodeFile(String filename) throws IOException {
+            if (files.isEmpty()) {
+                throw new IOException("Не заданы файлы сеанса");
+            }
+            // Хранилища файлов лежат там же, где хранилище сеанса, и освобождаются после слияния
+            List<FileTask> tasks = new ArrayList<>();
+            try {
+                for (String file : files) {
+                    tasks.add(new FileTask(file, store.isOffHeap()
+                            ? new TmColumnStore(store.getMemory().newMemory()) : new TmColumnStore()));
+                }
+                ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, tasks.size()));
+                try {
+                    pool.invoke(new RecursiveTask<Void>() {
+                        @Override
+                        protected Void compute() {
+                            invokeAll(tasks);
+                            return null;
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    pool.shutdown();
+                }
+
+                TmColumnStore[] stores = new TmColumnStore[tasks.size()];
+                fileDecoders = new TmDecoder[tasks.size()];
+                for (int i = 0; i < tasks.size(); i++) {
+                    stores[i] = tasks.get(i).store;
+                    fileDecoders[i] = tasks.get(i).decoder;
+                    counts.addBytes(fileDecoders[i].getBytesNum());
+                    counts.countService(fileDecoders[i].getServiceRecords());
+                }
+                duplicates = merge(stores, this);
+            } finally {
+                for (FileTask task : tasks) {
+                    task.store.release();
+                }
+            }
+        }
+    }
+
+    /** Разбор одного файла сеанса в локальное хранилище */
+    private static class FileTask extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String filename;
+        final TmColumnStore store;
+        final TmDecoder decoder;
+
+        FileTask(String filename, TmColumnStore store) {
+            this.filename = filename;
+            this.store = store;
+            this.decoder = new TmDecoder(store);
+        }
+
+        @Override
+        protected Void compute() {
+            try {
+                decoder.decodeFile(filename);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            store.sortByTime();
+            return null;
+        }
+    }
+
+    /**
+     * Сливает упорядоченные ряды хранилищ файлов в хранилище сеанса
+     * @return количество отброшенных повторов
+     */
+    private long merge(TmColumnStore[] stores, TmDecoder counts) {
+        // Ключи рядов всех файлов по возрастанию
+        BitSet keys = new BitSet(2 * TmColumnStore.UNKNOWN_FLAG);
+        for (TmColumnStore s : stores) {
+            for (int key : s.getKeys()) {
+                keys.set(key);
+            }
+        }
+        SeriesMerge merge = new SeriesMerge(stores.length);
+        long dropped = 0;
+        for (int key = keys.nextSetBit(0); key >= 0; key = keys.nextSetBit(key + 1)) {
+            dropped += merge.run(key, stores, store, counts);
+        }
+        return dropped;
+    }
+
+    /**
+     * k-путевое слияние рядов одного ключа. Куча хранит номера файлов,
+     * упорядоченные по времени текущей записи, при равном времени - по номеру файла,
+     * поэтому записи с одним временем идут подряд и в порядке файлов.
+     * Записи текущего значения времени, уже добавленные в сеанс, запоминаются
+     * (индекс в ряду сеанса и номер файла) для поиска повторов. Запись сеанса
+     * поглощает не больше одного повтора из каждого другого файла, так что
+     * одинаковые записи внутри одного файла (k раз в одном, m в другом)
+     * дают в сеансе max(k, m) записей, а не одну.
+     */
+    private static class SeriesMerge {
+        private final TmSeries[] sources;
+        private final int[] positions;
+        private final int[] heap;
+        private int heapSize;
+        // Записи сеанса с текущим временем
+        private int[] groupIndexes = new int[16];
+        private int[] groupFiles = new int[16];
+        private int groupSize;
+        // Поглощённые повторы: запись группы и файл повтора
+        private int[] matchEntries = new int[16];
+        private int[] matchFiles = new int[16];
+        private int matchSize;
+
+        SeriesMerge(int fileCount) {
+            sources = new TmSeries[fileCount];
+            positions = new int[fileCount];
+            heap = new int[fileCount];
+        }
+
+        long run(int key, TmColumnStore[] stores, TmColumnStore target, TmDecoder counts) {
+            heapSize = 0;
+            for (int file = 0; file < stores.length; file++) {
+                TmSeries s = stores[file].getSeries(key);
+                sources[file] = s;
+                positions[file] = 0;
+                if (s != null && s.size() > 0) {
+                    heap[heapSize++] = file;
+                }
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+
+            int param = TmColumnStore.paramOf(key);
+            long dropped = 0;
+            long groupTime = -1;
+            groupSize = 0;
+            TmSeries merged = target.getSeries(key);
+            while (heapSize > 0) {
+                int file = heap[0];
+                TmSeries s = sources[file];
+                int i = positions[file];
+                long time = s.getTime(i);
+                if (time != groupTime) {
+                    groupTime = time;
+                    groupSize = 0;
+                    matchSize = 0;
+                }
+
+                if (isDuplicate(merged, s, i, file)) {
+                    dropped++;
+                } else {
+                    int type = s.getValueType(i);
+                    int attribute = s.getAttribute(i);
+                    int dimensionCode = s.getDimensionCode(i);
+                    long raw = s.getRawValue(i);
+                    if (type == 3) {
+                        ByteBuffer data = s.getPointData(i);
+                        target.addPoint(param, time, attribute, dimensionCode, data, data.position(), data.remaining());
+                    } else {
+                        target.add(param, time, type, attribute, dimensionCode, raw);
+                    }
+                    merged = target.getSeries(key);
+                    remember(merged.size() - 1, file);
+                    counts.countRecord(key, time, type, dimensionCode, raw);
+                }
+
+                if (++positions[file] < s.size()) {
+                    siftDown(0);
+                } else {
+                    heap[0] = heap[--heapSize];
+                    siftDown(0);
+                }
+            }
+            Arrays.fill(sources, null);
+            return dropped;
+        }
+
+        /**
+         * Ищет среди записей сеанса с тем же временем такую же запись из другого файла,
+         * ещё не поглотившую повтор из файла file; найденная поглощает эту запись
+         */
+        private boolean isDuplicate(TmSeries merged, TmSeries s, int i, int file) {
+            for (int g = 0; g < groupSize; g++) {
+                if (groupFiles[g] != file && !isMatched(g, file) && sameRecord(merged, groupIndexes[g], s, i)) {
+                    if (matchSize == matchEntries.length) {
+                        matchEntries = Arrays.copyOf(matchEntries, 2 * matchSize);
+                        matchFiles = Arrays.copyOf(matchFiles, 2 * matchSize);
+                    }
+                    matchEntries[matchSize] = g;
+                    matchFiles[matchSize] = file;
+                    matchSize++;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isMatched(int entry, int file) {
+            for (int m = 0; m < matchSize; m++) {
+                if (matchEntries[m] == entry && matchFiles[m] == file) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean sameRecord(TmSeries a, int i, TmSeries b, int j) {
+            int type = a.getValueType(i);
+            if (type != b.getValueType(j) || a.getAttribute(i) != b.getAttribute(j)
+                    || a.getDimensionCode(i) != b.getDimensionCode(j)) {
+                return false;
+            }
+            if (type == 3) {
+                return a.getPointData(i).equals(b.getPointData(j));
+            }
+            return a.getRawValue(i) == b.getRawValue(j);
+        }
+
+        private void remember(int index, int file) {
+            if (groupSize == groupIndexes.length) {
+                groupIndexes = Arrays.copyOf(groupIndexes, 2 * groupSize);
+                groupFiles = Arrays.copyOf(groupFiles, 2 * groupSize);
+            }
+            groupIndexes[groupSize] = index;
+            groupFiles[groupSize] = file;
+            groupSize++;
+        }
+
+        private boolean less(int fileA, int fileB) {
+            long timeA = sources[fileA].getTime(positions[fileA]);
+            long timeB = sources[fileB].getTime(positions[fileB]);
+            return timeA < timeB || (timeA == timeB && fileA < fileB);
+        }
+
+        private void siftDown(int i) {
+            int file = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!less(heap[child], file)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = file;
+        }
+    }
+
+    /** Файлы сеанса в порядке загрузки */
+    public List<String> getFiles() { return files; }
+
+    /** Декодер файла с номером index: его счётчики и статистика рядов (до слияния) */
+    public TmDecoder getFileDecoder(int index) { return fileDecoders[index]; }
+
+    /** Статистика параметров файла с номером index по именам (ряды с одним именем объединяются) */
+    public Map<String, TmParamStats> getFileParamStats(int index) {
+        return paramStatsByName(fileDecoders[index]);
+    }
+
+    /** Количество записей, отброшенных при слиянии как повторы */
+    public long getDuplicates() { return duplicates; }
+
+    /**
+     * Сеанс для проверки слияния: счётчики каждого файла и сеанса.
+     * Запуск: java telemetry.ReadTMISession файл1.KNP файл2.KNP ... [-xml файл.dat.xml] [-dim dimens.ion]
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> filenames = new ArrayList<>();
+        String xml = "KNP-173.14.33.58.dat.xml";
+        String dimens = "dimens.ion";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-xml") && i + 1 < args.length) {
+                xml = args[++i];
+            } else if (args[i].equals("-dim") && i + 1 < args.length) {
+                dimens = args[++i];
+            } else {
+                filenames.add(args[i]);
+            }
+        }
+        if (filenames.isEmpty()) {
+            System.err.println("Использование: ReadTMISession файл1.KNP файл2.KNP ... [-xml файл.dat.xml] [-dim dimens.ion]");
+            return;
+        }
+        Dim dim = new Dim();
+        dim.load(dimens);
+        DatXML datXML = new DatXML();
+        datXML.load(xml);
+
+        ReadTMISession session = new ReadTMISession();
+        long t0 = System.nanoTime();
+        session.load(filenames, dim, datXML);
+        long elapsed = System.nanoTime() - t0;
+        for (int i = 0; i < filenames.size(); i++) {
+            TmDecoder d = session.getFileDecoder(i);
+            System.out.printf("%s: записей %d, полезных %d, параметров %d%n", filenames.get(i),
+                    d.getTotalRecords(), d.getUsefulRecords(), session.getFileParamStats(i).size());
+        }
+        System.out.printf("Сеанс: записей %d, полезных %d, параметров %d, повторов отброшено %d, %.1f мс%n",
+                session.getTotalRecords(), session.getUsefulRecords(), session.getAllParamStats().size(),
+                session.getDuplicates(), elapsed / 1e6);
+    }
+}
@@ -6,26 +6,57 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Comparator;
+import java.util.Set;
+import java.util.function.IntFunction;
 
 public class TelemetryDialog extends JFrame {
     private Dim dim;
     private DatXML datXML;
-    private ReadTMI reader;
+    private TmReader reader;
 
     private JList<String> paramList;
     private DefaultListModel<String> listModel;
-    private JTextArea valueArea;
+    private JTabbedPane valueTabs;   // вкладка с таблицей значений на каждый параметр
+    // Данные графиков (пирамиды прореживания) последних CHART_CACHE_SIZE параметров
+    private final Map<String, TmChartData> chartCache = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TmChartData> eldest) {
+            return size() > CHART_CACHE_SIZE;
+        }
+    };
     private JTextArea statsArea;
 
     private JTextField txtTmFile;
+    private String loadedTmPath;     // файл, из которого загружен reader
     private JTextField txtXmlFile;
     private JTextField txtDimFile;
     private JButton btnLoad;
+    private JCheckBox chkFollow;
+    private JCheckBox chkOffHeap;
+    private JCheckBox chkCompressed;
+    // Загрузчики, данные которых читаются в фоне (графики, выгрузка), и число таких задач
+    private final Map<TmReader, Integer> backgroundUses = new IdentityHashMap<>();
+    // Загрузчики, заменённые новой загрузкой, которые ждут конца фоновых задач
+    private final Set<TmReader> retiredReaders = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Дописанные записи, отложенные, пока фоновые задачи читают данные слежения
+    // (добавление переносит ряды в новые буферы и освобождает старые)
+    private final List<TmFollower.Batch> pendingBatches = new ArrayList<>();
+
+    // Фильтр значений по времени
+    private JTextField txtTimeFrom;
+    private JTextField txtTimeTo;
 
     // Новая кнопка для просмотра файлов
     private JButton btnViewFile;
@@ -43,7 +74,7 @@ public class TelemetryDialog extends JFrame {
     private JButton btnSaveStats;
     private JButton btnClearValues;
 
-    // Названия пунктов общей статистики (13 пунктов)
+    // Названия пунктов общей статистики (14 пунктов)
     private static final String[] STAT_ITEMS_GENERAL = {
             "Общее количество записей",
             "Служебные записи",
@@ -57,10 +88,11 @@ public class TelemetryDialog extends JFrame {
             "Point < 4 байт",
             "Point > 4 байт",
             "Code < 8 разрядов",
-            "Code > 8 разрядов"
+            "Code > 8 разрядов",
+            "Записей с неизвестной размерностью"
     };
 
-    // Названия пунктов статистики по параметру (10 пунктов)
+    // Названия пунктов статистики по параметру (18 пунктов)
     private static final String[] STAT_ITEMS_PARAM = {
             "Всего записей параметра",
             "Long (0)",
@@ -71,9 +103,22 @@ public class TelemetryDialog extends JFrame {
             "Point < 4 байт",
             "Point > 4 байт",
             "Code < 8 разрядов",
-            "Code > 8 разрядов"
+            "Code > 8 разрядов",
+            "Первое время",
+            "Последнее время",
+            "Частота, зап/с",
+            "Среднее значение",
+            "СКО значения",
+            "Минимум",
+            "Максимум",
+            "Смен значения"
     };
 
+    // Период проверки размера файла в режиме слежения, мс
+    private static final long FOLLOW_PERIOD_MS = 1000;
+    // Сколько пирамид графиков держать в кэше
+    private static final int CHART_CACHE_SIZE = 8;
+
     public TelemetryDialog() {
         setTitle("Telemetry Viewer");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -85,6 +130,8 @@ public class TelemetryDialog extends JFrame {
         datXML = new DatXML();
         reader = null;
         updateStatsPlaceholder();
+        // Показатели загрузки видны в JMX ещё до первой загрузки
+        TmLoadMetrics.get();
     }
 
     public void setDefaultFiles(String tmFile, String xmlFile, String dimFile) {
@@ -116,7 +163,11 @@ public class TelemetryDialog extends JFrame {
         tmButtons.add(btnTm);
 
         JButton btnViewTm = new JButton("Просмотр");
-        btnViewTm.addActionListener(e -> viewFile(txtTmFile.getText(), "TM-файл"));
+        // У сеанса из нескольких файлов просматривается первый
+        btnViewTm.addActionListener(e -> {
+            List<String> paths = ReadTMISession.splitPaths(txtTmFile.getText());
+            viewFile(paths.isEmpty() ? "" : paths.get(0), "TM-файл");
+        });
         tmButtons.add(btnViewTm);
 
         gbc.gridx = 2; gbc.weightx = 0;
@@ -162,11 +213,32 @@ public class TelemetryDialog extends JFrame {
         gbc.gridx = 2; gbc.weightx = 0;
         filePanel.add(dimButtons, gbc);
 
-        // Кнопка загрузки
+        // Кнопка загрузки и режим слежения за дописываемым файлом
         gbc.gridx = 1; gbc.gridy = 3;
+        JPanel loadPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
         btnLoad = new JButton("Загрузить данные");
         btnLoad.addActionListener(this::loadDataAction);
-        filePanel.add(btnLoad, gbc);
+        loadPanel.add(btnLoad);
+
+        chkFollow = new JCheckBox("Следить за файлом");
+        chkFollow.setToolTipText("Догружать записи, дописываемые в TM-файл");
+        chkFollow.addActionListener(e -> {
+            if (!chkFollow.isSelected()) {
+                stopFollowing();
+            }
+        });
+        loadPanel.add(chkFollow);
+
+        chkOffHeap = new JCheckBox("Записи вне кучи");
+        chkOffHeap.setToolTipText("Хранить записи в памяти вне кучи Java (каталог файла отображения - свойство "
+                + TmOffHeapMemory.DIR_PROPERTY + ")");
+        loadPanel.add(chkOffHeap);
+
+        chkCompressed = new JCheckBox("Сжатые ряды");
+        chkCompressed.setToolTipText("Хранить ряды сжатыми блоками по " + TmCompressedSeries.BLOCK_SIZE
+                + " записей (меньше памяти, чтение медленнее)");
+        loadPanel.add(chkCompressed);
+        filePanel.add(loadPanel, gbc);
 
         add(filePanel, BorderLayout.NORTH);
 
@@ -176,12 +248,43 @@ public class TelemetryDialog extends JFrame {
         paramList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         paramList.addListSelectionListener(this::paramSelected);
 
-        valueArea = new JTextArea();
-        valueArea.setEditable(false);
-        valueArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        valueTabs = new JTabbedPane(JTabbedPane.TOP, JTabbedPane.SCROLL_TAB_LAYOUT);
+
+        // Фильтр по времени над значениями
+        JPanel timePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        timePanel.add(new JLabel("Время с:"));
+        txtTimeFrom = new JTextField(10);
+        txtTimeFrom.setToolTipText("ЧЧ:ММ:СС,мс; пусто - с начала");
+        timePanel.add(txtTimeFrom);
+        timePanel.add(new JLabel("по:"));
+        txtTimeTo = new JTextField(10);
+        txtTimeTo.setToolTipText("ЧЧ:ММ:СС,мс; пусто - до конца");
+        timePanel.add(txtTimeTo);
+        JButton btnApplyTime = new JButton("Показать");
+        btnApplyTime.addActionListener(e -> timed("applyTimeFilter", this::showSelectedParam));
+        txtTimeFrom.addActionListener(e -> timed("applyTimeFilter", this::showSelectedParam));
+        txtTimeTo.addActionListener(e -> timed("applyTimeFilter", this::showSelectedParam));
+        timePanel.add(btnApplyTime);
+        JButton btnResetTime = new JButton("Весь интервал");
+        btnResetTime.addActionListener(e -> {
+            txtTimeFrom.setText("");
+            txtTimeTo.setText("");
+            timed("applyTimeFilter", this::showSelectedParam);
+        });
+        timePanel.add(btnResetTime);
+        JButton btnCloseTab = new JButton("Закрыть вкладку");
+        btnCloseTab.addActionListener(e -> {
+            int index = valueTabs.getSelectedIndex();
+            if (index >= 0) valueTabs.removeTabAt(index);
+        });
+        timePanel.add(btnCloseTab);
+
+        JPanel valuePanel = new JPanel(new BorderLayout());
+        valuePanel.add(timePanel, BorderLayout.NORTH);
+        valuePanel.add(valueTabs, BorderLayout.CENTER);
 
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
-                new JScrollPane(paramList), new JScrollPane(valueArea));
+                new JScrollPane(paramList), valuePanel);
         splitPane.setDividerLocation(300);
         add(splitPane, BorderLayout.CENTER);
 
@@ -244,19 +347,27 @@ public class TelemetryDialog extends JFrame {
         // Панель для кнопок
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         btnShowSelected = new JButton("Показать выбранное");
-        btnShowSelected.addActionListener(this::showSelectedStatistics);
+        btnShowSelected.addActionListener(e -> timed("showSelectedStatistics", () -> showSelectedStatistics(e)));
         buttonPanel.add(btnShowSelected);
 
         btnResetStats = new JButton("Полная статистика");
-        btnResetStats.addActionListener(e -> buildStatistics());
+        btnResetStats.addActionListener(e -> timed("buildStatistics", this::buildStatistics));
         buttonPanel.add(btnResetStats);
 
+        JButton btnAllParams = new JButton("Все параметры");
+        btnAllParams.addActionListener(e -> timed("buildAllParamsStatistics", this::buildAllParamsStatistics));
+        buttonPanel.add(btnAllParams);
+
+        JButton btnExport = new JButton("Выгрузить записи...");
+        btnExport.addActionListener(this::exportRecords);
+        buttonPanel.add(btnExport);
+
         btnSaveStats = new JButton("Сохранить статистику");
         btnSaveStats.addActionListener(this::saveCurrentStatistics);
         buttonPanel.add(btnSaveStats);
 
         btnClearValues = new JButton("Очистить значения");
-        btnClearValues.addActionListener(e -> valueArea.setText(""));
+        btnClearValues.addActionListener(e -> valueTabs.removeAll());
         buttonPanel.add(btnClearValues);
 
         // Сборка нижней панели
@@ -305,22 +416,28 @@ public class TelemetryDialog extends JFrame {
             viewFrame.setSize(800, 600);
             viewFrame.setLocationRelativeTo(this);
 
-            JTextArea textArea = new JTextArea();
-            textArea.setEditable(false);
-            textArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
-
             // Определяем тип файла и читаем соответствующим образом
             if (fileType.contains("TM") || filePath.toLowerCase().endsWith(".knp")) {
-                // Для бинарных TM-файлов показываем hex-дамп
-                readBinaryFile(file, textArea);
+                // Бинарный TM-файл: hex-дамп всего файла с границами записей
+                TmHexViewer viewer = new TmHexViewer(filePath, dim, datXML);
+                viewFrame.add(viewer);
+                viewFrame.setSize(900, 650);
+                viewFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+                viewFrame.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosed(WindowEvent e) {
+                        viewer.close();
+                    }
+                });
             } else {
                 // Для текстовых файлов (XML, ion) читаем как текст
+                JTextArea textArea = new JTextArea();
+                textArea.setEditable(false);
+                textArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
                 readTextFile(file, textArea);
+                viewFrame.add(new JScrollPane(textArea));
             }
 
-            JScrollPane scrollPane = new JScrollPane(textArea);
-            viewFrame.add(scrollPane);
-
             // Кнопка закрытия
             JButton btnClose = new JButton("Закрыть");
             btnClose.addActionListener(e -> viewFrame.dispose());
@@ -360,61 +477,6 @@ public class TelemetryDialog extends JFrame {
         }
     }
 
-    /**
-     * Чтение бинарного файла с выводом hex-дампа
-     */
-    private void readBinaryFile(File file, JTextArea textArea) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            StringBuilder content = new StringBuilder();
-            byte[] buffer = new byte[16];
-            long fileLength = raf.length();
-            long maxBytes = Math.min(fileLength, 10240); // максимум 10 КБ
-
-            content.append("Бинарный файл: ").append(file.getName()).append("\n");
-            content.append("Размер: ").append(fileLength).append(" байт\n");
-            content.append("Первые ").append(maxBytes).append(" байт:\n\n");
-
-            for (long offset = 0; offset < maxBytes; offset += 16) {
-                int bytesRead = raf.read(buffer);
-                if (bytesRead <= 0) break;
-
-                // Адрес
-                content.append(String.format("%08X: ", offset));
-
-                // Hex-представление
-                for (int i = 0; i < 16; i++) {
-                    if (i < bytesRead) {
-                        content.append(String.format("%02X ", buffer[i]));
-                    } else {
-                        content.append("   ");
-                    }
-                    if (i == 7) content.append(" ");
-                }
-
-                content.append(" |");
-
-                // ASCII-представление
-                for (int i = 0; i < bytesRead; i++) {
-                    char c = (char) buffer[i];
-                    if (c >= 32 && c <= 126) {
-                        content.append(c);
-                    } else {
-                        content.append('.');
-                    }
-                }
-
-                content.append("|\n");
-            }
-
-            if (fileLength > maxBytes) {
-                content.append("\n... и ещё ").append(fileLength - maxBytes).append(" байт ...\n");
-            }
-
-            textArea.setText(content.toString());
-            textArea.setCaretPosition(0);
-        }
-    }
-
     // Рендерер для чекбоксов
     private static class CheckBoxListRenderer extends JCheckBox implements ListCellRenderer<String> {
         private final boolean[] selected;
@@ -438,9 +500,15 @@ public class TelemetryDialog extends JFrame {
     // Методы выбора файлов
     private void chooseTmFile(ActionEvent e) {
         JFileChooser chooser = new JFileChooser();
-        chooser.setDialogTitle("Выберите TM-файл (.KNP)");
+        chooser.setDialogTitle("Выберите TM-файл (.KNP), файлы одного сеанса или файл выгрузки (.tmc)");
+        chooser.setMultiSelectionEnabled(true);
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            txtTmFile.setText(chooser.getSelectedFile().getAbsolutePath());
+            // Несколько файлов загружаются как один сеанс
+            List<String> paths = new ArrayList<>();
+            for (File file : chooser.getSelectedFiles()) {
+                paths.add(file.getAbsolutePath());
+            }
+            txtTmFile.setText(String.join(ReadTMISession.SEPARATOR, paths));
         }
     }
 
@@ -473,19 +541,54 @@ public class TelemetryDialog extends JFrame {
 
         btnLoad.setEnabled(false);
         btnLoad.setText("Загрузка...");
+        stopFollowing();
+        boolean follow = chkFollow.isSelected();
+        boolean offHeap = chkOffHeap.isSelected();
+        boolean compressed = chkCompressed.isSelected();
+        TmReader oldReader = reader;
 
         SwingWorker<Void, Void> worker = new SwingWorker<>() {
             @Override
             protected Void doInBackground() throws Exception {
+                TmLoadMetrics metrics = TmLoadMetrics.get();
+                metrics.beginLoad(tmPath);
+                long start = System.nanoTime();
+                TmEvents.LoadPhase dimEvent = TmEvents.LoadPhase.start("Загрузка размерностей", dimPath);
                 Dim newDim = new Dim();
-                newDim.load(dimPath);
+                newDim.loadCached(dimPath);
+                dimEvent.finish(new File(dimPath).length(), 0, 0);
+                TmEvents.LoadPhase datEvent = TmEvents.LoadPhase.start("Загрузка справочника параметров", xmlPath);
                 DatXML newDat = new DatXML();
-                newDat.load(xmlPath);
-                ReadTMI newReader = new ReadTMI();
-                newReader.load(tmPath, newDim, newDat);
+                newDat.loadCached(xmlPath);
+                datEvent.finish(new File(xmlPath).length(), 0, newDat.getParamNumbers().length);
+                metrics.addPhase(TmLoadMetrics.Phase.DICTIONARY, System.nanoTime() - start);
+                TmReader newReader;
+                if (ReadTMISession.isSession(tmPath)) {
+                    // Сеанс из нескольких файлов: слежение не поддерживается
+                    newReader = new ReadTMISession();
+                } else if (tmPath.toLowerCase().endsWith(TmColumnarFile.EXTENSION)) {
+                    newReader = new ReadTMIColumnarFile();
+                } else {
+                    newReader = follow ? new ReadTMIFollow() : new ReadTMIIndexed();
+                }
+                if (offHeap && newReader instanceof ReadTMIColumnar) {
+                    ((ReadTMIColumnar) newReader).setStoreMemory(TmOffHeapMemory.createDefault());
+                }
+                if (compressed && newReader instanceof ReadTMIColumnar) {
+                    ((ReadTMIColumnar) newReader).setCompressed(true);
+                }
+                try {
+                    newReader.load(tmPath, newDim, newDat);
+                } catch (Exception | Error ex) {
+                    if (newReader instanceof ReadTMIColumnar) {
+                        ((ReadTMIColumnar) newReader).release();
+                    }
+                    throw ex;
+                }
                 dim = newDim;
                 datXML = newDat;
                 reader = newReader;
+                loadedTmPath = tmPath;
                 return null;
             }
 
@@ -493,7 +596,18 @@ public class TelemetryDialog extends JFrame {
             protected void done() {
                 try {
                     get();
+                    long start = System.nanoTime();
+                    TmEvents.LoadPhase uiEvent = TmEvents.LoadPhase.start("Построение интерфейса", loadedTmPath);
                     updateUIAfterLoad();
+                    uiEvent.finish(0, reader.getTotalRecords(), listModel.size());
+                    TmLoadMetrics.get().addPhase(TmLoadMetrics.Phase.UI, System.nanoTime() - start);
+                    // Таблицы прежних данных уже закрыты: их память вне кучи можно отдать
+                    if (oldReader != reader) {
+                        retireReader(oldReader);
+                    }
+                    if (reader instanceof ReadTMIFollow) {
+                        startFollowing((ReadTMIFollow) reader);
+                    }
                 } catch (Exception ex) {
                     ex.printStackTrace();
                     JOptionPane.showMessageDialog(TelemetryDialog.this,
@@ -508,6 +622,98 @@ public class TelemetryDialog extends JFrame {
         worker.execute();
     }
 
+    // Слежение за дописываемым TM-файлом
+    private void startFollowing(ReadTMIFollow followReader) {
+        try {
+            followReader.startFollowing(FOLLOW_PERIOD_MS, batch -> SwingUtilities.invokeLater(() -> {
+                if (reader != followReader) return;
+                pendingBatches.add(batch);
+                if (!backgroundUses.containsKey(followReader)) {
+                    applyPendingBatches(followReader);
+                }
+            }));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(this,
+                    "Не удалось начать слежение за файлом:\n" + ex.getMessage(),
+                    "Ошибка", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Добавляет отложенные дописанные записи (вызывается в EDT, когда их не читают фоновые задачи)
+    private void applyPendingBatches(ReadTMIFollow followReader) {
+        for (TmFollower.Batch batch : pendingBatches) {
+            for (String name : followReader.applyBatch(batch)) {
+                insertParamName(name);
+            }
+        }
+        pendingBatches.clear();
+        chartCache.clear();
+        buildStatistics();
+    }
+
+    private void stopFollowing() {
+        pendingBatches.clear();
+        if (reader instanceof ReadTMIFollow) {
+            try {
+                ((ReadTMIFollow) reader).close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    // Фоновая задача начинает читать данные загрузчика (вызывается в EDT)
+    private void beginBackgroundUse(TmReader source) {
+        backgroundUses.merge(source, 1, Integer::sum);
+    }
+
+    // Фоновая задача закончила читать данные загрузчика (вызывается в EDT)
+    private void endBackgroundUse(TmReader source) {
+        if (backgroundUses.merge(source, -1, Integer::sum) == 0) {
+            backgroundUses.remove(source);
+            if (retiredReaders.remove(source)) {
+                releaseReader(source);
+            } else if (source == reader && !pendingBatches.isEmpty()) {
+                applyPendingBatches((ReadTMIFollow) source);
+            }
+        }
+    }
+
+    // Освобождает память заменённого загрузчика, когда его данные не читает ни одна фоновая задача
+    private void retireReader(TmReader old) {
+        if (!(old instanceof ReadTMIColumnar)) {
+            return;
+        }
+        if (backgroundUses.containsKey(old)) {
+            retiredReaders.add(old);
+        } else {
+            releaseReader(old);
+        }
+    }
+
+    private void releaseReader(TmReader old) {
+        try {
+            ((ReadTMIColumnar) old).release();
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    // Вставка нового имени параметра в список с сохранением порядка
+    private void insertParamName(String name) {
+        int low = 0, high = listModel.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (listModel.get(mid).compareTo(name) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        listModel.add(low, name);
+    }
+
     // Обновление интерфейса после загрузки
     private void updateUIAfterLoad() {
         listModel.clear();
@@ -515,7 +721,8 @@ public class TelemetryDialog extends JFrame {
             listModel.addElement(name);
         }
         buildStatistics();
-        valueArea.setText("");
+        valueTabs.removeAll();
+        chartCache.clear();
         // Сбросить состояния чекбоксов
         for (int i = 0; i < statSelectedGeneral.length; i++) {
             statSelectedGeneral[i] = false;
@@ -527,35 +734,124 @@ public class TelemetryDialog extends JFrame {
         statListParam.repaint();
     }
 
-    // Обработчик выбора параметра (добавление значений с разделителем)
+    // Обработчик выбора параметра (значения открываются в отдельной вкладке)
     private void paramSelected(ListSelectionEvent e) {
-        if (e.getValueIsAdjusting() || reader == null) return;
+        if (e.getValueIsAdjusting()) return;
+        timed("paramSelected", this::showSelectedParam);
+    }
+
+    // Выполняет обработчик интерфейса; если он длился дольше порога, пишется событие JFR
+    private void timed(String handler, Runnable action) {
+        String param = paramList.getSelectedValue();
+        TmEvents.SlowHandler event = TmEvents.SlowHandler.start(handler, param);
+        try {
+            action.run();
+        } finally {
+            List<TmDat> records = reader == null || param == null ? null : reader.getRecordsByName().get(param);
+            event.finish(records == null ? 0 : records.size());
+        }
+    }
+
+    // Интервал времени из полей фильтра: {с, по}; null, если поле заполнено неверно
+    private long[] parseTimeFilter() {
+        try {
+            String fromText = txtTimeFrom.getText().trim();
+            String toText = txtTimeTo.getText().trim();
+            long from = fromText.isEmpty() ? 0 : TmDat.parseTime(fromText);
+            long to = toText.isEmpty() ? Long.MAX_VALUE : TmDat.parseTime(toText);
+            return new long[] {from, to};
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    // Вывод значений выбранного параметра в заданном интервале времени
+    private void showSelectedParam() {
+        if (reader == null) return;
         String selected = paramList.getSelectedValue();
         if (selected == null) return;
 
-        List<TmDat> records = reader.getRecordsByName().get(selected);
-        if (records == null) return;
+        long[] range = parseTimeFilter();
+        if (range == null) return;
+        long from = range[0];
+        long to = range[1];
 
-        records.sort(Comparator.comparingLong(TmDat::getTime));
+        // Ряды упорядочены по времени, границы интервала ищутся двоичным поиском
+        List<TmDat> records = reader.query(selected, from, to);
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("Параметр: ").append(selected).append("\n");
-        sb.append("Всего записей: ").append(records.size()).append("\n");
-        sb.append("--------------------------------------------------\n");
-        for (TmDat rec : records) {
-            sb.append(TmDat.formatTime(rec.getTime()))
-                    .append("  ")
-                    .append(rec.getValueAsString())
-                    .append("\n");
-        }
-
-        String currentText = valueArea.getText();
-        if (!currentText.isEmpty()) {
-            valueArea.setText(currentText + "\n----------------------\n\n" + sb.toString());
+        StringBuilder header = new StringBuilder();
+        header.append("Параметр: ").append(selected);
+        if (from > 0 || to < Long.MAX_VALUE) {
+            header.append("   Интервал: ").append(TmDat.formatTime(from)).append(" - ")
+                    .append(to < Long.MAX_VALUE ? TmDat.formatTime(to) : "конец");
+        }
+        header.append("   Всего записей: ").append(records.size());
+
+        // Таблица форматирует только видимые строки
+        JTable table = new JTable(new TmValueTableModel(selected, records));
+        table.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        table.getColumnModel().getColumn(0).setPreferredWidth(110);
+        table.getColumnModel().getColumn(1).setPreferredWidth(260);
+        table.getColumnModel().getColumn(2).setPreferredWidth(90);
+        table.getColumnModel().getColumn(3).setPreferredWidth(60);
+
+        // График над таблицей; его данные строятся один раз на параметр
+        TmChartPanel chart = new TmChartPanel();
+        showChart(chart, selected, from, to);
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, chart, new JScrollPane(table));
+        split.setResizeWeight(0.5);
+
+        JPanel tab = new JPanel(new BorderLayout());
+        tab.add(new JLabel(header.toString()), BorderLayout.NORTH);
+        tab.add(split, BorderLayout.CENTER);
+
+        // Повторный выбор параметра (или новый интервал) обновляет его вкладку
+        int index = valueTabs.indexOfTab(selected);
+        if (index >= 0) {
+            valueTabs.setComponentAt(index, tab);
         } else {
-            valueArea.setText(sb.toString());
+            valueTabs.addTab(selected, tab);
+            index = valueTabs.getTabCount() - 1;
+            valueTabs.setToolTipTextAt(index, selected);
+        }
+        valueTabs.setSelectedIndex(index);
+    }
+
+    // Заполнение графика: пирамида из кэша или её построение в фоне
+    private void showChart(TmChartPanel chart, String name, long from, long to) {
+        TmChartData cached = chartCache.get(name);
+        if (cached != null) {
+            chart.setData(cached, from, to);
+            return;
         }
-        valueArea.setCaretPosition(0);
+        chart.setMessage("Построение графика...");
+        TmReader source = reader;
+        beginBackgroundUse(source);
+        SwingWorker<TmChartData, Void> worker = new SwingWorker<>() {
+            @Override
+            protected TmChartData doInBackground() {
+                if (source instanceof ReadTMIColumnar) {
+                    return TmChartData.buildFromSeries(((ReadTMIColumnar) source).getSeries(name));
+                }
+                return TmChartData.build(source.query(name, 0, Long.MAX_VALUE));
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    TmChartData data = get();
+                    if (reader == source) chartCache.put(name, data);
+                    chart.setData(data, from, to);
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    chart.setMessage("Ошибка построения графика: " + ex.getMessage());
+                } finally {
+                    endBackgroundUse(source);
+                }
+            }
+        };
+        worker.execute();
     }
 
     // Полная статистика (общая)
@@ -565,7 +861,12 @@ public class TelemetryDialog extends JFrame {
             return;
         }
         StringBuilder sb = new StringBuilder();
-        sb.append("Статистика по файлу:\n");
+        if (reader instanceof ReadTMISession) {
+            appendSessionFiles(sb, (ReadTMISession) reader);
+            sb.append("Статистика по сеансу (после слияния):\n");
+        } else {
+            sb.append("Статистика по файлу:\n");
+        }
         sb.append("  Общее количество ТМ-записей: ").append(reader.getTotalRecords()).append("\n");
         sb.append("  Служебных записей: ").append(reader.getServiceRecords()).append("\n");
         sb.append("  Полезных записей: ").append(reader.getUsefulRecords()).append("\n");
@@ -583,9 +884,50 @@ public class TelemetryDialog extends JFrame {
         sb.append("  Point > 4 байт: ").append(reader.getPointGreater4()).append("\n");
         sb.append("  Code < 8 разрядов: ").append(reader.getCodeLess8()).append("\n");
         sb.append("  Code > 8 разрядов: ").append(reader.getCodeGreater8()).append("\n");
+        int[] dimensionCounts = reader.getDimensionCounts();
+        sb.append("  Записей с неизвестной размерностью: ").append(dim.countMisses(dimensionCounts));
+        List<Integer> missedCodes = dim.getMissedCodes(dimensionCounts);
+        if (!missedCodes.isEmpty()) {
+            sb.append(" (коды ").append(formatCodes(missedCodes)).append(")");
+        }
+        sb.append("\n");
         statsArea.setText(sb.toString());
     }
 
+    // Счётчики каждого файла сеанса и количество повторов, отброшенных при слиянии
+    private static void appendSessionFiles(StringBuilder sb, ReadTMISession session) {
+        List<String> files = session.getFiles();
+        sb.append("Файлы сеанса (").append(files.size()).append("):\n");
+        for (int i = 0; i < files.size(); i++) {
+            TmDecoder d = session.getFileDecoder(i);
+            sb.append("  ").append(new File(files.get(i)).getName()).append(":\n");
+            sb.append("    Записей: ").append(d.getTotalRecords())
+                    .append(", служебных: ").append(d.getServiceRecords())
+                    .append(", полезных: ").append(d.getUsefulRecords())
+                    .append(", неизвестного типа: ").append(d.getUnknownRecords()).append("\n");
+            sb.append("    Параметров: ").append(session.getFileParamStats(i).size())
+                    .append(", байт: ").append(d.getBytesNum()).append("\n");
+        }
+        sb.append("  Повторов отброшено при слиянии: ").append(session.getDuplicates()).append("\n\n");
+    }
+
+    // Список кодов с объединением подряд идущих в диапазоны: "40, 158-255"
+    private static String formatCodes(List<Integer> codes) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < codes.size()) {
+            int j = i;
+            while (j + 1 < codes.size() && codes.get(j + 1) == codes.get(j) + 1) {
+                j++;
+            }
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(codes.get(i));
+            if (j > i) sb.append('-').append(codes.get(j));
+            i = j + 1;
+        }
+        return sb.toString();
+    }
+
     private void updateStatsPlaceholder() {
         statsArea.setText("Загрузите данные для отображения статистики.");
     }
@@ -657,83 +999,100 @@ public class TelemetryDialog extends JFrame {
             sb.append(STAT_ITEMS_GENERAL[12]).append(": ").append(reader.getCodeGreater8()).append("\n");
             anySelected = true;
         }
+        if (statSelectedGeneral[13]) {
+            sb.append(STAT_ITEMS_GENERAL[13]).append(": ").append(dim.countMisses(reader.getDimensionCounts())).append("\n");
+            anySelected = true;
+        }
 
         // --- Статистика по выбранному параметру ---
         String selectedParam = paramList.getSelectedValue();
         if (selectedParam != null) {
-            List<TmDat> paramRecords = reader.getRecordsByName().get(selectedParam);
-            if (paramRecords != null) {
-                // Подсчёт по типам для параметра
-                int paramTotal = paramRecords.size();
-                int paramLong = 0, paramDouble = 0, paramCode = 0, paramPoint = 0, paramUnknown = 0;
-                int paramPointLess4 = 0, paramPointGreater4 = 0;
-                int paramCodeLess8 = 0, paramCodeGreater8 = 0;
-
-                for (TmDat rec : paramRecords) {
-                    if (rec instanceof TmUnknown) {
-                        paramUnknown++;
-                    } else {
-                        switch (rec.getValueType()) {
-                            case 0: paramLong++; break;
-                            case 1: paramDouble++; break;
-                            case 2: {
-                                paramCode++;
-                                TmCode c = (TmCode) rec;
-                                if (c.getCodeLength() < 8) paramCodeLess8++;
-                                else if (c.getCodeLength() > 8) paramCodeGreater8++;
-                                break;
-                            }
-                            case 3: {
-                                paramPoint++;
-                                TmPoint p = (TmPoint) rec;
-                                if (p.getDataLength() < 4) paramPointLess4++;
-                                else if (p.getDataLength() > 4) paramPointGreater4++;
-                                break;
-                            }
-                            default: paramUnknown++;
-                        }
-                    }
-                }
+            // Статистика накоплена при разборе файла
+            TmParamStats ps = reader.getParamStats(selectedParam);
+            if (ps != null) {
 
                 // Вывод отмеченных пунктов для параметра
                 if (statSelectedParam[0]) {
-                    sb.append("\n").append(STAT_ITEMS_PARAM[0]).append(" (").append(selectedParam).append("): ").append(paramTotal).append("\n");
+                    sb.append("\n").append(STAT_ITEMS_PARAM[0]).append(" (").append(selectedParam).append("): ").append(ps.getTotal()).append("\n");
+                    if (reader instanceof ReadTMISession) {
+                        // Записи параметра в каждом файле сеанса (до удаления повторов)
+                        ReadTMISession session = (ReadTMISession) reader;
+                        for (int i = 0; i < session.getFiles().size(); i++) {
+                            TmParamStats fileStats = session.getFileParamStats(i).get(selectedParam);
+                            sb.append("  ").append(new File(session.getFiles().get(i)).getName()).append(": ")
+                                    .append(fileStats == null ? 0 : fileStats.getTotal()).append("\n");
+                        }
+                    }
                     anySelected = true;
                 }
                 if (statSelectedParam[1]) {
-                    sb.append(STAT_ITEMS_PARAM[1]).append(" (").append(selectedParam).append("): ").append(paramLong).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[1]).append(" (").append(selectedParam).append("): ").append(ps.getLongCount()).append("\n");
                     anySelected = true;
                 }
                 if (statSelectedParam[2]) {
-                    sb.append(STAT_ITEMS_PARAM[2]).append(" (").append(selectedParam).append("): ").append(paramDouble).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[2]).append(" (").append(selectedParam).append("): ").append(ps.getDoubleCount()).append("\n");
                     anySelected = true;
                 }
                 if (statSelectedParam[3]) {
-                    sb.append(STAT_ITEMS_PARAM[3]).append(" (").append(selectedParam).append("): ").append(paramCode).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[3]).append(" (").append(selectedParam).append("): ").append(ps.getCodeCount()).append("\n");
                     anySelected = true;
                 }
                 if (statSelectedParam[4]) {
-                    sb.append(STAT_ITEMS_PARAM[4]).append(" (").append(selectedParam).append("): ").append(paramPoint).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[4]).append(" (").append(selectedParam).append("): ").append(ps.getPointCount()).append("\n");
                     anySelected = true;
                 }
                 if (statSelectedParam[5]) {
-                    sb.append(STAT_ITEMS_PARAM[5]).append(" (").append(selectedParam).append("): ").append(paramUnknown).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[5]).append(" (").append(selectedParam).append("): ").append(ps.getUnknownCount()).append("\n");
                     anySelected = true;
                 }
                 if (statSelectedParam[6]) {
-                    sb.append(STAT_ITEMS_PARAM[6]).append(" (").append(selectedParam).append("): ").append(paramPointLess4).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[6]).append(" (").append(selectedParam).append("): ").append(ps.getPointLess4()).append("\n");
                     anySelected = true;
                 }
                 if (statSelectedParam[7]) {
-                    sb.append(STAT_ITEMS_PARAM[7]).append(" (").append(selectedParam).append("): ").append(paramPointGreater4).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[7]).append(" (").append(selectedParam).append("): ").append(ps.getPointGreater4()).append("\n");
                     anySelected = true;
                 }
                 if (statSelectedParam[8]) {
-                    sb.append(STAT_ITEMS_PARAM[8]).append(" (").append(selectedParam).append("): ").append(paramCodeLess8).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[8]).append(" (").append(selectedParam).append("): ").append(ps.getCodeLess8()).append("\n");
                     anySelected = true;
                 }
                 if (statSelectedParam[9]) {
-                    sb.append(STAT_ITEMS_PARAM[9]).append(" (").append(selectedParam).append("): ").append(paramCodeGreater8).append("\n");
+                    sb.append(STAT_ITEMS_PARAM[9]).append(" (").append(selectedParam).append("): ").append(ps.getCodeGreater8()).append("\n");
+                    anySelected = true;
+                }
+                if (statSelectedParam[10]) {
+                    sb.append(STAT_ITEMS_PARAM[10]).append(" (").append(selectedParam).append("): ").append(formatStatsTime(ps.getFirstTime())).append("\n");
+                    anySelected = true;
+                }
+                if (statSelectedParam[11]) {
+                    sb.append(STAT_ITEMS_PARAM[11]).append(" (").append(selectedParam).append("): ").append(formatStatsTime(ps.getLastTime())).append("\n");
+                    anySelected = true;
+                }
+                if (statSelectedParam[12]) {
+                    sb.append(STAT_ITEMS_PARAM[12]).append(" (").append(selectedParam).append("): ").append(formatStatsNumber(ps.getSampleRate())).append("\n");
+                    anySelected = true;
+                }
+                if (statSelectedParam[13]) {
+                    sb.append(STAT_ITEMS_PARAM[13]).append(" (").append(selectedParam).append("): ").append(formatStatsNumber(ps.getMean())).append("\n");
+                    anySelected = true;
+                }
+                if (statSelectedParam[14]) {
+                    sb.append(STAT_ITEMS_PARAM[14]).append(" (").append(selectedParam).append("): ").append(formatStatsNumber(ps.getStdDev())).append("\n");
+                    anySelected = true;
+                }
+                if (statSelectedParam[15]) {
+                    sb.append(STAT_ITEMS_PARAM[15]).append(" (").append(selectedParam).append("): ").append(formatStatsNumber(ps.getMin()))
+                            .append(" в ").append(formatStatsTime(ps.getMinTime())).append("\n");
+                    anySelected = true;
+                }
+                if (statSelectedParam[16]) {
+                    sb.append(STAT_ITEMS_PARAM[16]).append(" (").append(selectedParam).append("): ").append(formatStatsNumber(ps.getMax()))
+                            .append(" в ").append(formatStatsTime(ps.getMaxTime())).append("\n");
+                    anySelected = true;
+                }
+                if (statSelectedParam[17]) {
+                    sb.append(STAT_ITEMS_PARAM[17]).append(" (").append(selectedParam).append("): ").append(ps.getChanges()).append("\n");
                     anySelected = true;
                 }
             }
@@ -754,6 +1113,183 @@ public class TelemetryDialog extends JFrame {
         }
     }
 
+    // Статистика всех параметров одной строкой на параметр
+    private void buildAllParamsStatistics() {
+        if (reader == null) {
+            statsArea.setText("Нет загруженных данных.");
+            return;
+        }
+        Map<String, TmParamStats> all = reader.getAllParamStats();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Статистика всех параметров (").append(all.size()).append(")\n");
+        sb.append("==========================================\n");
+        for (Map.Entry<String, TmParamStats> entry : all.entrySet()) {
+            TmParamStats ps = entry.getValue();
+            sb.append(entry.getKey()).append(": записей ").append(ps.getTotal())
+                    .append(", с ").append(formatStatsTime(ps.getFirstTime()))
+                    .append(" по ").append(formatStatsTime(ps.getLastTime()))
+                    .append(", ").append(formatStatsNumber(ps.getSampleRate())).append(" зап/с");
+            if (ps.getValueCount() > 0) {
+                sb.append(", среднее ").append(formatStatsNumber(ps.getMean()))
+                        .append(", СКО ").append(formatStatsNumber(ps.getStdDev()))
+                        .append(", мин ").append(formatStatsNumber(ps.getMin()))
+                        .append(" в ").append(formatStatsTime(ps.getMinTime()))
+                        .append(", макс ").append(formatStatsNumber(ps.getMax()))
+                        .append(" в ").append(formatStatsTime(ps.getMaxTime()));
+            }
+            sb.append(", смен значения ").append(ps.getChanges()).append("\n");
+        }
+        statsArea.setText(sb.toString());
+        statsArea.setCaretPosition(0);
+    }
+
+    private static String formatStatsNumber(double value) {
+        if (Double.isNaN(value)) {
+            return "-";
+        }
+        StringBuilder sb = new StringBuilder(24);
+        TmFormat.appendFixed6(sb, value);
+        return sb.toString();
+    }
+
+    private static String formatStatsTime(long time) {
+        return time < 0 ? "-" : TmDat.formatTime(time);
+    }
+
+    // Выгрузка записей в CSV или столбцовый файл (параметры и интервал времени по выбору)
+    private void exportRecords(ActionEvent e) {
+        if (reader == null) {
+            JOptionPane.showMessageDialog(this, "Нет загруженных данных.");
+            return;
+        }
+        long[] range = parseTimeFilter();
+        if (range == null) return;
+
+        JComboBox<String> format = new JComboBox<>(new String[] {"CSV (.csv)", "Столбцовый файл (.tmc)"});
+        JCheckBox allParams = new JCheckBox("Все параметры", paramList.getSelectedValue() == null);
+        JList<String> names = new JList<>(listModel);
+        names.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        names.setSelectedIndex(paramList.getSelectedIndex());
+        names.setEnabled(!allParams.isSelected());
+        allParams.addActionListener(ev -> names.setEnabled(!allParams.isSelected()));
+        JScrollPane namesScroll = new JScrollPane(names);
+        namesScroll.setPreferredSize(new Dimension(350, 250));
+
+        JPanel panel = new JPanel(new BorderLayout(5, 5));
+        JPanel top = new JPanel(new GridLayout(0, 1));
+        top.add(format);
+        top.add(new JLabel("Интервал: " + TmDat.formatTime(range[0]) + " - "
+                + (range[1] < Long.MAX_VALUE ? TmDat.formatTime(range[1]) : "конец")));
+        top.add(allParams);
+        panel.add(top, BorderLayout.NORTH);
+        panel.add(namesScroll, BorderLayout.CENTER);
+        if (JOptionPane.showConfirmDialog(this, panel, "Выгрузка записей",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        List<String> selected = allParams.isSelected() ? null : names.getSelectedValuesList();
+        if (selected != null && selected.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Не выбраны параметры.");
+            return;
+        }
+        boolean csv = format.getSelectedIndex() == 0;
+        String extension = csv ? ".csv" : TmColumnarFile.EXTENSION;
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Выгрузить записи");
+        chooser.setSelectedFile(new File(new File(ReadTMISession.splitPaths(loadedTmPath).get(0)).getName()
+                + extension));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        if (isLoadedFile(file)) {
+            JOptionPane.showMessageDialog(this, "Нельзя выгрузить записи в загруженный файл.",
+                    "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (file.exists() && JOptionPane.showConfirmDialog(this,
+                "Файл " + file.getName() + " уже существует. Заменить его?", "Выгрузка записей",
+                JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        // Файл выгрузки самоописываемый: имена и размерности берутся из него.
+        // Загруженные из .KNP записи выгружаются потоковым разбором файла, без хранения,
+        // сеанс из нескольких файлов - из хранилища (записи уже слиты, повторы удалены)
+        TmReader source = reader;
+        String sourcePath = loadedTmPath;
+        IntFunction<String> seriesNames;
+        Dim exportDim;
+        if (source instanceof ReadTMIColumnarFile) {
+            TmColumnarFile columnarFile = ((ReadTMIColumnarFile) source).getFile();
+            seriesNames = columnarFile::getName;
+            exportDim = columnarFile.getDim();
+        } else {
+            DatXML dictionary = datXML;
+            seriesNames = key -> TmColumnStore.seriesName(key, dictionary);
+            exportDim = dim;
+        }
+        statsArea.setText("Выгрузка в " + file.getAbsolutePath() + "...");
+        beginBackgroundUse(source);
+        SwingWorker<TmExportWriter, Void> worker = new SwingWorker<>() {
+            @Override
+            protected TmExportWriter doInBackground() throws Exception {
+                TmExportWriter writer = csv
+                        ? new TmCsvWriter(file.toPath(), seriesNames, exportDim)
+                        : new TmColumnarWriter(file.toPath(), seriesNames, exportDim);
+                try (TmExportWriter w = writer) {
+                    w.setNames(selected);
+                    w.setTimeRange(range[0], range[1]);
+                    if (source instanceof ReadTMIColumnarFile || source instanceof ReadTMISession) {
+                        w.exportStore(((ReadTMIColumnar) source).getStore(), source.getServiceRecords());
+                    } else {
+                        w.exportFile(sourcePath);
+                    }
+                }
+                return writer;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    TmExportWriter writer = get();
+                    StringBuilder sb = new StringBuilder();
+                    sb.append("Выгрузка в ").append(file.getAbsolutePath()).append(":\n");
+                    sb.append("  Записей: ").append(writer.getRecords()).append("\n");
+                    sb.append("  Записано: ").append(String.format("%.1f МБ", writer.getBytes() / (1024.0 * 1024.0)))
+                            .append(" за ").append(writer.getElapsedNanos() / 1_000_000).append(" мс\n");
+                    sb.append("  Скорость: ").append(String.format("%.1f МБ/с", writer.getMegabytesPerSecond())).append("\n");
+                    statsArea.setText(sb.toString());
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                    statsArea.setText("");
+                    JOptionPane.showMessageDialog(TelemetryDialog.this,
+                            "Ошибка выгрузки:\n" + ex.getMessage(),
+                            "Ошибка", JOptionPane.ERROR_MESSAGE);
+                } finally {
+                    endBackgroundUse(source);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    // Является ли файл одним из загруженных ТМ-файлов (или загруженным файлом выгрузки)
+    private boolean isLoadedFile(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        for (String path : ReadTMISession.splitPaths(loadedTmPath)) {
+            try {
+                if (Files.isSameFile(file.toPath(), new File(path).toPath())) {
+                    return true;
+                }
+            } catch (IOException ex) {
+                // Исходный файл недоступен - совпадать не с чем
+            }
+        }
+        return false;
+    }
+
     // Сохранение текущего содержимого statsArea в файл
     private void saveCurrentStatistics(ActionEvent e) {
         if (reader == null) {
@@ -0,0 +1,376 @@
+package telemetry;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Набор замеров производительности: декодеры ТМ-файла, загрузка справочников,
+ * группировка записей по параметрам, подсчёт статистики параметра,
+ * форматирование строк значений и выгрузка записей (CSV, столбцовый файл и его загрузка).
+ *
+ * Для каждого замера выполняются прогревочные и измеряемые итерации; выводятся
+ * среднее время, пропускная способность (МБ/с, записей/с) и объём памяти,
+ * выделенной текущим потоком на одну операцию и на одну запись
+ * (аналог gc.alloc.rate.norm; выделения рабочих потоков ReadTMIParallel не учитываются).
+ *
+ * Запуск: java telemetry.TmBenchmark [--sizes 10,100,1000] [--dir каталог]
+ *         [--xml файл.dat.xml] [--dim dimens.ion] [--warmup N] [--iterations N]
+ *         [--legacy-max МБ] [--csv файл]
+ * Файлы нужных размеров (МБ) создаются в каталоге, если их ещё нет.
+ */
+public class TmBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final PrintStream OUT = System.out;
+
+    private int warmup = 2;
+    private int iterations = 3;
+    private PrintStream csv;
+    /** Результаты замеряемых операций, чтобы JIT не удалил вычисления */
+    private long sink;
+
+    /** Замеряемая операция; возвращает количество обработанных записей */
+    private interface Operation {
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10, 100, 1000};
+        String dir = System.getProperty("java.io.tmpdir");
+        String xmlFile = "KNP-173.14.33.58.dat.xml";
+        String dimFile = "dimens.ion";
+        int legacyMax = 10;
+        TmBenchmark bench = new TmBenchmark();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--dir": dir = args[i + 1]; break;
+                case "--xml": xmlFile = args[i + 1]; break;
+                case "--dim": dimFile = args[i + 1]; break;
+                case "--warmup": bench.warmup = Integer.parseInt(args[i + 1]); break;
+                case "--iterations": bench.iterations = Integer.parseInt(args[i + 1]); break;
+                case "--legacy-max": legacyMax = Integer.parseInt(args[i + 1]); break;
+                case "--csv": bench.csv = new PrintStream(new FileOutputStream(args[i + 1], true), true, "UTF-8"); break;
+                default:
+                    System.err.println("Неизвестный параметр: " + args[i]);
+                    return;
+            }
+        }
+
+        // Декодеры печатают итоги загрузки и промахи размерностей - на время замеров отключаем
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            bench.runDictionaryBenchmarks(xmlFile, dimFile);
+
+            Dim dim = new Dim();
+            dim.load(dimFile);
+            DatXML datXML = new DatXML();
+            datXML.load(xmlFile);
+
+            for (int sizeMb : sizes) {
+                Path file = Paths.get(dir, "bench_" + sizeMb + "MB.KNP");
+                if (!Files.exists(file)) {
+                    TmGenerator generator = new TmGenerator();
+                    generator.setSize((long) sizeMb << 20);
+                    generator.setParams(datXML, 1000);
+                    generator.setSeed(sizeMb);
+                    generator.generate(file);
+                }
+                bench.runDecoderBenchmarks(file, sizeMb <= legacyMax, dim, datXML);
+                bench.runGroupingBenchmarks(file, dim, datXML);
+                bench.runStatisticsBenchmarks(file, dim, datXML);
+                bench.runFormatBenchmarks(file, dim, datXML);
+                bench.runExportBenchmarks(file, dim, datXML);
+            }
+        } finally {
+            System.setOut(OUT);
+            if (bench.csv != null) bench.csv.close();
+        }
+    }
+
+    private void runDictionaryBenchmarks(String xmlFile, String dimFile) {
+        long xmlSize = new File(xmlFile).length();
+        measure("DatXML.load (StAX)", "", xmlSize, () -> {
+            new DatXML().load(xmlFile);
+            return 0;
+        });
+        measure("DatXML.loadDom (DOM)", "", xmlSize, () -> {
+            new DatXML().loadDom(xmlFile);
+            return 0;
+        });
+        // Первый прогревочный вызов создаёт снимок, остальные его читают
+        measure("DatXML.loadCached", "", xmlSize, () -> {
+            new DatXML().loadCached(xmlFile);
+            return 0;
+        });
+        long dimSize = new File(dimFile).length();
+        measure("Dim.load", "", dimSize, () -> {
+            new Dim().load(dimFile);
+            return 0;
+        });
+        measure("Dim.loadCached", "", dimSize, () -> {
+            new Dim().loadCached(dimFile);
+            return 0;
+        });
+    }
+
+    private void runDecoderBenchmarks(Path file, boolean legacy, Dim dim, DatXML datXML) {
+        String name = file.getFileName().toString();
+        long size = file.toFile().length();
+        String path = file.toString();
+
+        if (legacy) {
+            measure("ReadTMI", name, size, () -> load(new ReadTMI(), path, dim, datXML));
+            measure("ReadTMIByteBased", name, size, () -> load(new ReadTMIByteBased(), path, dim, datXML));
+        }
+        measure("ReadTMIBuffered", name, size, () -> load(new ReadTMIBuffered(), path, dim, datXML));
+        measure("ReadTMIMapped", name, size, () -> load(new ReadTMIMapped(), path, dim, datXML));
+        measure("ReadTMIColumnar", name, size, () -> load(new ReadTMIColumnar(), path, dim, datXML));
+        measure("ReadTMIParallel", name, size, () -> load(new ReadTMIParallel(), path, dim, datXML));
+        measure("TmDecoder (поток)", name, size, () -> {
+            TmDecoder decoder = new TmDecoder(new TmRecordListener() { });
+            decoder.setParamStatsEnabled(false);
+            decoder.decodeFile(path);
+            return decoder.getTotalRecords();
+        });
+        measure("TmDecoder (поток, статистика)", name, size, () -> {
+            TmDecoder decoder = new TmDecoder(new TmRecordListener() { });
+            decoder.decodeFile(path);
+            return decoder.getTotalRecords();
+        });
+    }
+
+    /**
+     * Группировка готовых записей по параметрам: прежний способ (имя по справочнику
+     * для каждой записи и TreeMap по строке) и {@link TmRecordGroups}
+     */
+    private void runGroupingBenchmarks(Path file, Dim dim, DatXML datXML) throws IOException {
+        String name = file.getFileName().toString();
+        ReadTMIBuffered buffered = new ReadTMIBuffered();
+        buffered.load(file.toString(), dim, datXML);
+        List<TmDat> records = buffered.getAllRecords();
+
+        measure("Группировка (TreeMap)", name, 0, () -> {
+            Map<String, List<TmDat>> byName = new TreeMap<>();
+            for (TmDat record : records) {
+                String recordName = datXML.getName(record.getNumber());
+                if (record.getValueType() > 3) {
+                    recordName = recordName + " [unknown type]";
+                }
+                byName.computeIfAbsent(recordName, k -> new ArrayList<>()).add(record);
+            }
+            return records.size();
+        });
+        measure("Группировка (по номеру)", name, 0, () -> {
+            TmRecordGroups groups = new TmRecordGroups(datXML);
+            for (TmDat record : records) {
+                int key = TmColumnStore.key(record.getNumber(), record.getValueType() > 3);
+                groups.name(key);
+                groups.add(key, record);
+            }
+            groups.toRecordsByName();
+            return records.size();
+        });
+    }
+
+    /**
+     * Подсчёт статистики самого длинного параметра для списков из объектов
+     * и для столбцовых представлений, а также её получение из накопленной декодером
+     * (как в TelemetryDialog.showSelectedStatistics).
+     */
+    private void runStatisticsBenchmarks(Path file, Dim dim, DatXML datXML) throws IOException {
+        String name = file.getFileName().toString();
+        ReadTMIColumnar columnar = new ReadTMIColumnar();
+        columnar.load(file.toString(), dim, datXML);
+        List<TmDat> columns = longestList(columnar);
+        measure("TmParamStats (столбцы)", name, 0, () -> TmParamStats.compute(columns).getTotal());
+
+        List<TmDat> objects = new ArrayList<>(columns);
+        measure("TmParamStats (объекты)", name, 0, () -> TmParamStats.compute(objects).getTotal());
+
+        // Статистика, накопленная декодером при разборе: поиск по имени
+        String longest = null;
+        for (Map.Entry<String, List<TmDat>> entry : columnar.getRecordsByName().entrySet()) {
+            if (entry.getValue() == columns) longest = entry.getKey();
+        }
+        String paramName = longest;
+        measure("TmParamStats (декодер)", name, 0, () -> columnar.getParamStats(paramName).getTotal());
+    }
+
+    /**
+     * Форматирование строк "время  значение" для всех записей файла:
+     * String.format (прежняя реализация) и {@link TmFormat} в общий буфер.
+     */
+    private void runFormatBenchmarks(Path file, Dim dim, DatXML datXML) throws IOException {
+        String name = file.getFileName().toString();
+        ReadTMIBuffered buffered = new ReadTMIBuffered();
+        buffered.load(file.toString(), dim, datXML);
+        List<TmDat> records = buffered.getAllRecords();
+
+        measure("Формат (String.format)", name, 0, () -> {
+            long length = 0;
+            for (TmDat record : records) {
+                long t = record.getTime();
+                String line = String.format("%02d:%02d:%02d,%03d", t / 3_600_000, (t % 3_600_000) / 60_000,
+                        (t % 60_000) / 1000, t % 1000) + "  " + formatValue(record);
+                length += line.length();
+            }
+            sink += length;
+            return records.size();
+        });
+        StringBuilder sb = new StringBuilder(128);
+        measure("Формат (TmFormat)", name, 0, () -> {
+            long length = 0;
+            for (TmDat record : records) {
+                sb.setLength(0);
+                TmFormat.appendTime(sb, record.getTime());
+                sb.append("  ");
+                record.appendValueAsString(sb);
+                length += sb.length();
+            }
+            sink += length;
+            return records.size();
+        });
+    }
+
+    /**
+     * Выгрузка потоковым разбором файла (МБ/с - по исходному файлу)
+     * и загрузка получившегося столбцового файла (МБ/с - по нему);
+     * счётчики загруженного столбцового файла сверяются с исходным
+     */
+    private void runExportBenchmarks(Path file, Dim dim, DatXML datXML) throws IOException {
+        String name = file.getFileName().toString();
+        long size = file.toFile().length();
+        String path = file.toString();
+        Path csvFile = Paths.get(path + ".bench.csv");
+        Path columnarFile = Paths.get(path + ".bench" + TmColumnarFile.EXTENSION);
+        try {
+            measure("Выгрузка CSV", name, size, () -> {
+                try (TmCsvWriter writer = new TmCsvWriter(csvFile, datXML, dim)) {
+                    writer.exportFile(path);
+                    return writer.getRecords();
+                }
+            });
+            measure("Выгрузка .tmc", name, size, () -> {
+                try (TmColumnarWriter writer = new TmColumnarWriter(columnarFile, datXML, dim)) {
+                    writer.exportFile(path);
+                    return writer.getRecords();
+                }
+            });
+            String columnarPath = columnarFile.toString();
+            measure("ReadTMIColumnarFile", name, Files.size(columnarFile),
+                    () -> load(new ReadTMIColumnarFile(), columnarPath, dim, datXML));
+            ReadTMIColumnar expected = new ReadTMIColumnar();
+            expected.load(path, dim, datXML);
+            ReadTMIColumnarFile actual = new ReadTMIColumnarFile();
+            actual.load(columnarPath, dim, datXML);
+            checkCounters(expected, actual);
+            expected.release();
+            actual.release();
+        } finally {
+            Files.deleteIfExists(csvFile);
+            Files.deleteIfExists(columnarFile);
+        }
+    }
+
+    /** Сверяет все счётчики записей; при расхождении - IllegalStateException */
+    private static void checkCounters(TmReader expected, TmReader actual) {
+        checkCounter("Всего", expected.getTotalRecords(), actual.getTotalRecords());
+        checkCounter("Служебных", expected.getServiceRecords(), actual.getServiceRecords());
+        checkCounter("Полезных", expected.getUsefulRecords(), actual.getUsefulRecords());
+        checkCounter("Неизвестных", expected.getUnknownRecords(), actual.getUnknownRecords());
+        for (int type = 0; type < expected.getTypeCounts().length; type++) {
+            checkCounter("Тип " + type, expected.getTypeCounts()[type], actual.getTypeCounts()[type]);
+        }
+        checkCounter("Point < 4 байт", expected.getPointLess4(), actual.getPointLess4());
+        checkCounter("Point > 4 байт", expected.getPointGreater4(), actual.getPointGreater4());
+        checkCounter("Code < 8 разрядов", expected.getCodeLess8(), actual.getCodeLess8());
+        checkCounter("Code > 8 разрядов", expected.getCodeGreater8(), actual.getCodeGreater8());
+        for (int code = 0; code < expected.getDimensionCounts().length; code++) {
+            checkCounter("Размерность " + code, expected.getDimensionCounts()[code], actual.getDimensionCounts()[code]);
+        }
+    }
+
+    private static void checkCounter(String name, int expected, int actual) {
+        if (expected != actual) {
+            throw new IllegalStateException("Счётчик \"" + name + "\" после выгрузки: " + actual
+                    + ", в исходном файле: " + expected);
+        }
+    }
+
+    /** Прежний getValueAsString на String.format */
+    private static String formatValue(TmDat record) {
+        if (record instanceof TmLong) {
+            return ((TmLong) record).getValue() + " " + record.getDimension();
+        } else if (record instanceof TmDouble) {
+            return String.format("%.6f %s", ((TmDouble) record).getValue(), record.getDimension());
+        } else if (record instanceof TmCode) {
+            TmCode code = (TmCode) record;
+            return String.format("Code(len=%d): %d %s", code.getCodeLength(), code.getCodeValue(), record.getDimension());
+        } else if (record instanceof TmPoint) {
+            TmPoint point = (TmPoint) record;
+            return String.format("Point array: %d bytes (element size %d)", point.getDataLength(), point.getElementSize());
+        }
+        return record.getValueAsString();
+    }
+
+    private static List<TmDat> longestList(TmReader reader) {
+        List<TmDat> longest = Collections.emptyList();
+        for (List<TmDat> records : reader.getRecordsByName().values()) {
+            if (records.size() > longest.size()) longest = records;
+        }
+        return longest;
+    }
+
+    private static long load(TmReader reader, String path, Dim dim, DatXML datXML) throws IOException {
+        reader.load(path, dim, datXML);
+        return reader.getTotalRecords();
+    }
+
+    /**
+     * Выполняет замер и печатает строку результата
+     * @param bytes объём входных данных одной операции (0 - не выводить МБ/с)
+     */
+    private void measure(String name, String input, long bytes, Operation operation) {
+        try {
+            for (int i = 0; i < warmup; i++) {
+                operation.run();
+            }
+            long records = 0;
+            long totalNanos = 0;
+            long totalAllocated = 0;
+            long threadId = Thread.currentThread().getId();
+            for (int i = 0; i < iterations; i++) {
+                System.gc();
+                long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+                long t0 = System.nanoTime();
+                records = operation.run();
+                totalNanos += System.nanoTime() - t0;
+                totalAllocated += THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }
+            report(name, input, bytes, records, totalNanos / (double) iterations,
+                    totalAllocated / (double) iterations);
+        } catch (Throwable e) {
+            // OutOfMemoryError и ошибки разбора не должны прерывать остальные замеры
+            OUT.printf("%-26s %-20s ошибка: %s%n", name, input, e);
+        }
+    }
+
+    private void report(String name, String input, long bytes, long records, double nanos, double allocated) {
+        double seconds = nanos / 1e9;
+        double mbPerSec = bytes > 0 ? bytes / seconds / (1 << 20) : 0;
+        double recPerSec = records > 0 ? records / seconds : 0;
+        double allocPerRecord = records > 0 ? allocated / records : 0;
+        OUT.printf("%-26s %-20s %10.1f мс %9.1f МБ/с %12.0f зап/с %14.0f Б/оп %9.1f Б/зап%n",
+                name, input, nanos / 1e6, mbPerSec, recPerSec, allocated, allocPerRecord);
+        if (csv != null) {
+            csv.printf(Locale.ROOT, "%s,%s,%.3f,%.3f,%.0f,%.0f,%.3f%n",
+                    name, input, nanos / 1e6, mbPerSec, recPerSec, allocated, allocPerRecord);
+        }
+    }
+}
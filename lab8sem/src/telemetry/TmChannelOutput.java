@@ -0,0 +1,163 @@
+package telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Запись в файл через FileChannel крупным буфером в куче.
+ * Буфер открыт вызывающему: текст пишется прямо в массив ({@link #reserve},
+ * затем {@link #commit}), числа - методами put (big-endian).
+ * В памяти находится только содержимое буфера, а не весь вывод.
+ */
+public class TmChannelOutput implements Closeable {
+    /** Размер буфера по умолчанию */
+    public static final int DEFAULT_BUFFER_SIZE = 4 << 20;
+
+    private final FileChannel channel;
+    private final byte[] array;
+    private final ByteBuffer buffer;
+    private int pos = 0;
+    /** Байт, уже переданных каналу */
+    private long flushed = 0;
+
+    public TmChannelOutput(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    public TmChannelOutput(Path path, int bufferSize) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        array = new byte[bufferSize];
+        buffer = ByteBuffer.wrap(array);
+    }
+
+    /**
+     * Освобождает в буфере место для n байт (n не больше размера буфера)
+     * @return позиция в {@link #array()}, с которой можно писать
+     */
+    public int reserve(int n) throws IOException {
+        if (pos + n > array.length) {
+            if (n > array.length) {
+                throw new IllegalArgumentException("Не помещается в буфер: " + n + " байт");
+            }
+            flush();
+        }
+        return pos;
+    }
+
+    /** Принимает байты, записанные в массив после {@link #reserve}, до позиции end */
+    public void commit(int end) {
+        pos = end;
+    }
+
+    public byte[] array() { return array; }
+
+    public void putByte(int value) throws IOException {
+        reserve(1);
+        array[pos++] = (byte) value;
+    }
+
+    public void putInt(int value) throws IOException {
+        reserve(4);
+        buffer.putInt(pos, value);
+        pos += 4;
+    }
+
+    public void putLong(long value) throws IOException {
+        reserve(8);
+        buffer.putLong(pos, value);
+        pos += 8;
+    }
+
+    /** Записывает n чисел long массива подряд */
+    public void putLongs(long[] src, int n) throws IOException {
+        for (int i = 0; i < n; ) {
+            if (array.length - pos < 8) {
+                flush();
+            }
+            int count = Math.min(n - i, (array.length - pos) / 8);
+            buffer.position(pos);
+            buffer.asLongBuffer().put(src, i, count);
+            buffer.position(0);
+            pos += 8 * count;
+            i += count;
+        }
+    }
+
+    /** Записывает n чисел int массива подряд */
+    public void putInts(int[] src, int n) throws IOException {
+        for (int i = 0; i < n; ) {
+            if (array.length - pos < 4) {
+                flush();
+            }
+            int count = Math.min(n - i, (array.length - pos) / 4);
+            buffer.position(pos);
+            buffer.asIntBuffer().put(src, i, count);
+            buffer.position(0);
+            pos += 4 * count;
+            i += count;
+        }
+    }
+
+    public void put(byte[] src, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (pos == array.length) {
+                flush();
+            }
+            int n = Math.min(length, array.length - pos);
+            System.arraycopy(src, offset, array, pos, n);
+            pos += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /** Копирует оставшиеся байты буфера src (его позиция не меняется) */
+    public void put(ByteBuffer src) throws IOException {
+        ByteBuffer data = src.duplicate();
+        while (data.hasRemaining()) {
+            if (pos == array.length) {
+                flush();
+            }
+            int n = Math.min(data.remaining(), array.length - pos);
+            data.get(array, pos, n);
+            pos += n;
+        }
+    }
+
+    /** Дописывает нули до позиции, кратной alignment */
+    public void align(int alignment) throws IOException {
+        while (position() % alignment != 0) {
+            putByte(0);
+        }
+    }
+
+    /** Смещение в файле следующего записываемого байта */
+    public long position() {
+        return flushed + pos;
+    }
+
+    /** Передаёт содержимое буфера каналу */
+    public void flush() throws IOException {
+        buffer.limit(pos).position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        flushed += pos;
+        pos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package telemetry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Данные графика параметра: числовые значения (Long, Double, Code) рядов
+ * хранилища, упорядоченные по времени, и пирамида уровней прореживания.
+ * Элемент уровня 1 объединяет FANOUT отсчётов, элемент уровня k+1 - FANOUT
+ * элементов уровня k; элемент хранит время первого и последнего отсчёта,
+ * минимум, максимум, первое и последнее значение.
+ *
+ * Пирамида строится один раз (вне потока интерфейса) прямо по столбцам рядов,
+ * сами отсчёты не копируются: при прореживании короткого интервала они читаются
+ * из рядов. Прореживание видимого интервала до ширины графика ({@link #decimate})
+ * выбирает уровень, где на пиксель приходится лишь несколько элементов, поэтому
+ * его стоимость зависит от ширины в пикселях, а не от количества отсчётов.
+ */
+public class TmChartData {
+    private static final int FANOUT = 8;
+    /** Уровни строятся, пока в уровне отсчётов больше */
+    private static final int MIN_LEVEL_SIZE = 64;
+    /** Сколько элементов уровня на пиксель достаточно для точной картины */
+    private static final int ENTRIES_PER_PIXEL = 2;
+
+    /** Уровень пирамиды */
+    private static final class Level {
+        long[] firstTimes;
+        long[] lastTimes;
+        double[] min;
+        double[] max;
+        double[] first;
+        double[] last;
+        int size = 0;
+
+        Level(int capacity) {
+            firstTimes = new long[capacity];
+            lastTimes = new long[capacity];
+            min = new double[capacity];
+            max = new double[capacity];
+            first = new double[capacity];
+            last = new double[capacity];
+        }
+
+        void add(long firstTime, long lastTime, double minValue, double maxValue, double firstValue, double lastValue) {
+            firstTimes[size] = firstTime;
+            lastTimes[size] = lastTime;
+            min[size] = minValue;
+            max[size] = maxValue;
+            first[size] = firstValue;
+            last[size] = lastValue;
+            size++;
+        }
+
+        void trimToSize() {
+            firstTimes = Arrays.copyOf(firstTimes, size);
+            lastTimes = Arrays.copyOf(lastTimes, size);
+            min = Arrays.copyOf(min, size);
+            max = Arrays.copyOf(max, size);
+            first = Arrays.copyOf(first, size);
+            last = Arrays.copyOf(last, size);
+        }
+
+        /** Индекс первого элемента, у которого последний отсчёт не раньше time */
+        int firstEnding(long time) {
+            return lowerBound(lastTimes, size, time);
+        }
+
+        /** Индекс первого элемента, у которого первый отсчёт позже time */
+        int firstStartingAfter(long time) {
+            return time == Long.MAX_VALUE ? size : lowerBound(firstTimes, size, time + 1);
+        }
+    }
+
+    /**
+     * Последовательный обход числовых отсчётов рядов со временем в [from, to]
+     * в порядке времени; при равном времени раньше идёт ряд, стоящий в списке раньше
+     */
+    private static final class Samples {
+        private final List<TmSeries> series;
+        private final int[] positions;
+        private final int[] ends;
+        long time;
+        double value;
+
+        Samples(List<TmSeries> series, long from, long to) {
+            this.series = series;
+            positions = new int[series.size()];
+            ends = new int[series.size()];
+            for (int k = 0; k < positions.length; k++) {
+                positions[k] = series.get(k).lowerBound(from);
+                ends[k] = series.get(k).upperBound(to);
+            }
+        }
+
+        /** Переходит к следующему отсчёту; false, если отсчётов больше нет */
+        boolean next() {
+            while (true) {
+                int best = -1;
+                long bestTime = Long.MAX_VALUE;
+                for (int k = 0; k < positions.length; k++) {
+                    if (positions[k] < ends[k]) {
+                        long t = series.get(k).getTime(positions[k]);
+                        if (best < 0 || t < bestTime) {
+                            best = k;
+                            bestTime = t;
+                        }
+                    }
+                }
+                if (best < 0) {
+                    return false;
+                }
+                TmSeries s = series.get(best);
+                int i = positions[best]++;
+                switch (s.getValueType(i)) {
+                    case 0:
+                        value = s.getLongValue(i);
+                        break;
+                    case 1:
+                        value = s.getDoubleValue(i);
+                        if (Double.isNaN(value) || Double.isInfinite(value)) continue;
+                        break;
+                    case 2:
+                        value = s.getCodeValue(i);
+                        break;
+                    default:
+                        continue;
+                }
+                time = bestTime;
+                return true;
+            }
+        }
+    }
+
+    private final List<TmSeries> series;
+    private final int size;
+    private final long minTime;
+    private final long maxTime;
+    private final Level[] levels;
+
+    private TmChartData(List<TmSeries> series) {
+        this.series = series;
+        int capacity = 0;
+        for (TmSeries s : series) {
+            capacity += (s.size() + FANOUT - 1) / FANOUT;
+        }
+        Level base = new Level(capacity);
+        int count = 0;
+        long firstTime = -1;
+        long lastTime = -1;
+        Samples samples = new Samples(series, 0, Long.MAX_VALUE);
+        long entryFirstTime = 0;
+        double min = 0, max = 0, first = 0, last = 0;
+        while (samples.next()) {
+            double value = samples.value;
+            last = value;
+            if (count % FANOUT == 0) {
+                entryFirstTime = samples.time;
+                min = value;
+                max = value;
+                first = value;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (count % FANOUT == FANOUT - 1) {
+                base.add(entryFirstTime, samples.time, min, max, first, value);
+            }
+            if (count == 0) firstTime = samples.time;
+            lastTime = samples.time;
+            count++;
+        }
+        if (count % FANOUT != 0) {
+            base.add(entryFirstTime, lastTime, min, max, first, last);
+        }
+        base.trimToSize();
+        this.size = count;
+        this.minTime = firstTime;
+        this.maxTime = lastTime;
+        this.levels = count > MIN_LEVEL_SIZE ? buildLevels(base) : new Level[0];
+    }
+
+    /**
+     * Строит данные графика по рядам параметра (например, {@link ReadTMIColumnar#getSeries}).
+     * Ряды должны быть упорядочены по времени и не меняться, пока данные используются.
+     * Записи Point, неизвестного типа и нечисловые значения Double пропускаются.
+     */
+    public static TmChartData buildFromSeries(List<TmSeries> series) {
+        for (TmSeries s : series) {
+            if (!s.isSortedByTime()) {
+                throw new IllegalArgumentException("Ряд не упорядочен по времени");
+            }
+        }
+        return new TmChartData(series);
+    }
+
+    /**
+     * Строит данные графика по записям параметра (для загрузчиков без хранилища):
+     * числовые значения копируются в ряд в куче и упорядочиваются по времени.
+     */
+    public static TmChartData build(List<TmDat> records) {
+        TmColumnSeries s = new TmColumnSeries(new TmPointArena());
+        for (TmDat record : records) {
+            double value;
+            if (record instanceof TmLong) {
+                value = ((TmLong) record).getValue();
+            } else if (record instanceof TmDouble) {
+                value = ((TmDouble) record).getValue();
+            } else if (record instanceof TmCode) {
+                value = ((TmCode) record).getCodeValue();
+            } else {
+                continue;
+            }
+            s.add(record.getTime(), 1, 0, 0, Double.doubleToRawLongBits(value));
+        }
+        s.sortByTime();
+        s.trimToSize();
+        return buildFromSeries(List.of(s));
+    }
+
+    /** Строит уровни над первым, пока в уровне больше MIN_LEVEL_SIZE элементов */
+    private static Level[] buildLevels(Level base) {
+        List<Level> result = new ArrayList<>();
+        result.add(base);
+        Level previous = base;
+        while (previous.size > MIN_LEVEL_SIZE) {
+            Level level = new Level((previous.size + FANOUT - 1) / FANOUT);
+            for (int from = 0; from < previous.size; from += FANOUT) {
+                int to = Math.min(previous.size, from + FANOUT);
+                double min = previous.min[from];
+                double max = previous.max[from];
+                for (int i = from + 1; i < to; i++) {
+                    min = Math.min(min, previous.min[i]);
+                    max = Math.max(max, previous.max[i]);
+                }
+                level.add(previous.firstTimes[from], previous.lastTimes[to - 1], min, max,
+                        previous.first[from], previous.last[to - 1]);
+            }
+            result.add(level);
+            previous = level;
+        }
+        return result.toArray(new Level[0]);
+    }
+
+    /** Количество отсчётов */
+    public int size() { return size; }
+
+    /** Время первого отсчёта (-1, если отсчётов нет) */
+    public long getMinTime() { return minTime; }
+
+    /** Время последнего отсчёта (-1, если отсчётов нет) */
+    public long getMaxTime() { return maxTime; }
+
+    /** Количество уровней пирамиды (без уровня отсчётов) */
+    public int getLevelCount() { return levels.length; }
+
+    /**
+     * Прореживает интервал [from, to] до width столбцов: для каждого столбца
+     * минимум, максимум, первое и последнее значение попавших в него отсчётов.
+     * В столбцах без отсчётов записывается NaN.
+     * @return количество просмотренных элементов (для оценки работы)
+     */
+    public int decimate(long from, long to, int width,
+                        double[] outMin, double[] outMax, double[] outFirst, double[] outLast) {
+        if (width <= 0) {
+            return 0;
+        }
+        Arrays.fill(outMin, 0, width, Double.NaN);
+        Arrays.fill(outMax, 0, width, Double.NaN);
+        Arrays.fill(outFirst, 0, width, Double.NaN);
+        Arrays.fill(outLast, 0, width, Double.NaN);
+        if (to < from || to == Long.MAX_VALUE) {
+            return 0;
+        }
+        double scale = width / (double) (to - from + 1);
+
+        // Самый грубый уровень, где на пиксель приходится не меньше ENTRIES_PER_PIXEL элементов
+        int levelIndex = -1;
+        while (levelIndex + 1 < levels.length) {
+            Level next = levels[levelIndex + 1];
+            if (next.firstStartingAfter(to) - next.firstEnding(from) < (long) ENTRIES_PER_PIXEL * width) {
+                break;
+            }
+            levelIndex++;
+        }
+
+        if (levelIndex < 0) {
+            // Отсчётов в интервале мало: читаем их из рядов
+            int count = 0;
+            Samples samples = new Samples(series, from, to);
+            while (samples.next()) {
+                double value = samples.value;
+                merge(column(samples.time, from, scale, width), value, value, value, value,
+                        outMin, outMax, outFirst, outLast);
+                count++;
+            }
+            return count;
+        }
+        Level level = levels[levelIndex];
+        int start = level.firstEnding(from);
+        int end = level.firstStartingAfter(to);
+        for (int e = start; e < end; e++) {
+            int x = column(Math.max(level.firstTimes[e], from), from, scale, width);
+            merge(x, level.min[e], level.max[e], level.first[e], level.last[e], outMin, outMax, outFirst, outLast);
+        }
+        return Math.max(0, end - start);
+    }
+
+    private static int column(long time, long from, double scale, int width) {
+        int x = (int) ((time - from) * scale);
+        return Math.max(0, Math.min(width - 1, x));
+    }
+
+    private static void merge(int x, double min, double max, double first, double last,
+                              double[] outMin, double[] outMax, double[] outFirst, double[] outLast) {
+        if (Double.isNaN(outMin[x])) {
+            outMin[x] = min;
+            outMax[x] = max;
+            outFirst[x] = first;
+        } else {
+            outMin[x] = Math.min(outMin[x], min);
+            outMax[x] = Math.max(outMax[x], max);
+        }
+        outLast[x] = last;
+    }
+
+    /** Индекс первого из size элементов массива, не меньшего time */
+    private static int lowerBound(long[] times, int size, long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,243 @@
+package telemetry;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * График значений параметра по времени поверх {@link TmChartData}.
+ * Каждый столбец пикселей рисуется по минимуму и максимуму попавших в него
+ * отсчётов, соседние столбцы соединяются последним и первым значениями.
+ * Колесо мыши масштабирует вокруг указателя, перетаскивание сдвигает интервал,
+ * двойной щелчок возвращает весь интервал данных.
+ */
+public class TmChartPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final int LEFT = 90;
+    private static final int RIGHT = 10;
+    private static final int TOP = 10;
+    private static final int BOTTOM = 22;
+    private static final double ZOOM_STEP = 1.25;
+    /** Наименьший показываемый интервал, мс */
+    private static final long MIN_SPAN = 10;
+
+    private static final Color PLOT_BACKGROUND = Color.WHITE;
+    private static final Color GRID_COLOR = new Color(230, 230, 230);
+    private static final Color LINE_COLOR = new Color(0, 80, 200);
+
+    private TmChartData data;
+    private String message = "Нет данных";
+    private long viewFrom;
+    private long viewTo;
+
+    // Прореживание для текущего интервала и ширины
+    private double[] columnMin = new double[0];
+    private double[] columnMax = new double[0];
+    private double[] columnFirst = new double[0];
+    private double[] columnLast = new double[0];
+
+    private int dragX = -1;
+    private long dragFrom;
+    private long dragTo;
+
+    public TmChartPanel() {
+        setBackground(new Color(245, 245, 245));
+        setPreferredSize(new Dimension(600, 220));
+
+        addMouseWheelListener(e -> {
+            if (data == null) return;
+            long anchor = timeAt(e.getX());
+            double factor = Math.pow(ZOOM_STEP, e.getPreciseWheelRotation());
+            long from = anchor - Math.round((anchor - viewFrom) * factor);
+            long to = anchor + Math.round((viewTo - anchor) * factor);
+            setView(from, to);
+        });
+        MouseAdapter drag = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                dragFrom = viewFrom;
+                dragTo = viewTo;
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (data == null || dragX < 0) return;
+                long shift = Math.round((dragX - e.getX()) * (double) (dragTo - dragFrom) / plotWidth());
+                setView(dragFrom + shift, dragTo + shift);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragX = -1;
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && data != null) {
+                    setView(data.getMinTime(), data.getMaxTime());
+                }
+            }
+        };
+        addMouseListener(drag);
+        addMouseMotionListener(drag);
+    }
+
+    /**
+     * Показывает данные в интервале [from, to] (обрезается по данным)
+     * @param data данные графика; null - показать сообщение
+     */
+    public void setData(TmChartData data, long from, long to) {
+        this.data = data;
+        if (data == null || data.size() == 0) {
+            this.data = null;
+            message = "Нет числовых значений";
+        } else {
+            setView(Math.max(from, data.getMinTime()), Math.min(to, data.getMaxTime()));
+        }
+        repaint();
+    }
+
+    /** Показывает сообщение вместо графика (например, пока строятся данные) */
+    public void setMessage(String message) {
+        this.data = null;
+        this.message = message;
+        repaint();
+    }
+
+    private void setView(long from, long to) {
+        long min = data.getMinTime();
+        long max = data.getMaxTime();
+        if (to - from < MIN_SPAN) {
+            long middle = (from + to) / 2;
+            from = middle - MIN_SPAN / 2;
+            to = from + MIN_SPAN;
+        }
+        // Сдвиг внутрь данных без изменения длины, если она помещается
+        long span = to - from;
+        if (span >= max - min) {
+            from = min;
+            to = Math.max(max, min + MIN_SPAN);
+        } else if (from < min) {
+            from = min;
+            to = min + span;
+        } else if (to > max) {
+            to = max;
+            from = max - span;
+        }
+        viewFrom = from;
+        viewTo = to;
+        repaint();
+    }
+
+    private int plotWidth() {
+        return Math.max(1, getWidth() - LEFT - RIGHT);
+    }
+
+    private long timeAt(int x) {
+        double fraction = Math.max(0, Math.min(1, (x - LEFT) / (double) plotWidth()));
+        return viewFrom + Math.round(fraction * (viewTo - viewFrom));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        int width = plotWidth();
+        int height = Math.max(1, getHeight() - TOP - BOTTOM);
+        g.setColor(PLOT_BACKGROUND);
+        g.fillRect(LEFT, TOP, width, height);
+        g.setColor(Color.GRAY);
+        g.drawRect(LEFT, TOP, width, height);
+        FontMetrics fm = g.getFontMetrics();
+
+        if (data == null) {
+            g.setColor(Color.DARK_GRAY);
+            g.drawString(message, LEFT + 10, TOP + fm.getAscent() + 10);
+            return;
+        }
+
+        if (columnMin.length < width) {
+            columnMin = new double[width];
+            columnMax = new double[width];
+            columnFirst = new double[width];
+            columnLast = new double[width];
+        }
+        data.decimate(viewFrom, viewTo, width, columnMin, columnMax, columnFirst, columnLast);
+
+        // Диапазон значений видимой части
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+        for (int x = 0; x < width; x++) {
+            if (!Double.isNaN(columnMin[x])) {
+                low = Math.min(low, columnMin[x]);
+                high = Math.max(high, columnMax[x]);
+            }
+        }
+        if (low > high) {
+            g.setColor(Color.DARK_GRAY);
+            g.drawString("Нет отсчётов в интервале", LEFT + 10, TOP + fm.getAscent() + 10);
+            drawTimeAxis(g, fm, width, height);
+            return;
+        }
+        if (high - low < 1e-12 * Math.max(1, Math.abs(high))) {
+            low -= 1;
+            high += 1;
+        }
+        double margin = (high - low) * 0.05;
+        low -= margin;
+        high += margin;
+
+        // Сетка и подписи значений
+        for (int i = 0; i <= 4; i++) {
+            int y = TOP + height - i * height / 4;
+            g.setColor(GRID_COLOR);
+            g.drawLine(LEFT + 1, y, LEFT + width - 1, y);
+            g.setColor(Color.DARK_GRAY);
+            String label = formatValue(low + (high - low) * i / 4);
+            g.drawString(label, LEFT - 4 - fm.stringWidth(label), y + fm.getAscent() / 2 - 1);
+        }
+        drawTimeAxis(g, fm, width, height);
+
+        // Кривая: вертикальный отрезок min-max в каждом столбце и связь с предыдущим столбцом
+        Graphics clip = g.create(LEFT, TOP, width + 1, height + 1);
+        clip.setColor(LINE_COLOR);
+        double yScale = height / (high - low);
+        int previousY = Integer.MIN_VALUE;
+        int previousX = 0;
+        for (int x = 0; x < width; x++) {
+            if (Double.isNaN(columnMin[x])) continue;
+            int yMin = (int) Math.round((high - columnMin[x]) * yScale);
+            int yMax = (int) Math.round((high - columnMax[x]) * yScale);
+            int yFirst = (int) Math.round((high - columnFirst[x]) * yScale);
+            if (previousY != Integer.MIN_VALUE) {
+                clip.drawLine(previousX, previousY, x, yFirst);
+            }
+            clip.drawLine(x, yMax, x, yMin);
+            previousX = x;
+            previousY = (int) Math.round((high - columnLast[x]) * yScale);
+        }
+        clip.dispose();
+    }
+
+    private void drawTimeAxis(Graphics g, FontMetrics fm, int width, int height) {
+        g.setColor(Color.DARK_GRAY);
+        int y = TOP + height + fm.getAscent() + 3;
+        for (int i = 0; i <= 4; i++) {
+            int x = LEFT + i * width / 4;
+            String label = TmDat.formatTime(viewFrom + (viewTo - viewFrom) * i / 4);
+            int labelX = Math.max(0, Math.min(getWidth() - fm.stringWidth(label), x - fm.stringWidth(label) / 2));
+            g.drawString(label, labelX, y);
+        }
+    }
+
+    private static String formatValue(double value) {
+        double abs = Math.abs(value);
+        if (abs != 0 && (abs >= 1e7 || abs < 1e-3)) {
+            return String.format("%.3e", value);
+        }
+        StringBuilder sb = new StringBuilder(16);
+        TmFormat.appendFixed6(sb, value);
+        // Подписи оси короче: не больше трёх знаков после запятой
+        return sb.substring(0, sb.length() - 3);
+    }
+}
@@ -12,6 +12,30 @@ public class TmCode extends TmDat {
 
     @Override
     public String getValueAsString() {
-        return String.format("Code(len=%d): %d %s", codeLength, codeValue, dimension);
+        StringBuilder sb = new StringBuilder(40);
+        appendValueAsString(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public String getValueText() {
+        StringBuilder sb = new StringBuilder(32);
+        appendValueText(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void appendValueAsString(StringBuilder sb) {
+        appendValueText(sb);
+        sb.append(' ').append(dimension);
+    }
+
+    // Как "Code(len=%d): %d"
+    @Override
+    public void appendValueText(StringBuilder sb) {
+        sb.append("Code(len=");
+        TmFormat.appendInt(sb, codeLength);
+        sb.append("): ");
+        TmFormat.appendInt(sb, codeValue);
     }
 }
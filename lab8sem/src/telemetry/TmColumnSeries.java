@@ -0,0 +1,177 @@
+package telemetry;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Временной ряд параметра в куче: растущие массивы примитивов по столбцам.
+ */
+public class TmColumnSeries implements TmMutableSeries {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final TmPointArena arena;
+    private int size = 0;
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private byte[] attributes = new byte[INITIAL_CAPACITY];
+    private byte[] dimensions = new byte[INITIAL_CAPACITY];
+    /** Записи упорядочены по времени (при добавлении проверяется только соседняя пара) */
+    private boolean sorted = true;
+
+    public TmColumnSeries(TmPointArena arena) {
+        this.arena = arena;
+    }
+
+    @Override
+    public void add(long time, int valueType, int attribute, int dimensionCode, long rawValue) {
+        if (size == times.length) {
+            grow(size + 1);
+        }
+        if (size > 0 && time < times[size - 1]) {
+            sorted = false;
+        }
+        times[size] = time;
+        values[size] = rawValue;
+        types[size] = (byte) valueType;
+        attributes[size] = (byte) attribute;
+        dimensions[size] = (byte) dimensionCode;
+        size++;
+    }
+
+    /**
+     * Добавляет в конец все записи другого ряда.
+     * Данные Point копируются в область этого ряда.
+     */
+    public void addAll(TmColumnSeries other) {
+        int n = other.size;
+        if (n == 0) {
+            return;
+        }
+        if (size + n > times.length) {
+            grow(size + n);
+        }
+        if (!other.sorted || (size > 0 && other.times[0] < times[size - 1])) {
+            sorted = false;
+        }
+        System.arraycopy(other.times, 0, times, size, n);
+        System.arraycopy(other.values, 0, values, size, n);
+        System.arraycopy(other.types, 0, types, size, n);
+        System.arraycopy(other.attributes, 0, attributes, size, n);
+        System.arraycopy(other.dimensions, 0, dimensions, size, n);
+        if (other.arena != arena) {
+            for (int i = 0; i < n; i++) {
+                if (other.types[i] == 3) {
+                    int length = other.getPointLength(i);
+                    long offset = arena.add(other.getPointData(i), 0, length);
+                    values[size + i] = TmSeries.packPoint(offset, length);
+                }
+            }
+        }
+        size += n;
+    }
+
+    /**
+     * Добавляет в конец n записей, заданных столбцами.
+     * Ссылки на данные Point должны относиться к области этого ряда.
+     */
+    @Override
+    public void addColumns(int n, long[] times, long[] values, byte[] types, byte[] attributes, byte[] dimensions) {
+        if (n == 0) {
+            return;
+        }
+        if (size + n > this.times.length) {
+            grow(size + n);
+        }
+        long previous = size > 0 ? this.times[size - 1] : Long.MIN_VALUE;
+        for (int i = 0; i < n && sorted; i++) {
+            if (times[i] < previous) {
+                sorted = false;
+            }
+            previous = times[i];
+        }
+        System.arraycopy(times, 0, this.times, size, n);
+        System.arraycopy(values, 0, this.values, size, n);
+        System.arraycopy(types, 0, this.types, size, n);
+        System.arraycopy(attributes, 0, this.attributes, size, n);
+        System.arraycopy(dimensions, 0, this.dimensions, size, n);
+        size += n;
+    }
+
+    /**
+     * Упорядочивает записи по времени; записи с одинаковым временем
+     * сохраняют порядок поступления. Упорядоченный ряд не трогается.
+     */
+    @Override
+    public void sortByTime() {
+        if (sorted) {
+            return;
+        }
+        // Время занимает 32 бита, номер записи - 31: сортируем упакованные пары
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = times[i] << 31 | i;
+        }
+        Arrays.sort(order);
+        long[] newTimes = new long[times.length];
+        long[] newValues = new long[times.length];
+        byte[] newTypes = new byte[times.length];
+        byte[] newAttributes = new byte[times.length];
+        byte[] newDimensions = new byte[times.length];
+        for (int i = 0; i < size; i++) {
+            int from = (int) (order[i] & 0x7FFF_FFFF);
+            newTimes[i] = times[from];
+            newValues[i] = values[from];
+            newTypes[i] = types[from];
+            newAttributes[i] = attributes[from];
+            newDimensions[i] = dimensions[from];
+        }
+        times = newTimes;
+        values = newValues;
+        types = newTypes;
+        attributes = newAttributes;
+        dimensions = newDimensions;
+        sorted = true;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, times.length + (times.length >> 1));
+        times = Arrays.copyOf(times, capacity);
+        values = Arrays.copyOf(values, capacity);
+        types = Arrays.copyOf(types, capacity);
+        attributes = Arrays.copyOf(attributes, capacity);
+        dimensions = Arrays.copyOf(dimensions, capacity);
+    }
+
+    /** Обрезает массивы до фактического размера */
+    @Override
+    public void trimToSize() {
+        if (size < times.length) {
+            times = Arrays.copyOf(times, size);
+            values = Arrays.copyOf(values, size);
+            types = Arrays.copyOf(types, size);
+            attributes = Arrays.copyOf(attributes, size);
+            dimensions = Arrays.copyOf(dimensions, size);
+        }
+    }
+
+    /** Память, занятая массивами ряда, в байтах (без заголовков объектов) */
+    @Override
+    public long getAllocatedBytes() {
+        return (long) times.length * (8 + 8 + 1 + 1 + 1);
+    }
+
+    @Override public int size() { return size; }
+    @Override public boolean isSortedByTime() { return sorted; }
+    @Override public long getTime(int index) { return times[index]; }
+    @Override public int getValueType(int index) { return types[index]; }
+    @Override public int getAttribute(int index) { return attributes[index]; }
+    @Override public int getDimensionCode(int index) { return dimensions[index] & 0xFF; }
+    @Override public long getRawValue(int index) { return values[index]; }
+
+    @Override
+    public ByteBuffer getPointData(int index) {
+        long raw = values[index];
+        return arena.view(TmSeries.pointOffset(raw), (int) (raw >>> 48));
+    }
+}
@@ -0,0 +1,542 @@
+package telemetry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Столбцовое хранилище записей, разложенных по номерам параметров.
+ * Записи неизвестного типа хранятся в отдельном ряду параметра
+ * (в TmReader они группируются под именем "имя [unknown type]").
+ * Объекты TmDat создаются только при обращении к ним через представления.
+ *
+ * Ряды и данные Point лежат в куче или, если задана память {@link TmOffHeapMemory},
+ * вне её (тогда куча не растёт с размером файла). Память вне кучи освобождается
+ * явно вызовом {@link #release}; после этого обращение к записям хранилища
+ * завершается IllegalStateException.
+ * Ряды можно хранить сжатыми ({@link TmCompressedSeries}); сжатые ряды лежат
+ * в куче, а данные Point - там, где задано памятью.
+ */
+public class TmColumnStore implements TmRecordListener {
+    /** Признак ряда записей неизвестного типа в ключе */
+    public static final int UNKNOWN_FLAG = 0x10000;
+    private static final int KEY_COUNT = 2 * UNKNOWN_FLAG;
+
+    /** Ряды по ключу страницами по 256 ключей; страница создаётся с первым рядом в ней */
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private final TmMutableSeries[][] pages = new TmMutableSeries[KEY_COUNT >> PAGE_SHIFT][];
+    private final TmOffHeapMemory memory;
+    private final boolean compressed;
+    private final TmPointArena arena;
+    private int seriesCount = 0;
+
+    /** Хранилище в куче */
+    public TmColumnStore() {
+        this(null);
+    }
+
+    /**
+     * @param memory память для записей вне кучи или null для хранилища в куче
+     */
+    public TmColumnStore(TmOffHeapMemory memory) {
+        this(memory, false);
+    }
+
+    /**
+     * @param memory память для записей вне кучи или null для хранилища в куче
+     * @param compressed хранить ряды сжатыми
+     */
+    public TmColumnStore(TmOffHeapMemory memory, boolean compressed) {
+        this.memory = memory;
+        this.compressed = compressed;
+        this.arena = new TmPointArena(memory);
+    }
+
+    /** Ключ ряда: номер параметра плюс признак неизвестного типа */
+    public static int key(int param, boolean unknown) {
+        return unknown ? param | UNKNOWN_FLAG : param;
+    }
+
+    public static int paramOf(int key) {
+        return key & 0xFFFF;
+    }
+
+    public static boolean isUnknown(int key) {
+        return (key & UNKNOWN_FLAG) != 0;
+    }
+
+    private TmMutableSeries series(int key) {
+        TmMutableSeries[] page = pages[key >>> PAGE_SHIFT];
+        return page == null ? null : page[key & PAGE_MASK];
+    }
+
+    private TmMutableSeries seriesFor(int key) {
+        TmMutableSeries s = series(key);
+        if (s == null) {
+            checkOpen();
+            if (compressed) {
+                s = new TmCompressedSeries(arena);
+            } else {
+                s = memory == null ? new TmColumnSeries(arena) : new TmOffHeapSeries(memory, arena);
+            }
+            TmMutableSeries[] page = pages[key >>> PAGE_SHIFT];
+            if (page == null) {
+                page = new TmMutableSeries[PAGE_MASK + 1];
+                pages[key >>> PAGE_SHIFT] = page;
+            }
+            page[key & PAGE_MASK] = s;
+            seriesCount++;
+        }
+        return s;
+    }
+
+    public void add(int param, long time, int valueType, int attribute, int dimensionCode, long rawValue) {
+        seriesFor(key(param, valueType > 3)).add(time, valueType, attribute, dimensionCode, rawValue);
+    }
+
+    public void addPoint(int param, long time, int attribute, int dimensionCode,
+                         ByteBuffer buf, int offset, int dataLength) {
+        long ref = arena.add(buf, offset, dataLength);
+        seriesFor(param).add(time, 3, attribute, dimensionCode, TmSeries.packPoint(ref, dataLength));
+    }
+
+    /**
+     * Добавляет в конец рядов все записи другого хранилища
+     * (используется при слиянии результатов разбора частей файла).
+     */
+    public void addAll(TmColumnStore other) {
+        for (int key : other.getKeys()) {
+            TmMutableSeries target = seriesFor(key);
+            TmMutableSeries source = other.series(key);
+            if (target instanceof TmColumnSeries && source instanceof TmColumnSeries) {
+                ((TmColumnSeries) target).addAll((TmColumnSeries) source);
+                continue;
+            }
+            // Ряды разного вида: по записи, данные Point копируются в область хранилища
+            for (int i = 0; i < source.size(); i++) {
+                long rawValue = source.getRawValue(i);
+                if (source.getValueType(i) == 3) {
+                    ByteBuffer data = source.getPointData(i);
+                    int length = data.remaining();
+                    rawValue = TmSeries.packPoint(arena.add(data, data.position(), length), length);
+                }
+                target.add(source.getTime(i), source.getValueType(i), source.getAttribute(i),
+                        source.getDimensionCode(i), rawValue);
+            }
+        }
+    }
+
+    /**
+     * Добавляет в конец ряда n записей, заданных столбцами. Значения записей Point
+     * ссылаются на данные в pointData (смещение и длина, как в {@link TmSeries#packPoint});
+     * данные копируются в область хранилища, ссылки в values заменяются.
+     */
+    public void addColumns(int key, int n, long[] times, long[] values, byte[] types,
+                           byte[] attributes, byte[] dimensions, ByteBuffer pointData) {
+        for (int i = 0; i < n; i++) {
+            if (types[i] == 3) {
+                int length = (int) (values[i] >>> 48);
+                long ref = arena.add(pointData, (int) TmSeries.pointOffset(values[i]), length);
+                values[i] = TmSeries.packPoint(ref, length);
+            }
+        }
+        seriesFor(key).addColumns(n, times, values, types, attributes, dimensions);
+    }
+
+    // Обработчики записей декодера
+
+    @Override
+    public void onLong(int param, long time, int dimensionCode, int attribute, int value) {
+        add(param, time, 0, attribute, dimensionCode, value);
+    }
+
+    @Override
+    public void onDouble(int param, long time, int dimensionCode, int attribute, double value) {
+        add(param, time, 1, attribute, dimensionCode, Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public void onCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value) {
+        add(param, time, 2, attribute, dimensionCode, TmSeries.packCode(codeLength, value));
+    }
+
+    @Override
+    public void onPoint(int param, long time, int dimensionCode, int attribute, int elementSize,
+                        ByteBuffer buf, int offset, int dataLength) {
+        addPoint(param, time, attribute, dimensionCode, buf, offset, dataLength);
+    }
+
+    @Override
+    public void onUnknown(int param, long time, int dimensionCode, int attribute, int valueType) {
+        add(param, time, valueType, attribute, dimensionCode, 0);
+    }
+
+    /**
+     * Передаёт обработчику записи ряда key со временем в [from, to] в порядке времени,
+     * как их передал бы декодер (размер элемента Point в хранилище не сохраняется и равен 0).
+     * Неупорядоченный ряд сначала упорядочивается.
+     */
+    public void replay(int key, long from, long to, TmRecordListener listener) {
+        checkOpen();
+        TmMutableSeries s = series(key);
+        if (s == null || from > to) {
+            return;
+        }
+        s.sortByTime();
+        int param = paramOf(key);
+        int end = s.upperBound(to);
+        for (int i = s.lowerBound(from); i < end; i++) {
+            long time = s.getTime(i);
+            int dimensionCode = s.getDimensionCode(i);
+            int attribute = s.getAttribute(i);
+            int valueType = s.getValueType(i);
+            switch (valueType) {
+                case 0:
+                    listener.onLong(param, time, dimensionCode, attribute, s.getLongValue(i));
+                    break;
+                case 1:
+                    listener.onDouble(param, time, dimensionCode, attribute, s.getDoubleValue(i));
+                    break;
+                case 2:
+                    listener.onCode(param, time, dimensionCode, attribute, s.getCodeLength(i), s.getCodeValue(i));
+                    break;
+                case 3: {
+                    ByteBuffer data = s.getPointData(i);
+                    listener.onPoint(param, time, dimensionCode, attribute, 0, data, data.position(), data.remaining());
+                    break;
+                }
+                default:
+                    listener.onUnknown(param, time, dimensionCode, attribute, valueType);
+                    break;
+            }
+        }
+    }
+
+    /** Ряд по ключу или null */
+    public TmSeries getSeries(int key) {
+        checkOpen();
+        return series(key);
+    }
+
+    /** Ключи непустых рядов по возрастанию */
+    public int[] getKeys() {
+        int[] keys = new int[seriesCount];
+        int n = 0;
+        for (int p = 0; p < pages.length; p++) {
+            if (pages[p] == null) continue;
+            for (int i = 0; i <= PAGE_MASK; i++) {
+                if (pages[p][i] != null) {
+                    keys[n++] = p << PAGE_SHIFT | i;
+                }
+            }
+        }
+        return keys;
+    }
+
+    /** Упорядочивает по времени все ряды */
+    public void sortByTime() {
+        for (int key : getKeys()) {
+            series(key).sortByTime();
+        }
+    }
+
+    /** Упорядочивает по времени ряды с заданными ключами */
+    public void sortByTime(int[] keys) {
+        for (int key : keys) {
+            if (series(key) != null) series(key).sortByTime();
+        }
+    }
+
+    /**
+     * Курсор по записям ряда со временем в [from, to] (включительно).
+     * Неупорядоченный ряд сначала упорядочивается.
+     * @param key ключ ряда (для записей известных типов - номер параметра)
+     */
+    public TmCursor query(int key, long from, long to) {
+        checkOpen();
+        TmMutableSeries s = series(key);
+        if (s == null || from > to) {
+            return new TmCursor(this, key, 0, 0);
+        }
+        s.sortByTime();
+        return new TmCursor(this, key, s.lowerBound(from), s.upperBound(to));
+    }
+
+    /**
+     * Записи представления из {@link #buildRecordsByName} со временем в [from, to],
+     * упорядоченные по времени
+     */
+    public List<TmDat> timeRange(List<TmDat> records, long from, long to) {
+        if (!(records instanceof SeriesView)) {
+            throw new IllegalArgumentException("Список не является представлением хранилища");
+        }
+        SeriesView view = (SeriesView) records;
+        if (view.keys.length == 1) {
+            return new RangeView(query(view.keys[0], from, to), view.name, view.dim);
+        }
+        // Несколько номеров с одним именем: сливаем диапазоны по времени
+        List<TmDat> result = new ArrayList<>();
+        for (int key : view.keys) {
+            result.addAll(new RangeView(query(key, from, to), view.name, view.dim));
+        }
+        result.sort(Comparator.comparingLong(TmDat::getTime));
+        return result;
+    }
+
+    /** Ряды представления из {@link #buildRecordsByName} в порядке ключей представления */
+    public List<TmSeries> seriesOf(List<TmDat> records) {
+        if (!(records instanceof SeriesView)) {
+            throw new IllegalArgumentException("Список не является представлением хранилища");
+        }
+        List<TmSeries> result = new ArrayList<>();
+        for (int key : ((SeriesView) records).keys) {
+            result.add(series(key));
+        }
+        return result;
+    }
+
+    /** Обрезает ряды с заданными ключами (область данных Point не трогается) */
+    public void trimToSize(int[] keys) {
+        for (int key : keys) {
+            if (series(key) != null) series(key).trimToSize();
+        }
+    }
+
+    public void trimToSize() {
+        arena.trimToSize();
+        for (int key : getKeys()) {
+            series(key).trimToSize();
+        }
+    }
+
+    /** Оценка памяти, занятой данными хранилища (в куче и вне её), в байтах */
+    public long getAllocatedBytes() {
+        long table = pages.length;
+        for (TmMutableSeries[] page : pages) {
+            if (page != null) table += page.length;
+        }
+        return arena.getAllocatedBytes() + table * 4 + getSeriesBytes();
+    }
+
+    /** Память, занятая рядами (без данных Point), в байтах */
+    public long getSeriesBytes() {
+        long bytes = 0;
+        for (int key : getKeys()) {
+            bytes += series(key).getAllocatedBytes();
+        }
+        return bytes;
+    }
+
+    /** Лежат ли записи вне кучи */
+    public boolean isOffHeap() {
+        return memory != null;
+    }
+
+    /** Хранятся ли ряды сжатыми */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /** Память вне кучи или null */
+    public TmOffHeapMemory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Освобождает память вне кучи (у хранилища в куче ничего не делает).
+     * Представления и курсоры хранилища после этого читать нельзя.
+     */
+    public void release() {
+        if (memory == null) {
+            return;
+        }
+        try {
+            memory.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось освободить память хранилища", e);
+        }
+    }
+
+    private void checkOpen() {
+        if (memory != null) {
+            memory.checkOpen();
+        }
+    }
+
+    /** Имя ряда для отображения */
+    public static String seriesName(int key, DatXML datXML) {
+        String name = datXML.getName(paramOf(key));
+        return isUnknown(key) ? name + " [unknown type]" : name;
+    }
+
+    /**
+     * Строит отображение "имя параметра -> записи", как в ReadTMI.
+     * Списки - представления, создающие TmDat при каждом обращении к элементу.
+     */
+    public Map<String, List<TmDat>> buildRecordsByName(DatXML datXML, Dim dim) {
+        return buildRecordsByName(key -> seriesName(key, datXML), dim);
+    }
+
+    /**
+     * То же, с именами рядов из names (по ключу ряда)
+     */
+    public Map<String, List<TmDat>> buildRecordsByName(IntFunction<String> names, Dim dim) {
+        Map<String, List<TmDat>> result = new TreeMap<>();
+        addToRecordsByName(result, getKeys(), names, dim);
+        return result;
+    }
+
+    /**
+     * Добавляет в отображение "имя -> записи" представления новых рядов.
+     * Представления существующих рядов видят добавленные записи сами.
+     * @param keys ключи рядов, ещё не представленных в отображении
+     * @return имена, которых раньше не было в отображении
+     */
+    public List<String> addToRecordsByName(Map<String, List<TmDat>> recordsByName, int[] keys,
+                                           DatXML datXML, Dim dim) {
+        return addToRecordsByName(recordsByName, keys, key -> seriesName(key, datXML), dim);
+    }
+
+    /**
+     * То же, с именами рядов из names (по ключу ряда)
+     */
+    public List<String> addToRecordsByName(Map<String, List<TmDat>> recordsByName, int[] keys,
+                                           IntFunction<String> names, Dim dim) {
+        List<String> added = new ArrayList<>();
+        for (int key : keys) {
+            String name = names.apply(key);
+            List<TmDat> existing = recordsByName.get(name);
+            int[] viewKeys;
+            if (existing instanceof SeriesView) {
+                // Несколько номеров параметров с одним именем
+                int[] old = ((SeriesView) existing).keys;
+                viewKeys = Arrays.copyOf(old, old.length + 1);
+                viewKeys[old.length] = key;
+            } else {
+                viewKeys = new int[] {key};
+                added.add(name);
+            }
+            recordsByName.put(name, new SeriesView(name, viewKeys, dim));
+        }
+        return added;
+    }
+
+    /** Создаёт объект записи index ряда key */
+    public TmDat materialize(int key, int index, String name, Dim dim) {
+        checkOpen();
+        TmSeries s = series(key);
+        int valueType = s.getValueType(index);
+        TmDat record;
+        switch (valueType) {
+            case 0: {
+                TmLong r = new TmLong();
+                r.setValue(s.getLongValue(index));
+                record = r;
+                break;
+            }
+            case 1: {
+                TmDouble r = new TmDouble();
+                r.setValue(s.getDoubleValue(index));
+                record = r;
+                break;
+            }
+            case 2: {
+                TmCode r = new TmCode();
+                r.setCodeLength(s.getCodeLength(index));
+                r.setCodeValue(s.getCodeValue(index));
+                record = r;
+                break;
+            }
+            case 3: {
+                TmPoint r = new TmPoint();
+                r.setDataLength(s.getPointLength(index));
+                r.setDataView(s.getPointData(index));
+                record = r;
+                break;
+            }
+            default:
+                record = new TmUnknown();
+                break;
+        }
+        record.setNumber(paramOf(key));
+        record.setName(name);
+        record.setTime(s.getTime(index));
+        record.setDimension(dim.getDimensionString(s.getDimensionCode(index)));
+        record.setAttribute(s.getAttribute(index));
+        record.setValueType(valueType);
+        return record;
+    }
+
+    /** Список записей диапазона курсора */
+    private class RangeView extends AbstractList<TmDat> implements RandomAccess {
+        private final int key;
+        private final int start;
+        private final int size;
+        private final String name;
+        private final Dim dim;
+
+        RangeView(TmCursor cursor, String name, Dim dim) {
+            this.key = cursor.getKey();
+            this.start = cursor.getIndex() + 1;
+            this.size = cursor.size();
+            this.name = name;
+            this.dim = dim;
+        }
+
+        @Override
+        public TmDat get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+            return materialize(key, start + index, name, dim);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Список записей одного имени поверх одного или нескольких рядов
+     * (несколько номеров параметров могут иметь одно имя).
+     */
+    private class SeriesView extends AbstractList<TmDat> implements RandomAccess {
+        private final String name;
+        private final int[] keys;
+        private final Dim dim;
+
+        SeriesView(String name, int[] keys, Dim dim) {
+            this.name = name;
+            this.keys = keys;
+            this.dim = dim;
+        }
+
+        @Override
+        public TmDat get(int index) {
+            if (index >= 0) {
+                int local = index;
+                for (int key : keys) {
+                    int n = series(key).size();
+                    if (local < n) {
+                        return materialize(key, local, name, dim);
+                    }
+                    local -= n;
+                }
+            }
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (int key : keys) {
+                size += series(key).size();
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Столбцовый файл выгрузки (".tmc"), записываемый {@link TmColumnarWriter}.
+ * Самоописываемый: кроме записей хранит имена рядов, таблицу размерностей,
+ * общие счётчики и статистику рядов, поэтому загружается без справочников
+ * и без разбора записей по одной.
+ *
+ * Формат (big-endian):
+ * <pre>
+ * "TMCF", версия
+ * блоки рядов, каждый с границы 8 байт: n значений long, n времён int (без знака),
+ *     n типов, n атрибутов, n кодов размерности, данные Point
+ * оглавление: счётчики {@link TmCounts}, таблица размерностей (код, строка),
+ *     ряды (ключ, имя, {@link TmParamStats}),
+ *     блоки (ключ, смещение, n, байт данных Point, первое и последнее время)
+ * смещение оглавления (long), "TMCF"
+ * </pre>
+ * Значение записи Point в блоке - смещение её данных от начала данных Point
+ * блока и длина (как в {@link TmSeries#packPoint}).
+ */
+public class TmColumnarFile {
+    /** Расширение файла выгрузки */
+    public static final String EXTENSION = ".tmc";
+    static final int MAGIC = 0x544D4346; // "TMCF"
+    static final int VERSION = 1;
+    /** Длина заголовка и окончания файла */
+    static final int HEADER_SIZE = 8;
+    static final int TRAILER_SIZE = 12;
+    /** Байт на запись в столбцах блока (без данных Point) */
+    static final int RECORD_BYTES = 8 + 4 + 3;
+
+    private final String filename;
+    /** Счётчики и статистика рядов из оглавления */
+    private final TmCounts counts = new TmCounts();
+    /** Размерности из файла (null - кода нет) */
+    private final String[] dimensions = new String[Dim.CODE_COUNT];
+    private int[] keys;
+    private String[] names;
+
+    // Оглавление блоков
+    private int[] chunkKeys;
+    private long[] chunkOffsets;
+    private int[] chunkCounts;
+    private int[] chunkPointBytes;
+    private long[] chunkFirstTimes;
+    private long[] chunkLastTimes;
+
+    private TmColumnarFile(String filename) {
+        this.filename = filename;
+    }
+
+    /** Читает оглавление файла выгрузки */
+    public static TmColumnarFile open(String filename) throws IOException {
+        TmColumnarFile file = new TmColumnarFile(filename);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            if (size < HEADER_SIZE + TRAILER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException(filename + ": не файл выгрузки ТМ");
+            }
+            if (header.getInt() != VERSION) {
+                throw new IOException(filename + ": неизвестная версия файла выгрузки");
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            long footerOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || footerOffset < HEADER_SIZE || footerOffset > size - TRAILER_SIZE) {
+                throw new IOException(filename + ": файл выгрузки не дописан");
+            }
+            ByteBuffer footer = read(channel, footerOffset, (int) (size - TRAILER_SIZE - footerOffset));
+            file.readFooter(new DataInputStream(new ByteArrayInputStream(
+                    footer.array(), footer.position(), footer.remaining())));
+            file.counts.setBytesNum(size);
+        }
+        return file;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buf.flip();
+    }
+
+    private void readFooter(DataInput in) throws IOException {
+        counts.read(in);
+        int dimensionCount = in.readInt();
+        for (int i = 0; i < dimensionCount; i++) {
+            int code = in.readUnsignedByte();
+            dimensions[code] = in.readUTF();
+        }
+        int keyCount = in.readInt();
+        keys = new int[keyCount];
+        names = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = in.readInt();
+            names[i] = in.readUTF();
+            counts.setParamStats(keys[i], TmParamStats.read(in));
+        }
+        int chunkCount = in.readInt();
+        chunkKeys = new int[chunkCount];
+        chunkOffsets = new long[chunkCount];
+        chunkCounts = new int[chunkCount];
+        chunkPointBytes = new int[chunkCount];
+        chunkFirstTimes = new long[chunkCount];
+        chunkLastTimes = new long[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunkKeys[i] = in.readInt();
+            chunkOffsets[i] = in.readLong();
+            chunkCounts[i] = in.readInt();
+            chunkPointBytes[i] = in.readInt();
+            chunkFirstTimes[i] = in.readLong();
+            chunkLastTimes[i] = in.readLong();
+        }
+    }
+
+    /** Загружает все блоки в хранилище */
+    public void decodeInto(TmColumnStore store) throws IOException {
+        decodeInto(store, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Загружает в хранилище блоки, время записей которых пересекается с [from, to]
+     * (блоки загружаются целиком)
+     */
+    public void decodeInto(TmColumnStore store, long from, long to) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(0);
+        long[] times = new long[0];
+        long[] values = new long[0];
+        byte[] types = new byte[0];
+        byte[] attributes = new byte[0];
+        byte[] dims = new byte[0];
+        int[] rawTimes = new int[0];
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            for (int c = 0; c < chunkKeys.length; c++) {
+                if (chunkLastTimes[c] < from || chunkFirstTimes[c] > to) {
+                    continue;
+                }
+                int n = chunkCounts[c];
+                int length = n * RECORD_BYTES + chunkPointBytes[c];
+                if (buf.capacity() < length) {
+                    buf = ByteBuffer.allocate(length);
+                }
+                if (times.length < n) {
+                    times = new long[n];
+                    values = new long[n];
+                    types = new byte[n];
+                    attributes = new byte[n];
+                    dims = new byte[n];
+                    rawTimes = new int[n];
+                }
+                buf.clear().limit(length);
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf, chunkOffsets[c] + buf.position()) < 0) {
+                        throw new EOFException(filename + ": блок за концом файла");
+                    }
+                }
+                buf.flip();
+                buf.asLongBuffer().get(values, 0, n);
+                buf.position(8 * n);
+                buf.asIntBuffer().get(rawTimes, 0, n);
+                buf.position(12 * n);
+                for (int i = 0; i < n; i++) {
+                    times[i] = rawTimes[i] & 0xFFFFFFFFL;
+                }
+                buf.get(types, 0, n);
+                buf.get(attributes, 0, n);
+                buf.get(dims, 0, n);
+                store.addColumns(chunkKeys[c], n, times, values, types, attributes, dims, buf.slice());
+            }
+        }
+    }
+
+    /** Счётчики и статистика рядов, сохранённые при выгрузке */
+    public TmCounts getCounts() { return counts; }
+
+    /** Ключи рядов по возрастанию */
+    public int[] getKeys() { return keys.clone(); }
+
+    /** Имя ряда, сохранённое при выгрузке (null, если ряда нет) */
+    public String getName(int key) {
+        int i = Arrays.binarySearch(keys, key);
+        return i >= 0 ? names[i] : null;
+    }
+
+    /** Таблица размерностей, сохранённая при выгрузке */
+    public Dim getDim() {
+        Dim dim = new Dim();
+        for (int code = 0; code < Dim.CODE_COUNT; code++) {
+            if (dimensions[code] != null) {
+                dim.setDimension(code, dimensions[code]);
+            }
+        }
+        return dim;
+    }
+
+    /** Количество блоков */
+    public int getChunkCount() { return chunkKeys.length; }
+}
@@ -0,0 +1,245 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Выгрузка записей в столбцовый файл {@link TmColumnarFile}.
+ * Записи копятся по рядам и сбрасываются блоками по CHUNK_RECORDS записей;
+ * если в незаписанных блоках набирается больше PENDING_LIMIT байт, сбрасываются
+ * все, поэтому память ограничена при любом числе параметров и размере файла.
+ * Счётчики и статистика рядов ведутся по выгруженным записям и пишутся в оглавление;
+ * служебные записи учитываются по числу в источнике.
+ */
+public class TmColumnarWriter extends TmExportWriter {
+    private static final int CHUNK_RECORDS = 4096;
+    private static final int CHUNK_POINT_BYTES = 1 << 20;
+    private static final long PENDING_LIMIT = 16 << 20;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int KEY_COUNT = 2 * TmColumnStore.UNKNOWN_FLAG;
+
+    /** Незаписанный блок ряда */
+    private static final class Chunk {
+        int count = 0;
+        long[] values = new long[INITIAL_CAPACITY];
+        int[] times = new int[INITIAL_CAPACITY];
+        byte[] types = new byte[INITIAL_CAPACITY];
+        byte[] attributes = new byte[INITIAL_CAPACITY];
+        byte[] dimensions = new byte[INITIAL_CAPACITY];
+        byte[] points = new byte[0];
+        int pointBytes = 0;
+        long firstTime = Long.MAX_VALUE;
+        long lastTime = Long.MIN_VALUE;
+
+        void add(long time, int valueType, int attribute, int dimensionCode, long rawValue) {
+            if (count == times.length) {
+                int capacity = Math.min(CHUNK_RECORDS, 2 * count);
+                values = Arrays.copyOf(values, capacity);
+                times = Arrays.copyOf(times, capacity);
+                types = Arrays.copyOf(types, capacity);
+                attributes = Arrays.copyOf(attributes, capacity);
+                dimensions = Arrays.copyOf(dimensions, capacity);
+            }
+            values[count] = rawValue;
+            times[count] = (int) time;
+            types[count] = (byte) valueType;
+            attributes[count] = (byte) attribute;
+            dimensions[count] = (byte) dimensionCode;
+            count++;
+            firstTime = Math.min(firstTime, time);
+            lastTime = Math.max(lastTime, time);
+        }
+
+        /** Копирует данные Point и возвращает их смещение в блоке */
+        int addPoint(ByteBuffer buf, int offset, int length) {
+            if (pointBytes + length > points.length) {
+                points = Arrays.copyOf(points, Math.max(pointBytes + length, 2 * points.length));
+            }
+            buf.get(offset, points, pointBytes, length);
+            int result = pointBytes;
+            pointBytes += length;
+            return result;
+        }
+
+        void clear() {
+            count = 0;
+            pointBytes = 0;
+            firstTime = Long.MAX_VALUE;
+            lastTime = Long.MIN_VALUE;
+        }
+    }
+
+    private final Chunk[] chunks = new Chunk[KEY_COUNT];
+    /** Счётчики и статистика выгруженных записей */
+    private final TmCounts counts = new TmCounts();
+    private long pending = 0;
+
+    // Оглавление блоков
+    private final DataOutputStream index;
+    private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+    private int chunkCount = 0;
+
+    public TmColumnarWriter(Path path, DatXML datXML, Dim dim) throws IOException {
+        this(path, key -> TmColumnStore.seriesName(key, datXML), dim);
+    }
+
+    public TmColumnarWriter(Path path, IntFunction<String> seriesNames, Dim dim) throws IOException {
+        super(path, seriesNames, dim);
+        index = new DataOutputStream(indexBytes);
+        out.putInt(TmColumnarFile.MAGIC);
+        out.putInt(TmColumnarFile.VERSION);
+    }
+
+    private Chunk chunk(int key) {
+        Chunk chunk = chunks[key];
+        if (chunk == null) {
+            chunk = new Chunk();
+            chunks[key] = chunk;
+        }
+        return chunk;
+    }
+
+    @Override
+    protected void countServiceRecords(int count) {
+        counts.countService(count);
+    }
+
+    private void add(int key, long time, int valueType, int attribute, int dimensionCode, long rawValue)
+            throws IOException {
+        Chunk chunk = chunk(key);
+        chunk.add(time, valueType, attribute, dimensionCode, rawValue);
+        pending += TmColumnarFile.RECORD_BYTES;
+        if (chunk.count == CHUNK_RECORDS || chunk.pointBytes >= CHUNK_POINT_BYTES) {
+            flushChunk(key, chunk);
+        } else if (pending > PENDING_LIMIT) {
+            flushAll();
+        }
+    }
+
+    @Override
+    protected void writeLong(int param, long time, int dimensionCode, int attribute, int value) throws IOException {
+        counts.countRecord(0, dimensionCode, 0);
+        counts.paramStats(param).addLong(time, value);
+        add(param, time, 0, attribute, dimensionCode, value);
+    }
+
+    @Override
+    protected void writeDouble(int param, long time, int dimensionCode, int attribute, double value)
+            throws IOException {
+        counts.countRecord(1, dimensionCode, 0);
+        counts.paramStats(param).addDouble(time, value);
+        add(param, time, 1, attribute, dimensionCode, Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    protected void writeCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value)
+            throws IOException {
+        counts.countRecord(2, dimensionCode, codeLength);
+        counts.paramStats(param).addCode(time, codeLength, value);
+        add(param, time, 2, attribute, dimensionCode, TmSeries.packCode(codeLength, value));
+    }
+
+    @Override
+    protected void writePoint(int param, long time, int dimensionCode, int attribute,
+                              ByteBuffer buf, int offset, int dataLength) throws IOException {
+        counts.countRecord(3, dimensionCode, dataLength);
+        counts.paramStats(param).addPoint(time, dataLength);
+        int pointOffset = chunk(param).addPoint(buf, offset, dataLength);
+        pending += dataLength;
+        add(param, time, 3, attribute, dimensionCode, TmSeries.packPoint(pointOffset, dataLength));
+    }
+
+    @Override
+    protected void writeUnknown(int param, long time, int dimensionCode, int attribute, int valueType)
+            throws IOException {
+        int key = TmColumnStore.key(param, true);
+        counts.countRecord(valueType, dimensionCode, 0);
+        counts.paramStats(key).addUnknown(time);
+        add(key, time, valueType, attribute, dimensionCode, 0);
+    }
+
+    private void flushAll() throws IOException {
+        for (int key = 0; key < KEY_COUNT; key++) {
+            if (chunks[key] != null && chunks[key].count > 0) {
+                flushChunk(key, chunks[key]);
+            }
+        }
+    }
+
+    /** Пишет блок ряда и добавляет его в оглавление */
+    private void flushChunk(int key, Chunk chunk) throws IOException {
+        out.align(8);
+        long offset = out.position();
+        int n = chunk.count;
+        out.putLongs(chunk.values, n);
+        out.putInts(chunk.times, n);
+        out.put(chunk.types, 0, n);
+        out.put(chunk.attributes, 0, n);
+        out.put(chunk.dimensions, 0, n);
+        out.put(chunk.points, 0, chunk.pointBytes);
+
+        index.writeInt(key);
+        index.writeLong(offset);
+        index.writeInt(n);
+        index.writeInt(chunk.pointBytes);
+        index.writeLong(chunk.firstTime);
+        index.writeLong(chunk.lastTime);
+        chunkCount++;
+
+        pending -= (long) n * TmColumnarFile.RECORD_BYTES + chunk.pointBytes;
+        chunk.clear();
+    }
+
+    /** Дописывает оставшиеся блоки и оглавление */
+    @Override
+    protected void finish() throws IOException {
+        flushAll();
+        long footerOffset = out.position();
+        ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+        DataOutputStream footer = new DataOutputStream(footerBytes);
+        counts.write(footer);
+
+        int dimensionCount = 0;
+        for (int code = 0; code < Dim.CODE_COUNT; code++) {
+            if (counts.getDimensionCounts()[code] > 0 && dim.contains(code)) {
+                dimensionCount++;
+            }
+        }
+        footer.writeInt(dimensionCount);
+        for (int code = 0; code < Dim.CODE_COUNT; code++) {
+            if (counts.getDimensionCounts()[code] > 0 && dim.contains(code)) {
+                footer.writeByte(code);
+                footer.writeUTF(dim.getDimension(code));
+            }
+        }
+
+        int keyCount = 0;
+        for (int key = 0; key < KEY_COUNT; key++) {
+            if (counts.getParamStats(key) != null) {
+                keyCount++;
+            }
+        }
+        footer.writeInt(keyCount);
+        for (int key = 0; key < KEY_COUNT; key++) {
+            TmParamStats stats = counts.getParamStats(key);
+            if (stats != null) {
+                footer.writeInt(key);
+                footer.writeUTF(seriesNames.apply(key));
+                stats.write(footer);
+            }
+        }
+
+        footer.writeInt(chunkCount);
+        footer.flush();
+        index.flush();
+        byte[] head = footerBytes.toByteArray();
+        out.put(head, 0, head.length);
+        byte[] chunkIndex = indexBytes.toByteArray();
+        out.put(chunkIndex, 0, chunkIndex.length);
+        out.putLong(footerOffset);
+        out.putInt(TmColumnarFile.MAGIC);
+    }
+}
@@ -0,0 +1,504 @@
+package telemetry;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Временной ряд параметра в сжатом виде: записи кодируются блоками по BLOCK_SIZE
+ * в общий битовый поток, индекс блоков хранит время первой записи и начало блока.
+ * Каждый блок разбирается независимо, поэтому выборка по времени и графики
+ * распаковывают только блоки, которых касаются.
+ *
+ * Кодирование записи внутри блока:
+ * время - разность разностей (delta-of-delta) в корзинах по длине, как в Gorilla
+ * (большие значения - с 6-битной длиной);
+ * значение Double - XOR с предыдущим Double блока (Gorilla);
+ * значения остальных типов - разность с предыдущим значением того же типа
+ * в zig-zag varint (для Point это ссылка в области данных, она растёт подряд);
+ * тип, атрибут и размерность - только при смене.
+ *
+ * Последний неполный блок хранится несжатым и кодируется, когда заполнится
+ * или когда ряд обрезается ({@link #trimToSize}); добавление записи в ряд
+ * с неполным последним блоком снова распаковывает этот блок в хвост.
+ * Распакованный блок кэшируется по одному на поток; кэш ссылается на ряд
+ * слабой ссылкой и не удерживает его (и его хранилище) после освобождения.
+ */
+public class TmCompressedSeries implements TmMutableSeries {
+    private static final int BLOCK_SHIFT = 10;
+    /** Записей в блоке */
+    public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Распакованный блок; у каждого потока свой */
+    private static final ThreadLocal<Block> CACHE = ThreadLocal.withInitial(Block::new);
+
+    private final TmPointArena arena;
+    /** Ключ ряда в кэше блоков; слабая ссылка, чтобы кэш потока не удерживал ряд */
+    private final WeakReference<TmCompressedSeries> self = new WeakReference<>(this);
+    private final BitWriter stream = new BitWriter();
+    // Индекс блоков: начало в потоке (бит) и время первой записи
+    private long[] blockStarts = new long[INITIAL_CAPACITY];
+    private long[] blockFirstTimes = new long[INITIAL_CAPACITY];
+    private int blockCount = 0;
+    /** Записей в блоках (все блоки, кроме последнего, полные) */
+    private int encodedSize = 0;
+    // Несжатый хвост (последний неполный блок)
+    private long[] tailTimes = new long[INITIAL_CAPACITY];
+    private long[] tailValues = new long[INITIAL_CAPACITY];
+    private byte[] tailMeta = new byte[INITIAL_CAPACITY];
+    private byte[] tailDimensions = new byte[INITIAL_CAPACITY];
+    private int tailSize = 0;
+    private long lastTime;
+    /** Меняется при перекодировании, чтобы кэш не отдал старый блок */
+    private int version = 0;
+    /** Записи упорядочены по времени (при добавлении проверяется только соседняя пара) */
+    private boolean sorted = true;
+
+    public TmCompressedSeries(TmPointArena arena) {
+        this.arena = arena;
+    }
+
+    @Override
+    public void add(long time, int valueType, int attribute, int dimensionCode, long rawValue) {
+        if (size() > 0 && time < lastTime) {
+            sorted = false;
+        }
+        if ((encodedSize & (BLOCK_SIZE - 1)) != 0) {
+            reopenLastBlock();
+        }
+        if (tailSize == tailTimes.length) {
+            int capacity = Math.min(BLOCK_SIZE, Math.max(INITIAL_CAPACITY, tailSize + (tailSize >> 1)));
+            tailTimes = Arrays.copyOf(tailTimes, capacity);
+            tailValues = Arrays.copyOf(tailValues, capacity);
+            tailMeta = Arrays.copyOf(tailMeta, capacity);
+            tailDimensions = Arrays.copyOf(tailDimensions, capacity);
+        }
+        tailTimes[tailSize] = time;
+        tailValues[tailSize] = rawValue;
+        tailMeta[tailSize] = (byte) (valueType & 0x0F | attribute << 4);
+        tailDimensions[tailSize] = (byte) dimensionCode;
+        tailSize++;
+        lastTime = time;
+        if (tailSize == BLOCK_SIZE) {
+            encodeTail();
+        }
+    }
+
+    /**
+     * Добавляет в конец n записей, заданных столбцами.
+     * Ссылки на данные Point должны относиться к области этого ряда.
+     */
+    @Override
+    public void addColumns(int n, long[] times, long[] values, byte[] types, byte[] attributes, byte[] dimensions) {
+        for (int i = 0; i < n; i++) {
+            add(times[i], types[i], attributes[i], dimensions[i], values[i]);
+        }
+    }
+
+    /** Распаковывает неполный последний блок обратно в хвост */
+    private void reopenLastBlock() {
+        Block block = block(blockCount - 1);
+        int n = encodedSize - ((blockCount - 1) << BLOCK_SHIFT);
+        tailTimes = Arrays.copyOf(block.times, BLOCK_SIZE);
+        tailValues = Arrays.copyOf(block.values, BLOCK_SIZE);
+        tailMeta = Arrays.copyOf(block.meta, BLOCK_SIZE);
+        tailDimensions = Arrays.copyOf(block.dimensions, BLOCK_SIZE);
+        tailSize = n;
+        blockCount--;
+        encodedSize -= n;
+        stream.truncate(blockStarts[blockCount]);
+        version++;
+    }
+
+    /** Кодирует хвост (полный или, при обрезке ряда, неполный) в новый блок */
+    private void encodeTail() {
+        if (blockCount == blockStarts.length) {
+            blockStarts = Arrays.copyOf(blockStarts, Math.max(INITIAL_CAPACITY, blockCount * 2));
+            blockFirstTimes = Arrays.copyOf(blockFirstTimes, Math.max(INITIAL_CAPACITY, blockCount * 2));
+        }
+        blockStarts[blockCount] = stream.bits;
+        blockFirstTimes[blockCount] = tailTimes[0];
+        blockCount++;
+
+        long previousDelta = 0;
+        long[] previousValues = new long[16];
+        int previousLeading = -1, previousTrailing = 0;
+        for (int i = 0; i < tailSize; i++) {
+            byte meta = tailMeta[i];
+            byte dimension = tailDimensions[i];
+            if (i == 0 || meta != tailMeta[i - 1] || dimension != tailDimensions[i - 1]) {
+                stream.write(1, 1);
+                stream.write(meta & 0xFF, 8);
+                stream.write(dimension & 0xFF, 8);
+            } else {
+                stream.write(0, 1);
+            }
+            if (i > 0) {
+                long delta = tailTimes[i] - tailTimes[i - 1];
+                writeDeltaOfDelta(zigzag(delta - previousDelta));
+                previousDelta = delta;
+            }
+            int type = meta & 0x0F;
+            long value = tailValues[i];
+            if (type == 1) {
+                long xor = value ^ previousValues[1];
+                if (xor == 0) {
+                    stream.write(0, 1);
+                } else {
+                    int leading = Long.numberOfLeadingZeros(xor);
+                    int trailing = Long.numberOfTrailingZeros(xor);
+                    if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                        // Значащие биты помещаются в окно предыдущего значения
+                        stream.write(0b10, 2);
+                        stream.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                    } else {
+                        int length = 64 - leading - trailing;
+                        stream.write(0b11, 2);
+                        stream.write(leading, 6);
+                        stream.write(length - 1, 6);
+                        stream.write(xor >>> trailing, length);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+            } else {
+                writeVarint(zigzag(value - previousValues[type]));
+            }
+            previousValues[type] = value;
+        }
+        encodedSize += tailSize;
+        tailSize = 0;
+    }
+
+    private void writeDeltaOfDelta(long z) {
+        if (z == 0) {
+            stream.write(0, 1);
+        } else if (z < 1 << 7) {
+            stream.write(0b10, 2);
+            stream.write(z, 7);
+        } else if (z < 1 << 9) {
+            stream.write(0b110, 3);
+            stream.write(z, 9);
+        } else if (z < 1 << 12) {
+            stream.write(0b1110, 4);
+            stream.write(z, 12);
+        } else {
+            // Нерегулярный шаг: длина значения и само значение
+            int length = 64 - Long.numberOfLeadingZeros(z);
+            stream.write(0b1111, 4);
+            stream.write(length - 1, 6);
+            stream.write(z, length);
+        }
+    }
+
+    private void writeVarint(long z) {
+        while ((z & ~0x7FL) != 0) {
+            stream.write(0x80 | (z & 0x7F), 8);
+            z >>>= 7;
+        }
+        stream.write(z, 8);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    /** Распакованный блок ряда */
+    private static final class Block {
+        /** Ряд, чей блок распакован (его {@link #self}) */
+        WeakReference<TmCompressedSeries> owner;
+        int version;
+        int number = -1;
+        final long[] times = new long[BLOCK_SIZE];
+        final long[] values = new long[BLOCK_SIZE];
+        final byte[] meta = new byte[BLOCK_SIZE];
+        final byte[] dimensions = new byte[BLOCK_SIZE];
+    }
+
+    /** Распакованный блок number (из кэша потока или распаковывает его) */
+    private Block block(int number) {
+        Block block = CACHE.get();
+        if (block.owner == self && block.version == version && block.number == number) {
+            return block;
+        }
+        BitReader in = new BitReader(stream.bytes, blockStarts[number]);
+        long time = blockFirstTimes[number];
+        long delta = 0;
+        long[] previousValues = new long[16];
+        int previousLeading = 0, previousTrailing = 0;
+        byte meta = 0, dimension = 0;
+        int n = Math.min(BLOCK_SIZE, encodedSize - (number << BLOCK_SHIFT));
+        for (int i = 0; i < n; i++) {
+            if (in.read(1) != 0) {
+                meta = (byte) in.read(8);
+                dimension = (byte) in.read(8);
+            }
+            if (i > 0) {
+                delta += unzigzag(readDeltaOfDelta(in));
+                time += delta;
+            }
+            int type = meta & 0x0F;
+            long value;
+            if (type == 1) {
+                if (in.read(1) == 0) {
+                    value = previousValues[1];
+                } else {
+                    if (in.read(1) != 0) {
+                        previousLeading = (int) in.read(6);
+                        int length = (int) in.read(6) + 1;
+                        previousTrailing = 64 - previousLeading - length;
+                    }
+                    long xor = in.read(64 - previousLeading - previousTrailing) << previousTrailing;
+                    value = previousValues[1] ^ xor;
+                }
+            } else {
+                value = previousValues[type] + unzigzag(readVarint(in));
+            }
+            previousValues[type] = value;
+            block.times[i] = time;
+            block.values[i] = value;
+            block.meta[i] = meta;
+            block.dimensions[i] = dimension;
+        }
+        block.owner = self;
+        block.version = version;
+        block.number = number;
+        return block;
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (in.read(1) == 0) return 0;
+        if (in.read(1) == 0) return in.read(7);
+        if (in.read(1) == 0) return in.read(9);
+        if (in.read(1) == 0) return in.read(12);
+        return in.read((int) in.read(6) + 1);
+    }
+
+    private static long readVarint(BitReader in) {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            long b = in.read(8);
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Упорядочивает записи по времени; записи с одинаковым временем
+     * сохраняют порядок поступления. Ряд распаковывается во временный
+     * ряд в куче, кодируется заново и обрезается. Упорядоченный ряд не трогается.
+     */
+    @Override
+    public void sortByTime() {
+        if (sorted) {
+            return;
+        }
+        TmColumnSeries plain = new TmColumnSeries(arena);
+        int n = size();
+        for (int i = 0; i < n; i++) {
+            plain.add(getTime(i), getValueType(i), getAttribute(i), getDimensionCode(i), getRawValue(i));
+        }
+        plain.sortByTime();
+        stream.clear();
+        blockCount = 0;
+        encodedSize = 0;
+        tailSize = 0;
+        version++;
+        for (int i = 0; i < n; i++) {
+            add(plain.getTime(i), plain.getValueType(i), plain.getAttribute(i),
+                    plain.getDimensionCode(i), plain.getRawValue(i));
+        }
+        sorted = true;
+        trimToSize();
+    }
+
+    /** Кодирует хвост и обрезает поток и индекс до фактического размера */
+    @Override
+    public void trimToSize() {
+        if (tailSize > 0) {
+            encodeTail();
+        }
+        stream.trimToSize();
+        blockStarts = Arrays.copyOf(blockStarts, blockCount);
+        blockFirstTimes = Arrays.copyOf(blockFirstTimes, blockCount);
+        tailTimes = new long[0];
+        tailValues = new long[0];
+        tailMeta = new byte[0];
+        tailDimensions = new byte[0];
+    }
+
+    /** Память, занятая потоком, индексом и хвостом, в байтах (без заголовков объектов) */
+    @Override
+    public long getAllocatedBytes() {
+        return stream.bytes.length + (long) blockStarts.length * (8 + 8)
+                + (long) tailTimes.length * (8 + 8 + 1 + 1);
+    }
+
+    /** Байт сжатого потока (без индекса и хвоста) */
+    public long getEncodedBytes() {
+        return (stream.bits + 7) >>> 3;
+    }
+
+    /** Количество закодированных блоков */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Индекс первой записи со временем не меньше time
+     * (ряд должен быть упорядочен по времени): двоичный поиск по индексу блоков,
+     * затем внутри одного блока
+     */
+    @Override
+    public int lowerBound(long time) {
+        // Последний блок, начинающийся раньше time: искомая запись в нём или сразу за ним
+        int low = 0, high = blockCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockFirstTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int first = Math.max(0, low - 1) << BLOCK_SHIFT;
+        int last = low == blockCount ? size() : low << BLOCK_SHIFT;
+        while (first < last) {
+            int mid = (first + last) >>> 1;
+            if (getTime(mid) < time) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        return first;
+    }
+
+    @Override public int size() { return encodedSize + tailSize; }
+    @Override public boolean isSortedByTime() { return sorted; }
+
+    @Override
+    public long getTime(int index) {
+        int local = checkIndex(index);
+        return index >= encodedSize ? tailTimes[local] : block(index >> BLOCK_SHIFT).times[local];
+    }
+
+    @Override
+    public int getValueType(int index) {
+        return meta(index) & 0x0F;
+    }
+
+    @Override
+    public int getAttribute(int index) {
+        return (meta(index) & 0xFF) >> 4;
+    }
+
+    @Override
+    public int getDimensionCode(int index) {
+        int local = checkIndex(index);
+        return (index >= encodedSize
+                ? tailDimensions[local] : block(index >> BLOCK_SHIFT).dimensions[local]) & 0xFF;
+    }
+
+    @Override
+    public long getRawValue(int index) {
+        int local = checkIndex(index);
+        return index >= encodedSize ? tailValues[local] : block(index >> BLOCK_SHIFT).values[local];
+    }
+
+    private byte meta(int index) {
+        int local = checkIndex(index);
+        return index >= encodedSize ? tailMeta[local] : block(index >> BLOCK_SHIFT).meta[local];
+    }
+
+    @Override
+    public ByteBuffer getPointData(int index) {
+        long raw = getRawValue(index);
+        return arena.view(TmSeries.pointOffset(raw), (int) (raw >>> 48));
+    }
+
+    /** Проверяет индекс и возвращает номер записи в блоке */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        return index >= encodedSize ? index - encodedSize : index & (BLOCK_SIZE - 1);
+    }
+
+    /** Запись битов в растущий массив, старшие биты первыми */
+    private static final class BitWriter {
+        byte[] bytes = new byte[INITIAL_CAPACITY];
+        long bits = 0;
+
+        /** Записывает младшие n бит value (n от 1 до 64) */
+        void write(long value, int n) {
+            int needed = (int) ((bits + n + 7) >>> 3);
+            if (needed > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length + (bytes.length >> 1)));
+            }
+            while (n > 0) {
+                int index = (int) (bits >>> 3);
+                int free = 8 - (int) (bits & 7);
+                int take = Math.min(free, n);
+                int chunk = (int) (value >>> (n - take)) & ((1 << take) - 1);
+                bytes[index] |= (byte) (chunk << (free - take));
+                n -= take;
+                bits += take;
+            }
+        }
+
+        void clear() {
+            bytes = new byte[INITIAL_CAPACITY];
+            bits = 0;
+        }
+
+        /** Отбрасывает биты начиная с position */
+        void truncate(long position) {
+            int index = (int) (position >>> 3);
+            int used = (int) (position & 7);
+            if (used != 0) {
+                bytes[index] &= (byte) (0xFF << (8 - used));
+                index++;
+            }
+            Arrays.fill(bytes, index, bytes.length, (byte) 0);
+            bits = position;
+        }
+
+        void trimToSize() {
+            bytes = Arrays.copyOf(bytes, (int) ((bits + 7) >>> 3));
+        }
+    }
+
+    /** Чтение битов, записанных {@link BitWriter} */
+    private static final class BitReader {
+        private final byte[] bytes;
+        private long bits;
+
+        BitReader(byte[] bytes, long start) {
+            this.bytes = bytes;
+            this.bits = start;
+        }
+
+        /** Читает n бит (от 1 до 64) */
+        long read(int n) {
+            long result = 0;
+            while (n > 0) {
+                int index = (int) (bits >>> 3);
+                int available = 8 - (int) (bits & 7);
+                int take = Math.min(available, n);
+                int chunk = (bytes[index] >>> (available - take)) & ((1 << take) - 1);
+                result = result << take | chunk;
+                n -= take;
+                bits += take;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package telemetry;
+
+import java.io.*;
+
+/**
+ * Счётчики записей ТМ-файла (те же, что ведёт {@link ReadTMI}) и статистика рядов.
+ * Их ведут декодер и выгрузка в столбцовый файл, хранят индекс и оглавление
+ * файла выгрузки, а загрузчики отдают через {@link TmReader}.
+ * Статистика рядов создаётся при первой записи ряда, без неё счётчики занимают около килобайта.
+ */
+public class TmCounts {
+    private static final int KEY_COUNT = 2 * TmColumnStore.UNKNOWN_FLAG;
+
+    private long bytesNum = 0;
+    private int totalRecords = 0;
+    private int serviceRecords = 0;
+    private int usefulRecords = 0;
+    private int unknownRecords = 0;
+    private final int[] typeCounts = new int[4];
+    private int pointLess4 = 0;
+    private int pointGreater4 = 0;
+    private int codeLess8 = 0;
+    private int codeGreater8 = 0;
+    /** Байт данных Point (в индекс и файл выгрузки не сохраняется) */
+    private long pointBytes = 0;
+    /** Количество записей (кроме служебных) по кодам размерности */
+    private final int[] dimensionCounts = new int[Dim.CODE_COUNT];
+    /** Статистика по рядам (ключ {@link TmColumnStore#key}); создаётся при первой записи */
+    private TmParamStats[] paramStats;
+
+    /** Учитывает прочитанные байты файла */
+    public void addBytes(long n) {
+        bytesNum += n;
+    }
+
+    public void setBytesNum(long bytesNum) {
+        this.bytesNum = bytesNum;
+    }
+
+    /** Учитывает n служебных записей */
+    public void countService(int n) {
+        serviceRecords += n;
+        totalRecords += n;
+    }
+
+    /**
+     * Учитывает запись (кроме служебной)
+     * @param valueType тип значения (4 и больше - неизвестный)
+     * @param length для Code - длина кода в разрядах, для Point - длина данных в байтах
+     */
+    public void countRecord(int valueType, int dimensionCode, int length) {
+        dimensionCounts[dimensionCode]++;
+        totalRecords++;
+        switch (valueType) {
+            case 0:
+            case 1:
+                break;
+            case 2:
+                if (length < 8) {
+                    codeLess8++;
+                } else if (length > 8) {
+                    codeGreater8++;
+                }
+                break;
+            case 3:
+                if (length < 4) {
+                    pointLess4++;
+                } else if (length > 4) {
+                    pointGreater4++;
+                }
+                pointBytes += length;
+                break;
+            default:
+                unknownRecords++;
+                return;
+        }
+        typeCounts[valueType]++;
+        usefulRecords++;
+    }
+
+    /** Статистика ряда с ключом key, создаётся при первом обращении */
+    public TmParamStats paramStats(int key) {
+        if (paramStats == null) {
+            paramStats = new TmParamStats[KEY_COUNT];
+        }
+        TmParamStats stats = paramStats[key];
+        if (stats == null) {
+            stats = new TmParamStats();
+            paramStats[key] = stats;
+        }
+        return stats;
+    }
+
+    /** Статистика ряда; null, если записей ряда не было */
+    public TmParamStats getParamStats(int key) {
+        return paramStats == null ? null : paramStats[key];
+    }
+
+    /** Задаёт статистику ряда (при чтении сохранённой) */
+    public void setParamStats(int key, TmParamStats stats) {
+        if (paramStats == null) {
+            paramStats = new TmParamStats[KEY_COUNT];
+        }
+        paramStats[key] = stats;
+    }
+
+    /** Прибавляет счётчики other (без статистики рядов) */
+    public void add(TmCounts other) {
+        bytesNum += other.bytesNum;
+        totalRecords += other.totalRecords;
+        serviceRecords += other.serviceRecords;
+        usefulRecords += other.usefulRecords;
+        unknownRecords += other.unknownRecords;
+        for (int i = 0; i < typeCounts.length; i++) {
+            typeCounts[i] += other.typeCounts[i];
+        }
+        pointLess4 += other.pointLess4;
+        pointGreater4 += other.pointGreater4;
+        pointBytes += other.pointBytes;
+        codeLess8 += other.codeLess8;
+        codeGreater8 += other.codeGreater8;
+        for (int i = 0; i < dimensionCounts.length; i++) {
+            dimensionCounts[i] += other.dimensionCounts[i];
+        }
+    }
+
+    /** Объединяет статистику рядов other со своей */
+    public void addParamStats(TmCounts other) {
+        if (other.paramStats != null) {
+            for (int key = 0; key < other.paramStats.length; key++) {
+                if (other.paramStats[key] != null) {
+                    paramStats(key).merge(other.paramStats[key]);
+                }
+            }
+        }
+    }
+
+    /** Сохраняет счётчики (без статистики рядов и байт данных Point) */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(bytesNum);
+        out.writeInt(totalRecords);
+        out.writeInt(serviceRecords);
+        out.writeInt(usefulRecords);
+        out.writeInt(unknownRecords);
+        for (int count : typeCounts) {
+            out.writeInt(count);
+        }
+        out.writeInt(pointLess4);
+        out.writeInt(pointGreater4);
+        out.writeInt(codeLess8);
+        out.writeInt(codeGreater8);
+        for (int count : dimensionCounts) {
+            out.writeInt(count);
+        }
+    }
+
+    /** Читает счётчики, сохранённые {@link #write} */
+    public void read(DataInput in) throws IOException {
+        bytesNum = in.readLong();
+        totalRecords = in.readInt();
+        serviceRecords = in.readInt();
+        usefulRecords = in.readInt();
+        unknownRecords = in.readInt();
+        for (int i = 0; i < typeCounts.length; i++) {
+            typeCounts[i] = in.readInt();
+        }
+        pointLess4 = in.readInt();
+        pointGreater4 = in.readInt();
+        codeLess8 = in.readInt();
+        codeGreater8 = in.readInt();
+        for (int i = 0; i < dimensionCounts.length; i++) {
+            dimensionCounts[i] = in.readInt();
+        }
+    }
+
+    public long getBytesNum() { return bytesNum; }
+    public int getTotalRecords() { return totalRecords; }
+    public int getServiceRecords() { return serviceRecords; }
+    public int getUsefulRecords() { return usefulRecords; }
+    public int getUnknownRecords() { return unknownRecords; }
+    public int[] getTypeCounts() { return typeCounts; }
+    public int getPointLess4() { return pointLess4; }
+    public int getPointGreater4() { return pointGreater4; }
+    public long getPointBytes() { return pointBytes; }
+    public int getCodeLess8() { return codeLess8; }
+    public int getCodeGreater8() { return codeGreater8; }
+    public int[] getDimensionCounts() { return dimensionCounts; }
+}
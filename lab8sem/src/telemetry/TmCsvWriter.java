@@ -0,0 +1,165 @@
+package telemetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
+
+/**
+ * Выгрузка записей в CSV (UTF-8, разделитель ";", так как во времени есть запятая).
+ * Столбцы: время в мс, время ЧЧ:ММ:СС,мс, номер и имя параметра, тип, значение,
+ * размерность, атрибут. Значение Double - с шестью знаками после точки
+ * (очень малые значения - в экспоненциальной записи), Code - число,
+ * Point - данные в шестнадцатеричном виде, у записей неизвестного типа пусто.
+ *
+ * Строка собирается прямо в буфере вывода функциями {@link TmFormat}, имена
+ * и размерности кодируются в байты один раз на ряд и на код.
+ */
+public class TmCsvWriter extends TmExportWriter {
+    private static final byte SEPARATOR = ';';
+    private static final byte[] HEADER = "time_ms;time;param;name;type;value;dimension;attribute\n"
+            .getBytes(StandardCharsets.UTF_8);
+    /** Названия типов 0..15 (4..15 - неизвестные) */
+    private static final byte[][] TYPE_NAMES = new byte[16][];
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+    /** Место под числовые поля строки */
+    private static final int NUMBERS_SIZE = 128;
+    /** Наибольшая длина "%.6f" (309 цифр целой части у Double.MAX_VALUE) */
+    private static final int DOUBLE_SIZE = 330;
+
+    static {
+        String[] known = {"Long", "Double", "Code", "Point"};
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            TYPE_NAMES[type] = ascii(type < known.length ? known[type] : "Unknown(" + type + ")");
+        }
+    }
+
+    private final byte[][] names = new byte[2 * TmColumnStore.UNKNOWN_FLAG][];
+    private final byte[][] dimensions = new byte[Dim.CODE_COUNT][];
+
+    public TmCsvWriter(Path path, DatXML datXML, Dim dim) throws IOException {
+        this(path, key -> TmColumnStore.seriesName(key, datXML), dim);
+    }
+
+    public TmCsvWriter(Path path, IntFunction<String> seriesNames, Dim dim) throws IOException {
+        super(path, seriesNames, dim);
+        out.put(HEADER, 0, HEADER.length);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Поле CSV: в кавычках, если содержит разделитель, кавычку или перевод строки */
+    private static byte[] field(String text) {
+        if (text.indexOf(';') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            text = '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] name(int key) {
+        byte[] name = names[key];
+        if (name == null) {
+            name = field(seriesNames.apply(key));
+            names[key] = name;
+        }
+        return name;
+    }
+
+    private byte[] dimension(int code) {
+        byte[] dimension = dimensions[code];
+        if (dimension == null) {
+            dimension = field(dim.getDimensionString(code));
+            dimensions[code] = dimension;
+        }
+        return dimension;
+    }
+
+    /**
+     * Начинает строку: время, номер, имя и тип
+     * @param valueSize наибольшая длина значения
+     * @return позиция в буфере перед значением
+     */
+    private int begin(int key, long time, byte[] type, int valueSize, int dimensionCode) throws IOException {
+        byte[] name = name(key);
+        int pos = out.reserve(name.length + dimension(dimensionCode).length + valueSize + NUMBERS_SIZE);
+        byte[] buf = out.array();
+        pos = TmFormat.putLong(buf, pos, time);
+        buf[pos++] = SEPARATOR;
+        pos = TmFormat.putTime(buf, pos, time);
+        buf[pos++] = SEPARATOR;
+        pos = TmFormat.putLong(buf, pos, TmColumnStore.paramOf(key));
+        buf[pos++] = SEPARATOR;
+        System.arraycopy(name, 0, buf, pos, name.length);
+        pos += name.length;
+        buf[pos++] = SEPARATOR;
+        System.arraycopy(type, 0, buf, pos, type.length);
+        pos += type.length;
+        buf[pos++] = SEPARATOR;
+        return pos;
+    }
+
+    /** Завершает строку после значения: размерность и атрибут */
+    private void end(int pos, int dimensionCode, int attribute) {
+        byte[] buf = out.array();
+        byte[] dimension = dimension(dimensionCode);
+        buf[pos++] = SEPARATOR;
+        System.arraycopy(dimension, 0, buf, pos, dimension.length);
+        pos += dimension.length;
+        buf[pos++] = SEPARATOR;
+        pos = TmFormat.putLong(buf, pos, attribute);
+        buf[pos++] = '\n';
+        out.commit(pos);
+    }
+
+    @Override
+    protected void writeLong(int param, long time, int dimensionCode, int attribute, int value) throws IOException {
+        int pos = begin(param, time, TYPE_NAMES[0], 0, dimensionCode);
+        end(TmFormat.putLong(out.array(), pos, value), dimensionCode, attribute);
+    }
+
+    @Override
+    protected void writeDouble(int param, long time, int dimensionCode, int attribute, double value)
+            throws IOException {
+        int pos = begin(param, time, TYPE_NAMES[1], DOUBLE_SIZE, dimensionCode);
+        double abs = Math.abs(value);
+        if (abs != 0 && abs < 1e-3) {
+            // Шесть знаков после точки потеряли бы значение
+            byte[] text = ascii(Double.toString(value));
+            System.arraycopy(text, 0, out.array(), pos, text.length);
+            pos += text.length;
+        } else {
+            pos = TmFormat.putFixed6(out.array(), pos, value);
+        }
+        end(pos, dimensionCode, attribute);
+    }
+
+    @Override
+    protected void writeCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value)
+            throws IOException {
+        int pos = begin(param, time, TYPE_NAMES[2], 0, dimensionCode);
+        end(TmFormat.putLong(out.array(), pos, value), dimensionCode, attribute);
+    }
+
+    @Override
+    protected void writePoint(int param, long time, int dimensionCode, int attribute,
+                              ByteBuffer data, int offset, int dataLength) throws IOException {
+        int pos = begin(param, time, TYPE_NAMES[3], 2 * dataLength, dimensionCode);
+        byte[] buf = out.array();
+        for (int i = 0; i < dataLength; i++) {
+            int b = data.get(offset + i) & 0xFF;
+            buf[pos++] = HEX[b >>> 4];
+            buf[pos++] = HEX[b & 0x0F];
+        }
+        end(pos, dimensionCode, attribute);
+    }
+
+    @Override
+    protected void writeUnknown(int param, long time, int dimensionCode, int attribute, int valueType)
+            throws IOException {
+        int pos = begin(TmColumnStore.key(param, true), time, TYPE_NAMES[valueType], 0, dimensionCode);
+        end(pos, dimensionCode, attribute);
+    }
+}
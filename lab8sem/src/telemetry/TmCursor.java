@@ -0,0 +1,63 @@
+package telemetry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Курсор по записям ряда в диапазоне индексов [начало, конец).
+ * Перед чтением полей текущей записи нужно вызвать {@link #next()}.
+ * Объекты записей не создаются, если не вызывать {@link #getRecord}.
+ */
+public class TmCursor {
+    private final TmColumnStore store;
+    private final int key;
+    private final TmSeries series;
+    private final int start;
+    private final int end;
+    private int index;
+
+    public TmCursor(TmColumnStore store, int key, int start, int end) {
+        this.store = store;
+        this.key = key;
+        this.series = store.getSeries(key);
+        this.start = start;
+        this.end = end;
+        this.index = start - 1;
+    }
+
+    /** Переходит к следующей записи; false, если записи кончились */
+    public boolean next() {
+        if (index + 1 >= end) {
+            index = end;
+            return false;
+        }
+        index++;
+        return true;
+    }
+
+    /** Возвращает курсор к началу диапазона */
+    public void reset() {
+        index = start - 1;
+    }
+
+    /** Количество записей в диапазоне */
+    public int size() {
+        return end - start;
+    }
+
+    /** Индекс текущей записи в ряду */
+    public int getIndex() { return index; }
+
+    public int getKey() { return key; }
+
+    public long getTime() { return series.getTime(index); }
+    public int getValueType() { return series.getValueType(index); }
+    public int getAttribute() { return series.getAttribute(index); }
+    public int getDimensionCode() { return series.getDimensionCode(index); }
+    public long getRawValue() { return series.getRawValue(index); }
+    public ByteBuffer getPointData() { return series.getPointData(index); }
+
+    /** Создаёт объект текущей записи */
+    public TmDat getRecord(String name, Dim dim) {
+        return store.materialize(key, index, name, dim);
+    }
+}
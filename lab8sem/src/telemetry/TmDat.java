@@ -44,13 +44,62 @@ public abstract class TmDat implements Comparable<TmDat> {
     /** Возвращает строковое представление значения параметра (с размерностью). */
     public abstract String getValueAsString();
 
+    /** Значение без размерности (для таблицы значений, где размерность в отдельном столбце). */
+    public String getValueText() {
+        return getValueAsString();
+    }
+
+    /** Дописывает в буфер тот же текст, что возвращает {@link #getValueAsString()}. */
+    public void appendValueAsString(StringBuilder sb) {
+        sb.append(getValueAsString());
+    }
+
+    /** Дописывает в буфер тот же текст, что возвращает {@link #getValueText()}. */
+    public void appendValueText(StringBuilder sb) {
+        sb.append(getValueText());
+    }
+
     /** Форматирует время в ЧЧ:ММ:СС,мс */
     public static String formatTime(long millis) {
-        long hours = millis / 3_600_000;
-        long minutes = (millis % 3_600_000) / 60_000;
-        long seconds = (millis % 60_000) / 1000;
-        long ms = millis % 1000;
-        return String.format("%02d:%02d:%02d,%03d", hours, minutes, seconds, ms);
+        StringBuilder sb = new StringBuilder(12);
+        TmFormat.appendTime(sb, millis);
+        return sb.toString();
+    }
+
+    /**
+     * Разбирает время в формате ЧЧ:ММ[:СС[,мс]] (дробная часть может отделяться точкой)
+     * @return миллисекунды от начала суток
+     * @throws IllegalArgumentException если строка не соответствует формату
+     */
+    public static long parseTime(String text) {
+        String[] parts = text.trim().split(":");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Ожидается время ЧЧ:ММ:СС,мс: " + text);
+        }
+        try {
+            long hours = Long.parseLong(parts[0]);
+            long minutes = Long.parseLong(parts[1]);
+            long seconds = 0;
+            long ms = 0;
+            if (parts.length == 3) {
+                String[] sec = parts[2].split("[,.]", -1);
+                if (sec.length > 2 || sec[0].isEmpty()) {
+                    throw new IllegalArgumentException("Ожидается время ЧЧ:ММ:СС,мс: " + text);
+                }
+                seconds = Long.parseLong(sec[0]);
+                if (sec.length == 2) {
+                    // Дробная часть секунды: "5" - 500 мс, "05" - 50 мс
+                    String fraction = (sec[1] + "000").substring(0, 3);
+                    ms = Long.parseLong(fraction);
+                }
+            }
+            if (hours < 0 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59 || ms < 0) {
+                throw new IllegalArgumentException("Недопустимое время: " + text);
+            }
+            return hours * 3_600_000 + minutes * 60_000 + seconds * 1000 + ms;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Ожидается время ЧЧ:ММ:СС,мс: " + text, e);
+        }
     }
 
     /** Сравнение сначала по имени, потом по времени (чтобы избежать потери записей). */
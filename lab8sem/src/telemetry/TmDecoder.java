@@ -0,0 +1,317 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Блочный декодер ТМ-файла.
+ * Читает файл крупными блоками в ByteBuffer и разбирает заголовки записей
+ * прямым чтением примитивов (big-endian), без промежуточных hex-строк.
+ * Ведёт счётчики {@link TmCounts}, а сами записи передаёт
+ * в {@link TmRecordListener} и не хранит, поэтому память не зависит от размера файла.
+ */
+public class TmDecoder {
+    // Константы
+    public static final int SYSTEM_MESSAGE_PARAM = 0xFFFF;
+    /** Длина заголовка записи (для Point за ним следуют данные) */
+    public static final int HEADER_SIZE = 12;
+    /** Длина служебной записи и записей Long/Double/Code */
+    public static final int RECORD_SIZE = 16;
+    /** Наибольшая длина записи: заголовок Point и 65535 байт данных */
+    public static final int MAX_RECORD_SIZE = HEADER_SIZE + 0xFFFF;
+    /** Размер блока чтения; должен вмещать самую длинную запись Point */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    protected TmRecordListener listener;
+    /** Разбираемый файл (null, если буферы передаются напрямую) */
+    protected String filename;
+
+    /** Счётчики и статистика рядов */
+    protected final TmCounts counts;
+    /** Вести ли статистику рядов (она заметно замедляет разбор) */
+    private boolean paramStatsEnabled = true;
+    /** Записывать ли события JFR о разобранных порциях */
+    private boolean chunkEventsEnabled = true;
+
+    public TmDecoder(TmRecordListener listener) {
+        this(listener, new TmCounts());
+    }
+
+    /**
+     * @param counts счётчики, к которым прибавляются разобранные записи
+     *               (например, прочитанные из индекса)
+     */
+    public TmDecoder(TmRecordListener listener, TmCounts counts) {
+        this.listener = listener;
+        this.counts = counts;
+    }
+
+    /**
+     * Разбирает ТМ-файл целиком
+     * @param filename путь к файлу
+     * @throws IOException при ошибках чтения
+     */
+    public void decodeFile(String filename) throws IOException {
+        this.filename = filename;
+        countSessionHeader();
+
+        TmLoadMetrics.get().decoderStarted(this);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            read(channel);
+        } finally {
+            TmLoadMetrics.get().decoderFinished(this);
+        }
+    }
+
+    /**
+     * Первая запись файла (32 байта, "начало сеанса") считается отдельной служебной,
+     * как и в ReadTMI
+     */
+    protected void countSessionHeader() {
+        counts.countService(1);
+    }
+
+    /**
+     * Читает канал блоками и разбирает записи. Неполная запись
+     * в конце файла отбрасывается.
+     */
+    protected void read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        while (true) {
+            int n = channel.read(buffer);
+            if (n > 0) {
+                counts.addBytes(n);
+            }
+            buffer.flip();
+            decode(buffer);
+            if (n < 0) {
+                break;
+            }
+            buffer.compact();
+        }
+    }
+
+    /**
+     * Разбирает все полные записи буфера, начиная с его текущей позиции.
+     * После вызова позиция указывает на начало первой неполной записи.
+     * @param buf буфер с данными (порядок байт big-endian)
+     */
+    public void decode(ByteBuffer buf) {
+        decode(buf, buf.limit());
+    }
+
+    /**
+     * Разбирает полные записи буфера, начинающиеся до позиции stop.
+     * После вызова позиция указывает на начало первой неразобранной записи.
+     * @param buf буфер с данными (порядок байт big-endian)
+     * @param stop позиция, с которой записи уже не разбираются
+     */
+    public void decode(ByteBuffer buf, int stop) {
+        TmEvents.DecodeChunk event = chunkEventsEnabled ? new TmEvents.DecodeChunk() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int start = buf.position();
+        int startRecords = counts.getTotalRecords();
+        boolean stats = paramStatsEnabled;
+        int pos = start;
+        int limit = buf.limit();
+
+        while (pos < stop && limit - pos >= HEADER_SIZE) {
+            int param = buf.getShort(pos) & 0xFFFF;
+            long time = buf.getInt(pos + 2) & 0xFFFFFFFFL;
+            int byte6 = buf.get(pos + 6) & 0xFF;
+            int byte7 = buf.get(pos + 7) & 0xFF;
+
+            if (param == SYSTEM_MESSAGE_PARAM) {
+                if (limit - pos < RECORD_SIZE) break;
+                counts.countService(1);
+                listener.onService(time, byte6, byte7);
+                pos += RECORD_SIZE;
+                continue;
+            }
+
+            int attribute = byte7 >> 4;
+            int valueType = byte7 & 0x0F;
+
+            if (valueType == 3) {
+                // Point: байт 8 - размер элемента, байты 10-11 - длина массива, далее сами данные.
+                // Запись нулевой длины, как и в ReadTMI, занимает один байт данных.
+                int dataLength = buf.getShort(pos + 10) & 0xFFFF;
+                int size = HEADER_SIZE + Math.max(dataLength, 1);
+                if (limit - pos < size) break;
+                counts.countRecord(3, byte6, dataLength);
+                if (stats) counts.paramStats(param).addPoint(time, dataLength);
+                listener.onPoint(param, time, byte6, attribute, buf.get(pos + 8) & 0xFF,
+                        buf, pos + HEADER_SIZE, dataLength);
+                pos += size;
+                continue;
+            }
+
+            if (limit - pos < RECORD_SIZE) break;
+            switch (valueType) {
+                case 0: { // Long: байты 12-15
+                    int value = buf.getInt(pos + 12);
+                    counts.countRecord(0, byte6, 0);
+                    if (stats) counts.paramStats(param).addLong(time, value);
+                    listener.onLong(param, time, byte6, attribute, value);
+                    break;
+                }
+                case 1: { // Double: байты 8-15
+                    double value = buf.getDouble(pos + 8);
+                    counts.countRecord(1, byte6, 0);
+                    if (stats) counts.paramStats(param).addDouble(time, value);
+                    listener.onDouble(param, time, byte6, attribute, value);
+                    break;
+                }
+                case 2: { // Code: байт 9 - длина, байты 12-15 - значение
+                    int codeLength = buf.get(pos + 9) & 0xFF;
+                    counts.countRecord(2, byte6, codeLength);
+                    int value = buf.getInt(pos + 12);
+                    if (stats) counts.paramStats(param).addCode(time, codeLength, value);
+                    listener.onCode(param, time, byte6, attribute, codeLength, value);
+                    break;
+                }
+                default: // Неизвестный тип
+                    counts.countRecord(valueType, byte6, 0);
+                    if (stats) counts.paramStats(param | TmColumnStore.UNKNOWN_FLAG).addUnknown(time);
+                    listener.onUnknown(param, time, byte6, attribute, valueType);
+                    break;
+            }
+            pos += RECORD_SIZE;
+        }
+
+        buf.position(pos);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = filename;
+            event.bytes = pos - start;
+            event.records = counts.getTotalRecords() - startRecords;
+            event.bytesRead = counts.getBytesNum();
+            event.commit();
+        }
+    }
+
+    /**
+     * Учитывает запись ряда, полученную не разбором файла (например, при слиянии):
+     * значение задано "сырым" числом, как в {@link TmSeries}
+     */
+    protected void countRecord(int key, long time, int valueType, int dimensionCode, long rawValue) {
+        boolean stats = paramStatsEnabled;
+        switch (valueType) {
+            case 0:
+                counts.countRecord(0, dimensionCode, 0);
+                if (stats) counts.paramStats(key).addLong(time, (int) rawValue);
+                break;
+            case 1:
+                counts.countRecord(1, dimensionCode, 0);
+                if (stats) counts.paramStats(key).addDouble(time, Double.longBitsToDouble(rawValue));
+                break;
+            case 2: {
+                int codeLength = (int) (rawValue >>> 32) & 0xFF;
+                counts.countRecord(2, dimensionCode, codeLength);
+                if (stats) counts.paramStats(key).addCode(time, codeLength, (int) rawValue);
+                break;
+            }
+            case 3: {
+                int dataLength = (int) (rawValue >>> 48);
+                counts.countRecord(3, dimensionCode, dataLength);
+                if (stats) counts.paramStats(key).addPoint(time, dataLength);
+                break;
+            }
+            default:
+                counts.countRecord(valueType, dimensionCode, 0);
+                if (stats) counts.paramStats(key).addUnknown(time);
+                break;
+        }
+    }
+
+    /**
+     * Прибавляет счётчики и статистику рядов другого декодера
+     * (при слиянии результатов разбора частей файла)
+     */
+    public void addCounts(TmDecoder other) {
+        counts.add(other.counts);
+        counts.addParamStats(other.counts);
+    }
+
+    // Геттеры для статистики
+
+    public TmRecordListener getListener() { return listener; }
+    public void setListener(TmRecordListener listener) { this.listener = listener; }
+    public TmCounts getCounts() { return counts; }
+
+    /**
+     * Включает или выключает статистику рядов (по умолчанию включена).
+     * Её стоит выключать, где она не показывается: при выгрузке, разборе ряда по индексу, замерах.
+     */
+    public void setParamStatsEnabled(boolean enabled) { this.paramStatsEnabled = enabled; }
+    public boolean isParamStatsEnabled() { return paramStatsEnabled; }
+
+    /** Включает или выключает события JFR о разобранных порциях (по умолчанию включены) */
+    public void setChunkEventsEnabled(boolean enabled) { this.chunkEventsEnabled = enabled; }
+    public long getBytesNum() { return counts.getBytesNum(); }
+    public int getTotalRecords() { return counts.getTotalRecords(); }
+    public int getServiceRecords() { return counts.getServiceRecords(); }
+    public int getUsefulRecords() { return counts.getUsefulRecords(); }
+    public int getUnknownRecords() { return counts.getUnknownRecords(); }
+    public int[] getTypeCounts() { return counts.getTypeCounts(); }
+    public int getPointLess4() { return counts.getPointLess4(); }
+    public int getPointGreater4() { return counts.getPointGreater4(); }
+    public long getPointBytes() { return counts.getPointBytes(); }
+    public int getCodeLess8() { return counts.getCodeLess8(); }
+    public int getCodeGreater8() { return counts.getCodeGreater8(); }
+    public int[] getDimensionCounts() { return counts.getDimensionCounts(); }
+
+    /** Статистика ряда (ключ {@link TmColumnStore#key}); null, если записей ряда не было */
+    public TmParamStats getParamStats(int key) {
+        return counts.getParamStats(key);
+    }
+
+    /**
+     * Статистика файла потоковым разбором, без хранения записей.
+     * Запуск: java telemetry.TmDecoder файл.KNP
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Использование: TmDecoder файл.KNP");
+            return;
+        }
+        boolean[] seen = new boolean[2 * 0x10000];
+        int[] params = new int[1];
+        TmRecordListener counter = new TmRecordListener() {
+            private void mark(int key) {
+                if (!seen[key]) {
+                    seen[key] = true;
+                    params[0]++;
+                }
+            }
+            @Override public void onLong(int param, long time, int dimensionCode, int attribute, int value) { mark(param); }
+            @Override public void onDouble(int param, long time, int dimensionCode, int attribute, double value) { mark(param); }
+            @Override public void onCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value) { mark(param); }
+            @Override public void onPoint(int param, long time, int dimensionCode, int attribute, int elementSize,
+                                          ByteBuffer buf, int offset, int dataLength) { mark(param); }
+            @Override public void onUnknown(int param, long time, int dimensionCode, int attribute, int valueType) { mark(param | 0x10000); }
+        };
+        TmDecoder decoder = new TmDecoder(counter);
+        decoder.setParamStatsEnabled(false);
+        decoder.decodeFile(args[0]);
+
+        int[] tc = decoder.getTypeCounts();
+        System.out.println("Байт: " + decoder.getBytesNum());
+        System.out.println("Записей: " + decoder.getTotalRecords());
+        System.out.println("Служебных: " + decoder.getServiceRecords());
+        System.out.println("Полезных: " + decoder.getUsefulRecords());
+        System.out.println("С неизвестным типом: " + decoder.getUnknownRecords());
+        System.out.println("Long/Double/Code/Point: " + tc[0] + "/" + tc[1] + "/" + tc[2] + "/" + tc[3]);
+        System.out.println("Point < 4 / > 4 байт: " + decoder.getPointLess4() + "/" + decoder.getPointGreater4());
+        System.out.println("Code < 8 / > 8 разрядов: " + decoder.getCodeLess8() + "/" + decoder.getCodeGreater8());
+        System.out.println("Уникальных параметров: " + params[0]);
+    }
+}
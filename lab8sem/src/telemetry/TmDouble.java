@@ -8,7 +8,27 @@ public class TmDouble extends TmDat {
 
     @Override
     public String getValueAsString() {
-        // Ограничим количество знаков для читаемости
-        return String.format("%.6f %s", value, dimension);
+        // Ограничим количество знаков для читаемости (как "%.6f %s")
+        StringBuilder sb = new StringBuilder(24);
+        appendValueAsString(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public String getValueText() {
+        StringBuilder sb = new StringBuilder(16);
+        TmFormat.appendFixed6(sb, value);
+        return sb.toString();
+    }
+
+    @Override
+    public void appendValueAsString(StringBuilder sb) {
+        TmFormat.appendFixed6(sb, value);
+        sb.append(' ').append(dimension);
+    }
+
+    @Override
+    public void appendValueText(StringBuilder sb) {
+        TmFormat.appendFixed6(sb, value);
     }
 }
\ No newline at end of file
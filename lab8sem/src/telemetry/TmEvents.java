@@ -0,0 +1,105 @@
+package telemetry;
+
+import jdk.jfr.*;
+
+/**
+ * События Java Flight Recorder (категория "Telemetry"): этапы загрузки,
+ * разобранные части файла и медленные обработчики интерфейса.
+ * Пока запись JFR не идёт, события не записываются и почти ничего не стоят.
+ * Порог медленного обработчика по умолчанию 50 мс, меняется в настройках
+ * записи (telemetry.SlowHandler#threshold).
+ */
+public final class TmEvents {
+    private static final String CATEGORY = "Telemetry";
+
+    private TmEvents() {
+    }
+
+    /** Этап загрузки: справочники, разбор ТМ-файла, группировка, построение интерфейса */
+    @Name("telemetry.LoadPhase")
+    @Label("Этап загрузки")
+    @Category(CATEGORY)
+    public static class LoadPhase extends Event {
+        @Label("Этап")
+        String phase;
+        @Label("Файл")
+        String file;
+        @Label("Байт")
+        @DataAmount
+        long bytes;
+        @Label("Записей")
+        long records;
+        @Label("Параметров")
+        int parameters;
+
+        /** Начинает этап */
+        public static LoadPhase start(String phase, String file) {
+            LoadPhase event = new LoadPhase();
+            event.phase = phase;
+            event.file = file;
+            event.begin();
+            return event;
+        }
+
+        /** Завершает этап и записывает событие */
+        public void finish(long bytes, long records, int parameters) {
+            end();
+            if (shouldCommit()) {
+                this.bytes = bytes;
+                this.records = records;
+                this.parameters = parameters;
+                commit();
+            }
+        }
+    }
+
+    /** Разобранная часть файла (один вызов {@link TmDecoder#decode(java.nio.ByteBuffer, int)}) */
+    @Name("telemetry.DecodeChunk")
+    @Label("Разбор части файла")
+    @Category(CATEGORY)
+    public static class DecodeChunk extends Event {
+        @Label("Файл")
+        String file;
+        @Label("Байт")
+        @DataAmount
+        long bytes;
+        @Label("Записей")
+        int records;
+        @Label("Прочитано из файла")
+        @Description("Байт, прочитанных декодером из файла к концу части")
+        @DataAmount
+        long bytesRead;
+    }
+
+    /** Обработчик интерфейса, выполнявшийся в потоке EDT дольше порога */
+    @Name("telemetry.SlowHandler")
+    @Label("Медленный обработчик интерфейса")
+    @Category(CATEGORY)
+    @Threshold("50 ms")
+    public static class SlowHandler extends Event {
+        @Label("Обработчик")
+        String handler;
+        @Label("Параметр")
+        String parameter;
+        @Label("Записей параметра")
+        int records;
+
+        /** Начинает обработчик */
+        public static SlowHandler start(String handler, String parameter) {
+            SlowHandler event = new SlowHandler();
+            event.handler = handler;
+            event.parameter = parameter;
+            event.begin();
+            return event;
+        }
+
+        /** Завершает обработчик; событие записывается, если он длился дольше порога */
+        public void finish(int records) {
+            end();
+            if (shouldCommit()) {
+                this.records = records;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Основа выгрузки записей в файл. Выгрузка - обработчик записей:
+ * её можно подключить к {@link TmDecoder} ({@link #exportFile}, записи идут
+ * в порядке файла, память не зависит от его размера) или передать ей ряды
+ * загруженного хранилища ({@link #exportStore}, записи идут по параметрам
+ * в порядке времени). Вывод пишется через {@link TmChannelOutput} во временный
+ * файл "имя.tmp", который при закрытии заменяет файл выгрузки; если выгрузка
+ * не удалась, временный файл удаляется, а прежний файл остаётся как был.
+ *
+ * Отбор: набор имён параметров (как в {@link TmReader#getRecordsByName()})
+ * и интервал времени. Служебные записи не выгружаются, наследнику передаётся
+ * только их число в источнике ({@link #countServiceRecords}).
+ */
+public abstract class TmExportWriter implements TmRecordListener, Closeable {
+    private static final int KEY_COUNT = 2 * TmColumnStore.UNKNOWN_FLAG;
+    // Решение отбора по ключу ряда: 0 - ещё не принято
+    private static final byte ACCEPT = 1;
+    private static final byte REJECT = 2;
+
+    protected final TmChannelOutput out;
+    /** Файл выгрузки и временный файл, в который идёт запись */
+    private final Path path;
+    private final Path tmp;
+    private boolean failed = false;
+    /** Имена рядов по ключу */
+    protected final IntFunction<String> seriesNames;
+    protected final Dim dim;
+
+    private Set<String> names;
+    private long from = 0;
+    private long to = Long.MAX_VALUE;
+    private final byte[] keyFilter = new byte[KEY_COUNT];
+
+    private long records = 0;
+    private final long startNanos = System.nanoTime();
+    private long elapsedNanos = -1;
+
+    /**
+     * @param seriesNames имена рядов по ключу {@link TmColumnStore#key}
+     * @param dim таблица размерностей
+     */
+    protected TmExportWriter(Path path, IntFunction<String> seriesNames, Dim dim) throws IOException {
+        this.path = path;
+        this.tmp = Paths.get(path + ".tmp");
+        this.out = new TmChannelOutput(tmp);
+        this.seriesNames = seriesNames;
+        this.dim = dim;
+    }
+
+    /** Выгружать только параметры с этими именами (null - все) */
+    public void setNames(Collection<String> names) {
+        this.names = names == null ? null : new HashSet<>(names);
+        Arrays.fill(keyFilter, (byte) 0);
+    }
+
+    /** Выгружать только записи со временем в [from, to] */
+    public void setTimeRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /** Выгружает записи ТМ-файла потоковым разбором */
+    public void exportFile(String filename) throws IOException {
+        boolean done = false;
+        try {
+            if (Files.exists(path) && Files.isSameFile(Paths.get(filename), path)) {
+                throw new IOException("Файл выгрузки совпадает с исходным: " + filename);
+            }
+            TmDecoder decoder = new TmDecoder(this);
+            decoder.setParamStatsEnabled(false); // выгрузка ведёт статистику сама
+            decoder.decodeFile(filename);
+            countServiceRecords(decoder.getServiceRecords());
+            done = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            failed |= !done;
+        }
+    }
+
+    /** Выгружает записи загруженного хранилища */
+    public void exportStore(TmColumnStore store) throws IOException {
+        exportStore(store, 0);
+    }
+
+    /**
+     * Выгружает записи загруженного хранилища
+     * @param serviceRecords число служебных записей источника (в хранилище их нет)
+     */
+    public void exportStore(TmColumnStore store, int serviceRecords) throws IOException {
+        countServiceRecords(serviceRecords);
+        boolean done = false;
+        try {
+            for (int key : store.getKeys()) {
+                if (acceptKey(key)) {
+                    store.replay(key, from, to, this);
+                }
+            }
+            done = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            failed |= !done;
+        }
+    }
+
+    private boolean acceptKey(int key) {
+        byte state = keyFilter[key];
+        if (state == 0) {
+            state = names == null || names.contains(seriesNames.apply(key)) ? ACCEPT : REJECT;
+            keyFilter[key] = state;
+        }
+        return state == ACCEPT;
+    }
+
+    private boolean accept(int key, long time) {
+        if (time < from || time > to || !acceptKey(key)) {
+            return false;
+        }
+        records++;
+        return true;
+    }
+
+    // Обработчики записей: отбор, затем запись в формате наследника.
+    // Обработчики не объявляют IOException, ошибка вывода передаётся как UncheckedIOException.
+
+    @Override
+    public void onLong(int param, long time, int dimensionCode, int attribute, int value) {
+        if (accept(param, time)) {
+            try {
+                writeLong(param, time, dimensionCode, attribute, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void onDouble(int param, long time, int dimensionCode, int attribute, double value) {
+        if (accept(param, time)) {
+            try {
+                writeDouble(param, time, dimensionCode, attribute, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void onCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value) {
+        if (accept(param, time)) {
+            try {
+                writeCode(param, time, dimensionCode, attribute, codeLength, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void onPoint(int param, long time, int dimensionCode, int attribute, int elementSize,
+                        ByteBuffer buf, int offset, int dataLength) {
+        if (accept(param, time)) {
+            try {
+                writePoint(param, time, dimensionCode, attribute, buf, offset, dataLength);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void onUnknown(int param, long time, int dimensionCode, int attribute, int valueType) {
+        if (accept(TmColumnStore.key(param, true), time)) {
+            try {
+                writeUnknown(param, time, dimensionCode, attribute, valueType);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    protected abstract void writeLong(int param, long time, int dimensionCode, int attribute, int value)
+            throws IOException;
+
+    protected abstract void writeDouble(int param, long time, int dimensionCode, int attribute, double value)
+            throws IOException;
+
+    protected abstract void writeCode(int param, long time, int dimensionCode, int attribute,
+                                      int codeLength, int value) throws IOException;
+
+    protected abstract void writePoint(int param, long time, int dimensionCode, int attribute,
+                                       ByteBuffer buf, int offset, int dataLength) throws IOException;
+
+    protected abstract void writeUnknown(int param, long time, int dimensionCode, int attribute, int valueType)
+            throws IOException;
+
+    /** Учитывает служебные записи источника (включая заголовок сеанса); сами они не выгружаются */
+    protected void countServiceRecords(int count) {
+    }
+
+    /** Дописывает конец файла (вызывается при закрытии) */
+    protected void finish() throws IOException {
+    }
+
+    /**
+     * Дописывает конец файла и заменяет им файл выгрузки;
+     * после неудавшейся выгрузки только удаляет временный файл
+     */
+    @Override
+    public void close() throws IOException {
+        boolean moved = false;
+        try {
+            try {
+                if (!failed) {
+                    finish();
+                }
+            } finally {
+                out.close();
+                elapsedNanos = System.nanoTime() - startNanos;
+            }
+            if (!failed) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                moved = true;
+            }
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /** Количество выгруженных записей */
+    public long getRecords() { return records; }
+
+    /** Записано байт */
+    public long getBytes() { return out.position(); }
+
+    /** Время от создания до закрытия, нс (-1, пока выгрузка не закрыта) */
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /** Скорость записи, МБ/с (после закрытия) */
+    public double getMegabytesPerSecond() {
+        return elapsedNanos > 0 ? getBytes() / (1024.0 * 1024.0) / (elapsedNanos / 1e9) : 0;
+    }
+}
@@ -0,0 +1,449 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Индекс ТМ-файла, сохраняемый рядом с ним в файле "имя.idx".
+ *
+ * Файл делится на блоки примерно по BLOCK_SIZE байт, границы блоков совпадают
+ * с началами записей. Для каждого ряда (ключ {@link TmColumnStore#key}) в индексе
+ * хранятся количество записей и диапазоны блоков, в которых они встречаются;
+ * кроме того, хранятся общие счётчики и статистика рядов ({@link TmCounts}). По индексу можно показать список
+ * параметров и статистику, не разбирая файл, а записи одного ряда разобрать,
+ * прочитав только его блоки.
+ *
+ * Индекс действителен, пока совпадают размер файла, время изменения
+ * и контрольная сумма его начала и конца.
+ */
+public class TmFileIndex implements TmRecordListener {
+    /** Расширение файла индекса */
+    public static final String EXTENSION = ".idx";
+    private static final int MAGIC = 0x544D4958; // "TMIX"
+    private static final int VERSION = 3;
+    /** Размер блока индекса */
+    private static final int BLOCK_SIZE = 256 << 10;
+    /** Сколько байт начала и конца файла входит в контрольную сумму */
+    private static final int HASH_SIZE = 64 << 10;
+    /** Наибольший размер одного отображения файла при разборе ряда */
+    private static final long MAX_MAP_SIZE = 256 << 20;
+    private static final int KEY_COUNT = 2 * TmColumnStore.UNKNOWN_FLAG;
+
+    // Ключ действительности индекса
+    private long fileSize;
+    private long modified;
+    private long hash;
+
+    /** Счётчики и статистика рядов файла */
+    private final TmCounts fileCounts = new TmCounts();
+
+    /** Смещения начал блоков; последний элемент - конец разобранных записей */
+    private long[] blockOffsets = new long[16];
+    private int blockCount = 0;
+
+    /** Ключи рядов по возрастанию, количество записей и диапазоны блоков [начало, конец) */
+    private int[] keys = new int[0];
+    private int[] counts = new int[0];
+    private int[][] ranges = new int[0][];
+
+    // Состояние построения
+    private int[] buildCounts;
+    private int[][] buildRanges;
+    private int[] buildRangeSizes;
+
+    private TmFileIndex() {
+    }
+
+    /** Путь к файлу индекса для ТМ-файла */
+    public static Path indexPath(String filename) {
+        return Paths.get(filename + EXTENSION);
+    }
+
+    /**
+     * Загружает индекс файла, если он есть и действителен, иначе строит его
+     * полным разбором файла и сохраняет рядом.
+     * Не удавшаяся запись индекса (например, каталог только для чтения) не считается ошибкой.
+     */
+    public static TmFileIndex open(String filename) throws IOException {
+        Path file = Paths.get(filename);
+        Path indexFile = indexPath(filename);
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        long hash = headTailHash(file, size);
+
+        if (Files.exists(indexFile)) {
+            try {
+                TmFileIndex index = read(indexFile);
+                if (index.fileSize == size && index.modified == modified && index.hash == hash) {
+                    return index;
+                }
+            } catch (IOException e) {
+                System.err.println("Индекс " + indexFile + " повреждён и будет построен заново: " + e.getMessage());
+            }
+        }
+
+        TmFileIndex index = build(filename);
+        index.fileSize = size;
+        index.modified = modified;
+        index.hash = hash;
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить индекс " + indexFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /** Строит индекс полным разбором файла (без сохранения) */
+    public static TmFileIndex build(String filename) throws IOException {
+        TmFileIndex index = new TmFileIndex();
+        index.buildCounts = new int[KEY_COUNT];
+        index.buildRanges = new int[KEY_COUNT][];
+        index.buildRangeSizes = new int[KEY_COUNT];
+        index.new BuildDecoder().decodeFile(filename);
+        index.finishBuild();
+        return index;
+    }
+
+    /** Декодер построения: ведёт счётчики индекса и передаёт записи индексу */
+    private class BuildDecoder extends TmDecoder {
+        BuildDecoder() {
+            super(TmFileIndex.this, fileCounts);
+        }
+
+        /**
+         * Разбирает записи по блокам индекса: каждый вызов decode останавливается
+         * на первой записи после границы блока, её смещение становится началом следующего блока.
+         */
+        @Override
+        protected void read(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4 * BLOCK_SIZE);
+            long bufferOffset = 0; // смещение в файле начала буфера
+            startBlock(0);
+            long nextBoundary = BLOCK_SIZE;
+            while (true) {
+                int n = channel.read(buffer);
+                if (n > 0) {
+                    counts.addBytes(n);
+                }
+                buffer.flip();
+                while (true) {
+                    int stop = (int) Math.min(buffer.limit(), nextBoundary - bufferOffset);
+                    decode(buffer, stop);
+                    long position = bufferOffset + buffer.position();
+                    if (position < nextBoundary) {
+                        break; // нужна следующая порция файла
+                    }
+                    startBlock(position);
+                    nextBoundary = position + BLOCK_SIZE;
+                }
+                if (n < 0) {
+                    break;
+                }
+                bufferOffset += buffer.position();
+                buffer.compact();
+            }
+            // Конец последнего блока - конец последней полной записи
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount + 1);
+            blockOffsets[blockCount] = bufferOffset + buffer.position();
+        }
+    }
+
+    private void startBlock(long offset) {
+        if (blockCount + 1 >= blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+        }
+        blockOffsets[blockCount++] = offset;
+    }
+
+    /** Отмечает запись ряда key в текущем блоке */
+    private void mark(int key) {
+        buildCounts[key]++;
+        int block = blockCount - 1;
+        int[] r = buildRanges[key];
+        int n = buildRangeSizes[key];
+        if (r != null && r[n - 1] == block) {
+            return;
+        }
+        if (r != null && r[n - 1] == block - 1) {
+            r[n - 1] = block;
+            return;
+        }
+        if (r == null) {
+            r = new int[4];
+        } else if (n + 2 > r.length) {
+            r = Arrays.copyOf(r, r.length * 2);
+        }
+        r[n] = block;
+        r[n + 1] = block;
+        buildRanges[key] = r;
+        buildRangeSizes[key] = n + 2;
+    }
+
+    private void finishBuild() {
+        int keyCount = 0;
+        for (int key = 0; key < KEY_COUNT; key++) {
+            if (buildCounts[key] > 0) keyCount++;
+        }
+        keys = new int[keyCount];
+        counts = new int[keyCount];
+        ranges = new int[keyCount][];
+        int i = 0;
+        for (int key = 0; key < KEY_COUNT; key++) {
+            if (buildCounts[key] == 0) continue;
+            keys[i] = key;
+            counts[i] = buildCounts[key];
+            // Во время построения хранится последний блок, в индексе - конец диапазона
+            int[] r = Arrays.copyOf(buildRanges[key], buildRangeSizes[key]);
+            for (int j = 1; j < r.length; j += 2) {
+                r[j]++;
+            }
+            ranges[i] = r;
+            i++;
+        }
+        buildCounts = null;
+        buildRanges = null;
+        buildRangeSizes = null;
+    }
+
+    // Обработчики записей при построении индекса
+
+    @Override
+    public void onLong(int param, long time, int dimensionCode, int attribute, int value) {
+        mark(param);
+    }
+
+    @Override
+    public void onDouble(int param, long time, int dimensionCode, int attribute, double value) {
+        mark(param);
+    }
+
+    @Override
+    public void onCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value) {
+        mark(param);
+    }
+
+    @Override
+    public void onPoint(int param, long time, int dimensionCode, int attribute, int elementSize,
+                        ByteBuffer buf, int offset, int dataLength) {
+        mark(param);
+    }
+
+    @Override
+    public void onUnknown(int param, long time, int dimensionCode, int attribute, int valueType) {
+        mark(TmColumnStore.key(param, true));
+    }
+
+    /**
+     * Разбирает записи одного ряда, читая только блоки, где они встречаются
+     * @param filename ТМ-файл, по которому построен индекс
+     * @param key ключ ряда
+     * @param target хранилище, в которое добавляются записи ряда
+     */
+    public void decodeSeries(String filename, int key, TmColumnStore target) throws IOException {
+        int i = Arrays.binarySearch(keys, key);
+        if (i < 0) {
+            return;
+        }
+        TmRecordListener filter = new SeriesFilter(key, target);
+        // Счётчики и статистика файла уже есть в индексе, порции разбора одного ряда
+        // в событиях JFR не нужны: декодер только передаёт записи
+        TmDecoder decoder = new TmDecoder(filter);
+        decoder.setParamStatsEnabled(false);
+        decoder.setChunkEventsEnabled(false);
+        int[] r = ranges[i];
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            for (int j = 0; j < r.length; j += 2) {
+                int block = r[j];
+                int end = r[j + 1];
+                while (block < end) {
+                    // Отображаем подряд идущие блоки порциями не больше MAX_MAP_SIZE
+                    int last = block + 1;
+                    while (last < end && blockOffsets[last + 1] - blockOffsets[block] <= MAX_MAP_SIZE) {
+                        last++;
+                    }
+                    long from = blockOffsets[block];
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                            from, blockOffsets[last] - from);
+                    decoder.decode(region);
+                    block = last;
+                }
+            }
+        }
+    }
+
+    /** Пропускает в хранилище только записи одного ряда */
+    private static class SeriesFilter implements TmRecordListener {
+        private final int param;
+        private final boolean unknown;
+        private final TmColumnStore target;
+
+        SeriesFilter(int key, TmColumnStore target) {
+            this.param = TmColumnStore.paramOf(key);
+            this.unknown = TmColumnStore.isUnknown(key);
+            this.target = target;
+        }
+
+        @Override
+        public void onLong(int param, long time, int dimensionCode, int attribute, int value) {
+            if (param == this.param && !unknown) target.onLong(param, time, dimensionCode, attribute, value);
+        }
+
+        @Override
+        public void onDouble(int param, long time, int dimensionCode, int attribute, double value) {
+            if (param == this.param && !unknown) target.onDouble(param, time, dimensionCode, attribute, value);
+        }
+
+        @Override
+        public void onCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value) {
+            if (param == this.param && !unknown) {
+                target.onCode(param, time, dimensionCode, attribute, codeLength, value);
+            }
+        }
+
+        @Override
+        public void onPoint(int param, long time, int dimensionCode, int attribute, int elementSize,
+                            ByteBuffer buf, int offset, int dataLength) {
+            if (param == this.param && !unknown) {
+                target.onPoint(param, time, dimensionCode, attribute, elementSize, buf, offset, dataLength);
+            }
+        }
+
+        @Override
+        public void onUnknown(int param, long time, int dimensionCode, int attribute, int valueType) {
+            if (param == this.param && unknown) target.onUnknown(param, time, dimensionCode, attribute, valueType);
+        }
+    }
+
+    /** CRC32 первых и последних HASH_SIZE байт файла */
+    private static long headTailHash(Path file, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(size, HASH_SIZE));
+            channel.read(buf, 0);
+            buf.flip();
+            crc.update(buf);
+            if (size > HASH_SIZE) {
+                buf.clear();
+                channel.read(buf, Math.max(HASH_SIZE, size - HASH_SIZE));
+                buf.flip();
+                crc.update(buf);
+            }
+        }
+        return crc.getValue();
+    }
+
+    // Чтение и запись файла индекса
+
+    private void write(Path indexFile) throws IOException {
+        Path tmp = Paths.get(indexFile + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(modified);
+            out.writeLong(hash);
+
+            fileCounts.write(out);
+
+            out.writeInt(blockCount);
+            for (int i = 0; i <= blockCount; i++) {
+                out.writeLong(blockOffsets[i]);
+            }
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeInt(keys[i]);
+                out.writeInt(counts[i]);
+                out.writeInt(ranges[i].length);
+                for (int block : ranges[i]) {
+                    out.writeInt(block);
+                }
+                fileCounts.getParamStats(keys[i]).write(out);
+            }
+        }
+        // Индекс появляется целиком или не появляется вовсе
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static TmFileIndex read(Path indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("неизвестный формат");
+            }
+            TmFileIndex index = new TmFileIndex();
+            index.fileSize = in.readLong();
+            index.modified = in.readLong();
+            index.hash = in.readLong();
+
+            index.fileCounts.read(in);
+
+            index.blockCount = in.readInt();
+            index.blockOffsets = new long[index.blockCount + 1];
+            for (int i = 0; i <= index.blockCount; i++) {
+                index.blockOffsets[i] = in.readLong();
+            }
+            int keyCount = in.readInt();
+            index.keys = new int[keyCount];
+            index.counts = new int[keyCount];
+            index.ranges = new int[keyCount][];
+            for (int i = 0; i < keyCount; i++) {
+                index.keys[i] = in.readInt();
+                index.counts[i] = in.readInt();
+                int[] r = new int[in.readInt()];
+                for (int j = 0; j < r.length; j++) {
+                    r[j] = in.readInt();
+                }
+                index.ranges[i] = r;
+                index.fileCounts.setParamStats(index.keys[i], TmParamStats.read(in));
+            }
+            return index;
+        }
+    }
+
+    // Геттеры
+
+    /** Счётчики и статистика рядов файла */
+    public TmCounts getCounts() { return fileCounts; }
+
+    /** Ключи рядов по возрастанию */
+    public int[] getKeys() { return keys.clone(); }
+
+    /** Количество записей ряда (0, если ряда нет) */
+    public int getCount(int key) {
+        int i = Arrays.binarySearch(keys, key);
+        return i < 0 ? 0 : counts[i];
+    }
+
+    public int getBlockCount() { return blockCount; }
+
+    /** Смещение начала блока; для block == getBlockCount() - конец последней полной записи */
+    public long getBlockOffset(int block) { return blockOffsets[block]; }
+
+    /** Номер блока, содержащего смещение (последний блок, начинающийся не позже него) */
+    public int findBlock(long offset) {
+        int lo = 0;
+        int hi = blockCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockOffsets[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /** Диапазоны блоков ряда парами [начало, конец) (пустой массив, если ряда нет) */
+    public int[] getBlockRanges(int key) {
+        int i = Arrays.binarySearch(keys, key);
+        return i < 0 ? new int[0] : ranges[i].clone();
+    }
+}
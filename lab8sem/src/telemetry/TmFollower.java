@@ -0,0 +1,137 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Слежение за ТМ-файлом, который ещё дописывается приёмной станцией.
+ * Помнит смещение после последней полностью разобранной записи и при каждом
+ * опросе разбирает только дописанные байты переданным декодером.
+ * Неполная запись в конце файла остаётся в буфере до прихода остальных байт.
+ * Счётчики не хранятся: каждая порция фонового слежения разбирается своим
+ * декодером, и её счётчики прибавляются к загруженным вместе с записями.
+ */
+public class TmFollower implements Closeable {
+    /** Размер буфера чтения; должен вмещать самую длинную запись Point */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    /** Буфер в режиме записи: в начале лежит неполная запись с прошлого опроса */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+    /** Сколько байт файла уже прочитано (включая неполную запись в буфере) */
+    private long readPosition = 0;
+
+    private volatile Thread watcher;
+
+    /** Порция дописанных записей: хранилище и декодер с их счётчиками и статистикой */
+    public static final class Batch {
+        public final TmColumnStore store;
+        public final TmDecoder decoder;
+
+        Batch(TmColumnStore store, TmDecoder decoder) {
+            this.store = store;
+            this.decoder = decoder;
+        }
+    }
+
+    public TmFollower(String filename) throws IOException {
+        this.path = Paths.get(filename).toAbsolutePath();
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    /**
+     * Разбирает байты, дописанные с прошлого опроса, декодером decoder;
+     * прочитанные байты и записи учитываются в его счётчиках.
+     * @return true, если разобрана хотя бы одна запись
+     * @throws IOException при ошибках чтения или если файл стал короче прочитанного
+     */
+    public synchronized boolean poll(TmDecoder decoder) throws IOException {
+        long size = channel.size();
+        if (size < readPosition) {
+            throw new IOException("Файл стал короче уже прочитанного: " + path);
+        }
+        TmCounts counts = decoder.getCounts();
+        int before = counts.getTotalRecords();
+        while (readPosition < size) {
+            int n = channel.read(buffer, readPosition);
+            if (n <= 0) {
+                break;
+            }
+            readPosition += n;
+            counts.addBytes(n);
+            buffer.flip();
+            decoder.decode(buffer);
+            buffer.compact();
+        }
+        return counts.getTotalRecords() != before;
+    }
+
+    /** Смещение в файле сразу после последней полностью разобранной записи */
+    public synchronized long getDecodedOffset() {
+        return readPosition - buffer.position();
+    }
+
+    /**
+     * Запускает фоновое слежение: изменения файла отслеживаются через WatchService,
+     * а на случай пропущенных событий размер файла проверяется раз в period мс.
+     * Дописанные записи разбираются новым декодером в новое хранилище,
+     * которые передаются в onBatch (в потоке слежения).
+     */
+    public void start(long period, Consumer<Batch> onBatch) throws IOException {
+        if (watcher != null) {
+            throw new IllegalStateException("Слежение уже запущено");
+        }
+        WatchService watchService = path.getFileSystem().newWatchService();
+        Path dir = path.getParent();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(() -> {
+            try (watchService) {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = watchService.poll(period, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                    if (channel.size() > readPosition) {
+                        TmColumnStore batch = new TmColumnStore();
+                        TmDecoder batchDecoder = new TmDecoder(batch);
+                        if (poll(batchDecoder)) {
+                            onBatch.accept(new Batch(batch, batchDecoder));
+                        }
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException | ClosedChannelException e) {
+                // Слежение остановлено
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "tm-follower " + path.getFileName());
+        thread.setDaemon(true);
+        watcher = thread;
+        thread.start();
+    }
+
+    /** Останавливает фоновое слежение */
+    public void stop() {
+        Thread thread = watcher;
+        watcher = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        synchronized (this) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package telemetry;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Форматирование времени и значений записей без String.format и промежуточных строк:
+ * текст дописывается в переданный StringBuilder или массив байт.
+ *
+ * Методы для StringBuilder дают тот же текст, что и String.format с локалью
+ * по умолчанию (разделитель дробной части берётся из локали). Методы для массива
+ * байт пишут ASCII с точкой в качестве разделителя (как Locale.ROOT) - для файлов выгрузки.
+ */
+public final class TmFormat {
+    private static final double SCALE = 1e6;
+    /** Выше этого значения |v|*1e6 теряет точность, формат выполняет Formatter */
+    private static final double FAST_LIMIT = 1e9;
+
+    /** Символы локали, для которой они были получены */
+    private static final class Symbols {
+        final Locale locale;
+        final char decimalSeparator;
+        final boolean asciiDigits;
+
+        Symbols(Locale locale) {
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            this.locale = locale;
+            this.decimalSeparator = symbols.getDecimalSeparator();
+            this.asciiDigits = symbols.getZeroDigit() == '0';
+        }
+    }
+
+    private static volatile Symbols symbols = new Symbols(Locale.getDefault(Locale.Category.FORMAT));
+
+    private TmFormat() {
+    }
+
+    private static Symbols symbols() {
+        Symbols current = symbols;
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        if (current.locale != locale) {
+            current = new Symbols(locale);
+            symbols = current;
+        }
+        return current;
+    }
+
+    /** Время ЧЧ:ММ:СС,мс; часы не ограничены сутками (509:45:01,292) */
+    public static void appendTime(StringBuilder sb, long millis) {
+        if (!symbols().asciiDigits || millis < 0) {
+            sb.append(String.format("%02d:%02d:%02d,%03d", millis / 3_600_000,
+                    (millis % 3_600_000) / 60_000, (millis % 60_000) / 1000, millis % 1000));
+            return;
+        }
+        long hours = millis / 3_600_000;
+        if (hours < 10) sb.append('0');
+        sb.append(hours).append(':');
+        append2(sb, (int) (millis % 3_600_000 / 60_000));
+        sb.append(':');
+        append2(sb, (int) (millis % 60_000 / 1000));
+        sb.append(',');
+        int ms = (int) (millis % 1000);
+        sb.append((char) ('0' + ms / 100));
+        append2(sb, ms % 100);
+    }
+
+    private static void append2(StringBuilder sb, int value) {
+        sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /** Целое как "%d" */
+    public static void appendInt(StringBuilder sb, long value) {
+        if (symbols().asciiDigits) {
+            sb.append(value);
+        } else {
+            sb.append(String.format("%d", value));
+        }
+    }
+
+    /** Вещественное как "%.6f" */
+    public static void appendFixed6(StringBuilder sb, double value) {
+        Symbols s = symbols();
+        long scaled = s.asciiDigits ? scaled6(value) : -1;
+        if (scaled < 0) {
+            sb.append(String.format("%.6f", value));
+            return;
+        }
+        if (Double.doubleToRawLongBits(value) < 0) sb.append('-');
+        sb.append(scaled / 1_000_000).append(s.decimalSeparator);
+        int fraction = (int) (scaled % 1_000_000);
+        for (int divisor = 100_000; divisor > 0; divisor /= 10) {
+            sb.append((char) ('0' + fraction / divisor % 10));
+        }
+    }
+
+    /**
+     * Время ЧЧ:ММ:СС,мс в массив (ASCII)
+     * @return позиция после записанного текста
+     */
+    public static int putTime(byte[] dst, int pos, long millis) {
+        long hours = millis / 3_600_000;
+        if (hours < 10) dst[pos++] = '0';
+        pos = putLong(dst, pos, hours);
+        dst[pos++] = ':';
+        pos = put2(dst, pos, (int) (millis % 3_600_000 / 60_000));
+        dst[pos++] = ':';
+        pos = put2(dst, pos, (int) (millis % 60_000 / 1000));
+        dst[pos++] = ',';
+        int ms = (int) (millis % 1000);
+        dst[pos++] = (byte) ('0' + ms / 100);
+        return put2(dst, pos, ms % 100);
+    }
+
+    private static int put2(byte[] dst, int pos, int value) {
+        dst[pos] = (byte) ('0' + value / 10);
+        dst[pos + 1] = (byte) ('0' + value % 10);
+        return pos + 2;
+    }
+
+    /**
+     * Целое в массив (ASCII)
+     * @return позиция после записанного текста
+     */
+    public static int putLong(byte[] dst, int pos, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return putAscii(dst, pos, Long.toString(value));
+            }
+            dst[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            dst[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Вещественное с шестью знаками после точки (ASCII, как "%.6f" с Locale.ROOT)
+     * @return позиция после записанного текста
+     */
+    public static int putFixed6(byte[] dst, int pos, double value) {
+        long scaled = scaled6(value);
+        if (scaled < 0) {
+            return putAscii(dst, pos, String.format(Locale.ROOT, "%.6f", value));
+        }
+        if (Double.doubleToRawLongBits(value) < 0) dst[pos++] = '-';
+        pos = putLong(dst, pos, scaled / 1_000_000);
+        dst[pos++] = '.';
+        int fraction = (int) (scaled % 1_000_000);
+        for (int i = pos + 5; i >= pos; i--) {
+            dst[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        return pos + 6;
+    }
+
+    private static int putAscii(byte[] dst, int pos, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            dst[pos++] = (byte) text.charAt(i);
+        }
+        return pos;
+    }
+
+    /**
+     * |value|, умноженное на 1e6 и округлённое так же, как это делает Formatter
+     * (половина - вверх, по десятичной записи числа).
+     * @return -1, если быстрый расчёт не гарантирует совпадения: NaN, бесконечность,
+     *         большие значения и значения вблизи середины между соседними результатами
+     */
+    private static long scaled6(double value) {
+        double a = Math.abs(value);
+        if (!(a < FAST_LIMIT)) {
+            return -1;
+        }
+        double p = a * SCALE;
+        double floor = Math.floor(p);
+        double fraction = p - floor;
+        // Погрешность: десятичная запись числа отличается от него меньше чем на ulp/2,
+        // произведение округляется ещё на ulp(p)/2
+        double margin = 2 * (Math.ulp(a) * SCALE + Math.ulp(p));
+        if (Math.abs(fraction - 0.5) <= margin) {
+            return -1;
+        }
+        return (long) floor + (fraction > 0.5 ? 1 : 0);
+    }
+}
@@ -0,0 +1,270 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор синтетических ТМ-файлов (.KNP) для нагрузочных испытаний.
+ * Пишет файл в формате, который понимает ReadTMI: заголовок сеанса
+ * (две служебные записи) и поток записей Long/Double/Code/Point заданной смеси,
+ * служебных записей и, по желанию, записей неизвестного типа и испорченных записей.
+ *
+ * Значения каждого параметра меняются плавно (случайное блуждание),
+ * как у настоящей телеметрии. Запись идёт крупными блоками через FileChannel,
+ * данные Point берутся из заранее заполненного случайного пула.
+ *
+ * Запуск: java telemetry.TmGenerator файл.KNP [--size 1G] [--params 500] [--xml файл.dat.xml]
+ *         [--mix 50,20,20,10] [--point 1-64] [--service 0.01] [--step 10]
+ *         [--unknown 0] [--corrupt 0] [--seed 1]
+ */
+public class TmGenerator {
+    private static final int BLOCK_SIZE = 4 << 20;
+    private static final int POOL_SIZE = 1 << 17;
+
+    // Параметры генерации
+    private long size = 100L << 20;
+    private int[] paramNumbers = defaultParams(500);
+    private int[] typeWeights = {50, 20, 20, 10};
+    private int pointMinLength = 1;
+    private int pointMaxLength = 64;
+    private double serviceRate = 0.01;
+    private double timeStep = 10;
+    private long startTime = 0;
+    private double unknownRate = 0;
+    private double corruptRate = 0;
+    private long seed = 1;
+
+    // Счётчики сгенерированного
+    private long records;
+
+    /** Размер файла в байтах (последняя запись может выйти за него) */
+    public void setSize(long size) { this.size = size; }
+
+    /** Номера параметров, из которых выбираются записи */
+    public void setParamNumbers(int[] paramNumbers) { this.paramNumbers = paramNumbers.clone(); }
+
+    /** Первые count параметров справочника (или все, если их меньше) */
+    public void setParams(DatXML datXML, int count) {
+        int[] all = datXML.getParamNumbers();
+        int n = Math.min(count, all.length);
+        int[] params = new int[n];
+        // Равномерная выборка по всему справочнику
+        for (int i = 0; i < n; i++) {
+            params[i] = all[(int) ((long) i * all.length / n)];
+        }
+        this.paramNumbers = params;
+    }
+
+    /** Веса типов Long, Double, Code, Point */
+    public void setTypeWeights(int longWeight, int doubleWeight, int codeWeight, int pointWeight) {
+        this.typeWeights = new int[] {longWeight, doubleWeight, codeWeight, pointWeight};
+    }
+
+    /** Длина данных Point распределена равномерно в [min, max] */
+    public void setPointLength(int min, int max) {
+        if (min < 0 || max > 0xFFFF || min > max) {
+            throw new IllegalArgumentException("Недопустимый диапазон длины Point: " + min + "-" + max);
+        }
+        this.pointMinLength = min;
+        this.pointMaxLength = max;
+    }
+
+    /** Доля служебных записей */
+    public void setServiceRate(double serviceRate) { this.serviceRate = serviceRate; }
+
+    /** Средний шаг времени между соседними записями, мс (может быть дробным) */
+    public void setTimeStep(double timeStep) { this.timeStep = timeStep; }
+
+    /** Время первой записи, мс */
+    public void setStartTime(long startTime) { this.startTime = startTime; }
+
+    /** Доля записей неизвестного типа (4..15) */
+    public void setUnknownRate(double unknownRate) { this.unknownRate = unknownRate; }
+
+    /**
+     * Доля испорченных записей: 16 случайных байт. Такая запись может сбить
+     * разбор последующих (например, случайной длиной Point), что и нужно для испытаний.
+     */
+    public void setCorruptRate(double corruptRate) { this.corruptRate = corruptRate; }
+
+    public void setSeed(long seed) { this.seed = seed; }
+
+    /** Количество записей в последнем сгенерированном файле (с заголовком сеанса) */
+    public long getRecords() { return records; }
+
+    /**
+     * Создаёт файл
+     * @param file путь к файлу (перезаписывается)
+     */
+    public void generate(Path file) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] pool = new byte[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool[i] = (byte) random.nextInt(256);
+        }
+
+        int paramCount = paramNumbers.length;
+        int[] longValues = new int[paramCount];
+        double[] doubleValues = new double[paramCount];
+        int[] codeValues = new int[paramCount];
+        int[] dimensions = new int[paramCount];
+        for (int i = 0; i < paramCount; i++) {
+            longValues[i] = random.nextInt(10_000);
+            doubleValues[i] = random.nextDouble() * 1000 - 500;
+            dimensions[i] = 32 + random.nextInt(120);
+        }
+        int totalWeight = typeWeights[0] + typeWeights[1] + typeWeights[2] + typeWeights[3];
+        if (totalWeight <= 0 || paramCount == 0) {
+            throw new IllegalArgumentException("Нечего генерировать: пустая смесь типов или список параметров");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        records = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Заголовок сеанса: 32 байта, две служебные записи
+            buf.putShort((short) 0xFFFF).putInt((int) startTime).put((byte) 1).put((byte) 0).putLong(0);
+            buf.putShort((short) 0xFFFF).putInt((int) startTime).put((byte) 2).put((byte) 0).putLong(0);
+            records += 2;
+
+            long written = 0;
+            double time = startTime;
+            while (written + buf.position() < size) {
+                if (buf.remaining() < TmDecoder.MAX_RECORD_SIZE) {
+                    written += flush(channel, buf);
+                }
+                time += random.nextDouble() * 2 * timeStep;
+                int t = (int) (long) time;
+                records++;
+
+                double kind = random.nextDouble();
+                if (kind < serviceRate) {
+                    buf.putShort((short) 0xFFFF).putInt(t).put((byte) 3).put((byte) 0).putLong(0);
+                    continue;
+                }
+                kind -= serviceRate;
+                if (kind < corruptRate) {
+                    int from = random.nextInt(POOL_SIZE - TmDecoder.RECORD_SIZE);
+                    buf.put(pool, from, TmDecoder.RECORD_SIZE);
+                    continue;
+                }
+                kind -= corruptRate;
+
+                int p = random.nextInt(paramCount);
+                buf.putShort((short) paramNumbers[p]).putInt(t);
+                int attribute = random.nextInt(4) == 0 ? random.nextInt(16) : 0;
+                if (kind < unknownRate) {
+                    buf.put((byte) dimensions[p]).put((byte) (attribute << 4 | (4 + random.nextInt(12))))
+                            .putLong(random.nextLong());
+                    continue;
+                }
+
+                int w = random.nextInt(totalWeight);
+                if (w < typeWeights[0]) {
+                    longValues[p] += random.nextInt(7) - 3;
+                    buf.put((byte) dimensions[p]).put((byte) (attribute << 4)).putInt(0).putInt(longValues[p]);
+                } else if ((w -= typeWeights[0]) < typeWeights[1]) {
+                    doubleValues[p] += random.nextDouble() - 0.5;
+                    buf.put((byte) dimensions[p]).put((byte) (attribute << 4 | 1)).putDouble(doubleValues[p]);
+                } else if ((w -= typeWeights[1]) < typeWeights[2]) {
+                    if (random.nextInt(8) == 0) {
+                        codeValues[p] = random.nextInt(16);
+                    }
+                    buf.put((byte) dimensions[p]).put((byte) (attribute << 4 | 2)).put((byte) 0)
+                            .put((byte) (1 + (p & 15))).putShort((short) 0).putInt(codeValues[p]);
+                } else {
+                    int length = pointMinLength + random.nextInt(pointMaxLength - pointMinLength + 1);
+                    buf.put((byte) dimensions[p]).put((byte) (attribute << 4 | 3)).put((byte) 1).put((byte) 0)
+                            .putShort((short) length);
+                    // Запись нулевой длины занимает один байт данных
+                    int dataBytes = Math.max(length, 1);
+                    buf.put(pool, random.nextInt(POOL_SIZE - dataBytes), dataBytes);
+                }
+            }
+            flush(channel, buf);
+        }
+    }
+
+    private static long flush(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        long n = 0;
+        while (buf.hasRemaining()) {
+            n += channel.write(buf);
+        }
+        buf.clear();
+        return n;
+    }
+
+    private static int[] defaultParams(int count) {
+        int[] params = new int[count];
+        for (int i = 0; i < count; i++) {
+            params[i] = 1000 + i;
+        }
+        return params;
+    }
+
+    /** Размер с суффиксом K/M/G */
+    private static long parseSize(String text) {
+        char unit = Character.toUpperCase(text.charAt(text.length() - 1));
+        int shift = unit == 'K' ? 10 : unit == 'M' ? 20 : unit == 'G' ? 30 : 0;
+        String number = shift == 0 ? text : text.substring(0, text.length() - 1);
+        return (long) (Double.parseDouble(number) * (1L << shift));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Использование: TmGenerator файл.KNP [--size 1G] [--params 500] [--xml файл.dat.xml]"
+                    + " [--mix 50,20,20,10] [--point 1-64] [--service 0.01] [--step 10]"
+                    + " [--unknown 0] [--corrupt 0] [--seed 1]");
+            return;
+        }
+        TmGenerator generator = new TmGenerator();
+        int params = 500;
+        String xmlFile = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--size": generator.setSize(parseSize(value)); break;
+                case "--params": params = Integer.parseInt(value); break;
+                case "--xml": xmlFile = value; break;
+                case "--mix": {
+                    String[] w = value.split(",");
+                    generator.setTypeWeights(Integer.parseInt(w[0]), Integer.parseInt(w[1]),
+                            Integer.parseInt(w[2]), Integer.parseInt(w[3]));
+                    break;
+                }
+                case "--point": {
+                    String[] range = value.split("-");
+                    generator.setPointLength(Integer.parseInt(range[0]), Integer.parseInt(range[1]));
+                    break;
+                }
+                case "--service": generator.setServiceRate(Double.parseDouble(value)); break;
+                case "--step": generator.setTimeStep(Double.parseDouble(value)); break;
+                case "--unknown": generator.setUnknownRate(Double.parseDouble(value)); break;
+                case "--corrupt": generator.setCorruptRate(Double.parseDouble(value)); break;
+                case "--seed": generator.setSeed(Long.parseLong(value)); break;
+                default:
+                    System.err.println("Неизвестный параметр: " + args[i]);
+                    return;
+            }
+        }
+        if (xmlFile != null) {
+            DatXML datXML = new DatXML();
+            datXML.load(xmlFile);
+            generator.setParams(datXML, params);
+        } else {
+            generator.setParamNumbers(defaultParams(params));
+        }
+
+        Path file = Paths.get(args[0]);
+        long t0 = System.nanoTime();
+        generator.generate(file);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        long bytes = Files.size(file);
+        System.out.printf("%s: %,d байт, %,d записей, %.1f с, %.0f МБ/с%n",
+                file, bytes, generator.getRecords(), seconds, bytes / seconds / (1 << 20));
+    }
+}
@@ -0,0 +1,614 @@
+package telemetry;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Просмотр ТМ-файла целиком в виде hex-дампа.
+ *
+ * Файл отображается в память ({@link TmMappedFile}), а панель рисует только видимые
+ * строки, поэтому размер файла на скорость прокрутки не влияет. Границы записей
+ * и поля заголовков подсвечиваются; начало записи, содержащей строку, находится
+ * по блокам индекса {@link TmFileIndex}, который загружается (или строится) в фоне.
+ * Можно перейти к смещению, к первой записи не раньше заданного времени
+ * и к N-й записи параметра.
+ */
+public class TmHexViewer extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private static final int BYTES_PER_ROW = 16;
+    /** Символов в столбце смещения */
+    private static final int OFFSET_DIGITS = 10;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final char[] SEPARATOR = {'|'};
+
+    private static final Color BOUNDARY_COLOR = new Color(200, 0, 0);
+    private static final Color PARAM_COLOR = new Color(205, 222, 255);
+    private static final Color TIME_COLOR = new Color(212, 244, 212);
+    private static final Color DIM_COLOR = new Color(255, 244, 196);
+    private static final Color TYPE_COLOR = new Color(255, 222, 196);
+    private static final Color VALUE_COLOR = new Color(232, 232, 232);
+    private static final Color SERVICE_COLOR = new Color(255, 208, 208);
+    private static final Color TAIL_COLOR = new Color(255, 170, 170);
+    private static final Color SELECTION_COLOR = new Color(0, 90, 255, 60);
+
+    private final String filename;
+    private final Dim dim;
+    private final DatXML datXML;
+    private TmMappedFile file;
+    /** Индекс файла; null, пока строится */
+    private TmFileIndex index;
+
+    private final long rowCount;
+    /** Строк файла на одно деление полосы прокрутки (для файлов больше 32 ГБ) */
+    private final int scrollScale;
+    private long topRow;
+    private boolean updatingScrollBar;
+
+    // Выделенная запись
+    private long selectedStart = -1;
+
+    // Записи видимой области: начала и длины
+    private long[] visibleStarts = new long[256];
+    private long[] visibleLengths = new long[256];
+    private int visibleCount;
+    /** Начало неполной записи в конце файла среди видимых (-1 - нет) */
+    private long visibleTail;
+
+    private final HexView view = new HexView();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JLabel status = new JLabel(" ");
+    private final JTextField txtOffset = new JTextField(12);
+    private final JTextField txtTime = new JTextField(10);
+    private final JTextField txtParam = new JTextField(6);
+    private final JTextField txtRecordNumber = new JTextField(6);
+
+    /**
+     * @param dim    размерности для расшифровки заголовка (может быть null)
+     * @param datXML справочник параметров для имён (может быть null)
+     */
+    public TmHexViewer(String filename, Dim dim, DatXML datXML) throws IOException {
+        super(new BorderLayout());
+        this.filename = filename;
+        this.dim = dim;
+        this.datXML = datXML;
+        this.file = TmMappedFile.open(filename);
+        this.rowCount = (file.size() + BYTES_PER_ROW - 1) / BYTES_PER_ROW;
+        this.scrollScale = (int) Math.max(1, (rowCount + (1 << 30) - 1) >> 30);
+
+        // Панель переходов
+        JPanel jumpPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        jumpPanel.add(new JLabel("Смещение:"));
+        txtOffset.setToolTipText("Десятичное или шестнадцатеричное (0x1F00, 1F00h)");
+        jumpPanel.add(txtOffset);
+        JButton btnOffset = new JButton("Перейти");
+        btnOffset.addActionListener(e -> jumpToOffset());
+        txtOffset.addActionListener(e -> jumpToOffset());
+        jumpPanel.add(btnOffset);
+
+        jumpPanel.add(new JLabel("Время:"));
+        txtTime.setToolTipText("ЧЧ:ММ:СС,мс - первая запись не раньше этого времени");
+        jumpPanel.add(txtTime);
+        JButton btnTime = new JButton("Найти");
+        btnTime.addActionListener(e -> jumpToTime());
+        txtTime.addActionListener(e -> jumpToTime());
+        jumpPanel.add(btnTime);
+
+        jumpPanel.add(new JLabel("Параметр:"));
+        jumpPanel.add(txtParam);
+        jumpPanel.add(new JLabel("запись №"));
+        txtRecordNumber.setText("1");
+        jumpPanel.add(txtRecordNumber);
+        JButton btnRecord = new JButton("Найти");
+        btnRecord.addActionListener(e -> jumpToParamRecord());
+        txtRecordNumber.addActionListener(e -> jumpToParamRecord());
+        jumpPanel.add(btnRecord);
+        add(jumpPanel, BorderLayout.NORTH);
+
+        JPanel center = new JPanel(new BorderLayout());
+        center.add(view, BorderLayout.CENTER);
+        center.add(scrollBar, BorderLayout.EAST);
+        add(center, BorderLayout.CENTER);
+
+        status.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        status.setText("Размер: " + file.size() + " байт. Индекс записей загружается...");
+        add(status, BorderLayout.SOUTH);
+
+        scrollBar.addAdjustmentListener(e -> {
+            if (!updatingScrollBar) {
+                topRow = Math.min((long) e.getValue() * scrollScale, maxTopRow());
+                view.repaint();
+            }
+        });
+        view.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                setTopRow(topRow);
+            }
+        });
+
+        loadIndex();
+    }
+
+    /** Загружает или строит индекс в фоне */
+    private void loadIndex() {
+        new SwingWorker<TmFileIndex, Void>() {
+            @Override
+            protected TmFileIndex doInBackground() throws Exception {
+                return TmFileIndex.open(filename);
+            }
+
+            @Override
+            protected void done() {
+                if (file == null) {
+                    return; // окно уже закрыто
+                }
+                try {
+                    index = get();
+                    status.setText("Размер: " + file.size() + " байт, записей: " + index.getCounts().getTotalRecords()
+                            + ". Щелчок по байту выделяет запись.");
+                } catch (Exception e) {
+                    status.setText("Индекс не построен, границы записей не показываются: " + e.getMessage());
+                }
+                view.repaint();
+            }
+        }.execute();
+    }
+
+    /** Освобождает отображение файла */
+    public void close() {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    // ---------- Прокрутка ----------
+
+    private long maxTopRow() {
+        return Math.max(0, rowCount - view.visibleRows() + 1);
+    }
+
+    private void setTopRow(long row) {
+        topRow = Math.max(0, Math.min(row, maxTopRow()));
+        updatingScrollBar = true;
+        try {
+            int extent = Math.max(1, view.visibleRows() / scrollScale);
+            int maximum = (int) ((rowCount + scrollScale - 1) / scrollScale) + 1;
+            scrollBar.setValues((int) (topRow / scrollScale), extent, 0, maximum);
+            scrollBar.setBlockIncrement(extent);
+        } finally {
+            updatingScrollBar = false;
+        }
+        view.repaint();
+    }
+
+    /** Прокручивает так, чтобы смещение было в верхней трети окна, и выделяет его запись */
+    private void showOffset(long offset) {
+        setTopRow(offset / BYTES_PER_ROW - view.visibleRows() / 3);
+        selectRecordAt(offset);
+    }
+
+    // ---------- Записи ----------
+
+    /** Начало записи, содержащей смещение (по блокам индекса) */
+    private long recordStart(long offset) {
+        int block = index.findBlock(offset);
+        long pos = index.getBlockOffset(block);
+        while (true) {
+            int length = file.recordLength(pos);
+            if (length < 0 || pos + length > offset) {
+                return pos;
+            }
+            pos += length;
+        }
+    }
+
+    private void selectRecordAt(long offset) {
+        if (index == null) {
+            selectedStart = -1;
+            status.setText("Смещение " + offset + ": индекс записей ещё загружается");
+            view.repaint();
+            return;
+        }
+        selectedStart = recordStart(offset);
+        status.setText(describe(selectedStart));
+        view.repaint();
+    }
+
+    /** Расшифровка заголовка записи для строки состояния */
+    private String describe(long start) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Запись @ 0x").append(Long.toHexString(start).toUpperCase())
+                .append(" (").append(start).append("): ");
+        int length = file.recordLength(start);
+        if (length < 0) {
+            sb.append("неполная запись в конце файла, ").append(file.size() - start).append(" байт");
+            return sb.toString();
+        }
+        int param = file.u16(start);
+        long time = file.s32(start + 2) & 0xFFFFFFFFL;
+        int byte6 = file.u8(start + 6);
+        int byte7 = file.u8(start + 7);
+        if (param == TmDecoder.SYSTEM_MESSAGE_PARAM) {
+            sb.append("служебная, время ");
+            TmFormat.appendTime(sb, time);
+            sb.append(", тип сообщения ").append(byte6);
+            return sb.toString();
+        }
+        sb.append("параметр ").append(param);
+        if (datXML != null) {
+            sb.append(" (").append(datXML.getName(param)).append(')');
+        }
+        sb.append(", время ");
+        TmFormat.appendTime(sb, time);
+        sb.append(", размерность ").append(byte6);
+        if (dim != null) {
+            sb.append(" (").append(dim.getDimensionString(byte6)).append(')');
+        }
+        int valueType = byte7 & 0x0F;
+        sb.append(", атрибут ").append(byte7 >> 4).append(", тип ").append(valueType);
+        switch (valueType) {
+            case 0:
+                sb.append(", значение ").append(file.s32(start + 12));
+                break;
+            case 1:
+                sb.append(", значение ");
+                TmFormat.appendFixed6(sb, Double.longBitsToDouble(file.s64(start + 8)));
+                break;
+            case 2:
+                sb.append(", код: длина ").append(file.u8(start + 9))
+                        .append(", значение ").append(file.s32(start + 12));
+                break;
+            case 3:
+                sb.append(", массив: элемент ").append(file.u8(start + 8))
+                        .append(" байт, длина ").append(file.u16(start + 10));
+                break;
+            default:
+                sb.append(" (неизвестный тип)");
+        }
+        sb.append(", длина записи ").append(length);
+        return sb.toString();
+    }
+
+    /** Собирает записи, пересекающиеся с диапазоном [from, to) */
+    private void collectVisibleRecords(long from, long to) {
+        visibleCount = 0;
+        visibleTail = -1;
+        if (index == null || from >= to) {
+            return;
+        }
+        long pos = recordStart(from);
+        while (pos < to) {
+            int length = file.recordLength(pos);
+            if (visibleCount == visibleStarts.length) {
+                visibleStarts = Arrays.copyOf(visibleStarts, visibleCount * 2);
+                visibleLengths = Arrays.copyOf(visibleLengths, visibleCount * 2);
+            }
+            visibleStarts[visibleCount] = pos;
+            if (length < 0) {
+                visibleTail = pos;
+                visibleLengths[visibleCount++] = file.size() - pos;
+                break;
+            }
+            visibleLengths[visibleCount++] = length;
+            pos += length;
+        }
+    }
+
+    /** Цвет фона байта по полю заголовка (null - без подсветки) */
+    private Color fieldColor(long start, long offset) {
+        if (start == visibleTail) {
+            return TAIL_COLOR;
+        }
+        long p = offset - start;
+        if (p < 2) {
+            return file.u16(start) == TmDecoder.SYSTEM_MESSAGE_PARAM ? SERVICE_COLOR : PARAM_COLOR;
+        }
+        if (p < 6) return TIME_COLOR;
+        if (file.u16(start) == TmDecoder.SYSTEM_MESSAGE_PARAM) {
+            return p == 6 ? DIM_COLOR : null;
+        }
+        if (p == 6) return DIM_COLOR;
+        if (p == 7) return TYPE_COLOR;
+        switch (file.u8(start + 7) & 0x0F) {
+            case 0: return p >= 12 ? VALUE_COLOR : null;
+            case 1: return VALUE_COLOR;
+            case 2: return p == 9 || p >= 12 ? VALUE_COLOR : null;
+            case 3: return p == 8 || p == 10 || p == 11 ? TYPE_COLOR : p >= 12 ? VALUE_COLOR : null;
+            default: return null;
+        }
+    }
+
+    // ---------- Переходы ----------
+
+    private void jumpToOffset() {
+        String text = txtOffset.getText().trim();
+        long offset;
+        try {
+            if (text.startsWith("0x") || text.startsWith("0X")) {
+                offset = Long.parseLong(text.substring(2), 16);
+            } else if (text.endsWith("h") || text.endsWith("H")) {
+                offset = Long.parseLong(text.substring(0, text.length() - 1), 16);
+            } else {
+                offset = Long.parseLong(text);
+            }
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Неверное смещение: " + text, "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (offset < 0 || offset >= file.size()) {
+            JOptionPane.showMessageDialog(this, "Смещение вне файла (размер " + file.size() + " байт)",
+                    "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        showOffset(offset);
+    }
+
+    private void jumpToTime() {
+        long time;
+        try {
+            time = TmDat.parseTime(txtTime.getText());
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        status.setText("Поиск записи со временем не раньше " + TmDat.formatTime(time) + "...");
+        TmMappedFile mapped = file;
+        search(() -> {
+            // Записи идут в порядке файла, время может быть не упорядочено - просмотр подряд
+            long pos = 0;
+            int length;
+            while ((length = mapped.recordLength(pos)) >= 0) {
+                if ((mapped.s32(pos + 2) & 0xFFFFFFFFL) >= time) {
+                    return pos;
+                }
+                pos += length;
+            }
+            return -1L;
+        }, "Нет записей не раньше " + TmDat.formatTime(time));
+    }
+
+    private void jumpToParamRecord() {
+        if (index == null) {
+            JOptionPane.showMessageDialog(this, "Индекс записей ещё загружается.");
+            return;
+        }
+        int param;
+        int number;
+        try {
+            param = Integer.parseInt(txtParam.getText().trim());
+            number = Integer.parseInt(txtRecordNumber.getText().trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Укажите номер параметра и номер записи (с 1)",
+                    "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (param < 0 || param >= TmDecoder.SYSTEM_MESSAGE_PARAM || number < 1) {
+            JOptionPane.showMessageDialog(this, "Неверный номер параметра или записи", "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        status.setText("Поиск записи " + number + " параметра " + param + "...");
+        TmMappedFile mapped = file;
+        TmFileIndex fileIndex = index;
+        search(() -> {
+            int remaining = number;
+            for (long[] range : blockRanges(fileIndex, param)) {
+                long pos = fileIndex.getBlockOffset((int) range[0]);
+                long end = fileIndex.getBlockOffset((int) range[1]);
+                while (pos < end) {
+                    if (mapped.u16(pos) == param && --remaining == 0) {
+                        return pos;
+                    }
+                    pos += mapped.recordLength(pos);
+                }
+            }
+            return -1L;
+        }, "У параметра " + param + " нет записи " + number);
+    }
+
+    /** Объединённые диапазоны блоков параметра (записи известного и неизвестного типа) */
+    private static List<long[]> blockRanges(TmFileIndex index, int param) {
+        List<long[]> ranges = new ArrayList<>();
+        for (boolean unknown : new boolean[]{false, true}) {
+            int[] r = index.getBlockRanges(TmColumnStore.key(param, unknown));
+            for (int i = 0; i < r.length; i += 2) {
+                ranges.add(new long[]{r[i], r[i + 1]});
+            }
+        }
+        ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    /** Поиск смещения записи вне потока интерфейса */
+    private interface Search {
+        long find();
+    }
+
+    private void search(Search search, String notFound) {
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() {
+                return search.find();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    long offset = get();
+                    if (offset < 0) {
+                        status.setText(notFound);
+                    } else if (file != null) {
+                        showOffset(offset);
+                    }
+                } catch (Exception e) {
+                    status.setText("Ошибка поиска: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    // ---------- Отрисовка ----------
+
+    /** Область дампа: рисует только видимые строки */
+    private class HexView extends JComponent {
+        private static final long serialVersionUID = 1L;
+
+        private final Font font = new Font("Monospaced", Font.PLAIN, 12);
+        private final char[] chars = new char[OFFSET_DIGITS];
+
+        HexView() {
+            setFont(font);
+            setOpaque(true);
+            setBackground(Color.WHITE);
+            setFocusable(true);
+            FontMetrics fm = getFontMetrics(font);
+            setPreferredSize(new Dimension(asciiX(fm.charWidth('0')) + (BYTES_PER_ROW + 2) * fm.charWidth('0') + 8, 400));
+
+            addMouseWheelListener(e -> setTopRow(topRow + 3L * e.getWheelRotation()));
+            addMouseListener(new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    requestFocusInWindow();
+                    long offset = offsetAt(e.getX(), e.getY());
+                    if (offset >= 0) {
+                        selectRecordAt(offset);
+                    }
+                }
+            });
+            bindKey("UP", () -> setTopRow(topRow - 1));
+            bindKey("DOWN", () -> setTopRow(topRow + 1));
+            bindKey("PAGE_UP", () -> setTopRow(topRow - visibleRows()));
+            bindKey("PAGE_DOWN", () -> setTopRow(topRow + visibleRows()));
+            bindKey("ctrl HOME", () -> setTopRow(0));
+            bindKey("ctrl END", () -> setTopRow(Long.MAX_VALUE));
+        }
+
+        private void bindKey(String key, Runnable action) {
+            getInputMap(WHEN_FOCUSED).put(KeyStroke.getKeyStroke(key), key);
+            getActionMap().put(key, new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    action.run();
+                }
+            });
+        }
+
+        int lineHeight() {
+            return getFontMetrics(font).getHeight();
+        }
+
+        int visibleRows() {
+            return Math.max(1, getHeight() / lineHeight());
+        }
+
+        private int hexX(int cw, int column) {
+            return 4 + (OFFSET_DIGITS + 2) * cw + column * 3 * cw + (column >= 8 ? cw : 0);
+        }
+
+        private int asciiX(int cw) {
+            return hexX(cw, BYTES_PER_ROW) + cw;
+        }
+
+        /** Смещение байта под точкой (-1 - вне байтов) */
+        private long offsetAt(int x, int y) {
+            int cw = getFontMetrics(font).charWidth('0');
+            long row = topRow + y / lineHeight();
+            int column = -1;
+            for (int b = 0; b < BYTES_PER_ROW; b++) {
+                int hx = hexX(cw, b);
+                int ax = asciiX(cw) + cw + b * cw;
+                if ((x >= hx && x < hx + 3 * cw) || (x >= ax && x < ax + cw)) {
+                    column = b;
+                    break;
+                }
+            }
+            long offset = row * BYTES_PER_ROW + column;
+            return column < 0 || file == null || offset >= file.size() ? -1 : offset;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            if (file == null) {
+                return;
+            }
+            g.setFont(font);
+            FontMetrics fm = g.getFontMetrics();
+            int cw = fm.charWidth('0');
+            int lh = fm.getHeight();
+            int ascent = fm.getAscent();
+            int rows = visibleRows() + 1;
+            long first = topRow * BYTES_PER_ROW;
+            long last = Math.min(file.size(), first + (long) rows * BYTES_PER_ROW);
+            collectVisibleRecords(first, last);
+
+            int record = 0;
+            for (int r = 0; r < rows; r++) {
+                long rowOffset = (topRow + r) * BYTES_PER_ROW;
+                if (rowOffset >= file.size()) break;
+                int y = r * lh;
+
+                long v = rowOffset;
+                for (int i = OFFSET_DIGITS - 1; i >= 0; i--) {
+                    chars[i] = HEX[(int) (v & 0xF)];
+                    v >>>= 4;
+                }
+                g.setColor(Color.GRAY);
+                g.drawChars(chars, 0, OFFSET_DIGITS, 4, y + ascent);
+                g.drawChars(SEPARATOR, 0, 1, asciiX(cw), y + ascent);
+
+                for (int b = 0; b < BYTES_PER_ROW; b++) {
+                    long offset = rowOffset + b;
+                    if (offset >= file.size()) break;
+                    int hx = hexX(cw, b);
+                    int ax = asciiX(cw) + cw + b * cw;
+
+                    while (record < visibleCount && visibleStarts[record] + visibleLengths[record] <= offset) {
+                        record++;
+                    }
+                    if (record < visibleCount && visibleStarts[record] <= offset) {
+                        long start = visibleStarts[record];
+                        Color color = fieldColor(start, offset);
+                        if (color != null) {
+                            g.setColor(color);
+                            g.fillRect(hx, y, 2 * cw, lh);
+                            g.fillRect(ax, y, cw, lh);
+                        }
+                        if (start == selectedStart) {
+                            g.setColor(SELECTION_COLOR);
+                            g.fillRect(hx, y, 2 * cw, lh);
+                            g.fillRect(ax, y, cw, lh);
+                        }
+                        if (offset == start) {
+                            g.setColor(BOUNDARY_COLOR);
+                            g.fillRect(hx - 2, y, 2, lh);
+                        }
+                    }
+
+                    int value = file.u8(offset);
+                    chars[0] = HEX[value >> 4];
+                    chars[1] = HEX[value & 0xF];
+                    g.setColor(Color.BLACK);
+                    g.drawChars(chars, 0, 2, hx, y + ascent);
+                    chars[0] = value >= 32 && value <= 126 ? (char) value : '.';
+                    g.drawChars(chars, 0, 1, ax, y + ascent);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package telemetry;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Показатели загрузки ТМ-файла, видимые через JMX во время загрузки
+ * (регистрируются в платформенном MBeanServer при первом обращении).
+ *
+ * Счётчики берутся у декодеров: во время загрузки - сумма декодеров, которые
+ * разбирают файлы ({@link TmDecoder#decodeFile} сообщает о начале и конце разбора),
+ * после загрузки - декодер загрузчика (у индекса из кэша разбора нет вовсе).
+ * Поля декодеров читаются без синхронизации, поэтому во время загрузки значения
+ * приблизительны. Сводка пересчитывается не чаще раза в SNAPSHOT_NANOS.
+ * Объём хранилища сообщает поток, который его заполняет ({@link #storeChanged}),
+ * поэтому хранилище никогда не обходится из потока JMX.
+ */
+public class TmLoadMetrics implements TmLoadMetricsMBean {
+    public static final String OBJECT_NAME = "telemetry:type=TmLoadMetrics";
+    private static final long SNAPSHOT_NANOS = 200_000_000L;
+    /** Байт хранилища на запись: время, значение, тип, атрибут, размерность */
+    private static final int STORE_RECORD_BYTES = 8 + 8 + 3;
+    private static final int KEY_COUNT = 2 * TmColumnStore.UNKNOWN_FLAG;
+
+    /** Этапы загрузки */
+    public enum Phase { DICTIONARY, DECODE, GROUPING, UI }
+
+    private static final TmLoadMetrics INSTANCE = register(new TmLoadMetrics());
+
+    private volatile String file = "";
+    private volatile long fileSize = 0;
+    private volatile boolean loading = false;
+    /** Загрузчик последней загрузки (слабая ссылка: заменённый загрузчик не удерживается) */
+    private volatile WeakReference<AbstractTmReader> reader = new WeakReference<>(null);
+    private volatile long decodeStartNanos = 0;
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    /** Декодеры, разбирающие файлы сейчас */
+    private final List<TmDecoder> active = new CopyOnWriteArrayList<>();
+    /** Счётчики декодеров, закончивших разбор в текущей загрузке */
+    private final List<TmCounts> finished = new ArrayList<>();
+    /** Объём хранилища загрузчика после загрузки или дописанных записей; -1 - неизвестен */
+    private volatile long storeBytes = -1;
+
+    // Сводка счётчиков и пропуски справочника параметров по ней
+    private TmCounts snapshot;
+    private long snapshotNanos;
+    private int missingNames;
+    private long nameMisses;
+
+    public static TmLoadMetrics get() {
+        return INSTANCE;
+    }
+
+    private static TmLoadMetrics register(TmLoadMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException | SecurityException e) {
+            System.err.println("Показатели загрузки не зарегистрированы в JMX: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    /** Начало загрузки с загрузкой справочников: сбрасывает длительности всех этапов */
+    public void beginLoad(String filename) {
+        file = filename;
+        for (Phase phase : Phase.values()) {
+            phaseNanos.set(phase.ordinal(), 0);
+        }
+    }
+
+    /** Начало разбора файла загрузчиком (справочники уже загружены) */
+    public synchronized void beginDecode(AbstractTmReader reader, String filename) {
+        this.reader = new WeakReference<>(reader);
+        file = filename;
+        fileSize = 0;
+        for (String path : ReadTMISession.splitPaths(filename)) {
+            fileSize += new File(path).length();
+        }
+        finished.clear();
+        storeBytes = -1;
+        snapshot = null;
+        phaseNanos.set(Phase.DECODE.ordinal(), 0);
+        phaseNanos.set(Phase.GROUPING.ordinal(), 0);
+        phaseNanos.set(Phase.UI.ordinal(), 0);
+        decodeStartNanos = System.nanoTime();
+        loading = true;
+    }
+
+    /** Конец загрузки: дальше счётчики берутся у декодера загрузчика */
+    public synchronized void endLoad() {
+        loading = false;
+        snapshot = null;
+    }
+
+    /** Прибавляет время к длительности этапа */
+    public void addPhase(Phase phase, long nanos) {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    void decoderStarted(TmDecoder decoder) {
+        active.add(decoder);
+    }
+
+    synchronized void decoderFinished(TmDecoder decoder) {
+        active.remove(decoder);
+        if (loading) {
+            finished.add(decoder.getCounts());
+        }
+    }
+
+    /**
+     * Запоминает объём хранилища загрузчика. Вызывается потоком, который
+     * пополняет хранилище: в конце загрузки и после добавления дописанных записей.
+     */
+    public void storeChanged(AbstractTmReader reader) {
+        if (reader == this.reader.get() && reader instanceof ReadTMIColumnar) {
+            storeBytes = ((ReadTMIColumnar) reader).getStore().getAllocatedBytes();
+        }
+    }
+
+    /** Сводка счётчиков, не старше SNAPSHOT_NANOS */
+    private synchronized TmCounts counts() {
+        long now = System.nanoTime();
+        if (snapshot == null || now - snapshotNanos > SNAPSHOT_NANOS) {
+            List<TmCounts> sources = new ArrayList<>();
+            AbstractTmReader r = reader.get();
+            if (loading || r == null || r.getDecoder() == null) {
+                sources.addAll(finished);
+                for (TmDecoder d : active) {
+                    sources.add(d.getCounts());
+                }
+            } else {
+                sources.add(r.getDecoder().getCounts());
+            }
+            TmCounts sum = new TmCounts();
+            for (TmCounts c : sources) {
+                sum.add(c);
+            }
+            countNameMisses(sources, r == null ? null : r.datXML);
+            snapshot = sum;
+            snapshotNanos = now;
+        }
+        return snapshot;
+    }
+
+    /** Считает пропуски справочника по статистике рядов источников, не объединяя её */
+    private void countNameMisses(List<TmCounts> sources, DatXML datXML) {
+        missingNames = 0;
+        nameMisses = 0;
+        if (datXML == null) {
+            return;
+        }
+        for (int key = 0; key < KEY_COUNT; key++) {
+            boolean seen = false;
+            long total = 0;
+            for (TmCounts c : sources) {
+                TmParamStats stats = c.getParamStats(key);
+                if (stats != null) {
+                    seen = true;
+                    total += stats.getTotal();
+                }
+            }
+            if (seen && !datXML.contains(TmColumnStore.paramOf(key))) {
+                missingNames++;
+                nameMisses += total;
+            }
+        }
+    }
+
+    @Override public String getFile() { return file; }
+    @Override public boolean isLoading() { return loading; }
+    @Override public long getFileSize() { return fileSize; }
+    @Override public long getBytesRead() { return counts().getBytesNum(); }
+
+    @Override
+    public long getFileOffset() {
+        if (loading && !active.isEmpty()) {
+            long offset = 0;
+            for (TmDecoder d : active) {
+                offset = Math.max(offset, d.getBytesNum());
+            }
+            return offset;
+        }
+        return counts().getBytesNum();
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+        long nanos = loading ? System.nanoTime() - decodeStartNanos : phaseNanos.get(Phase.DECODE.ordinal());
+        return nanos > 0 ? counts().getTotalRecords() / (nanos / 1e9) : 0;
+    }
+
+    @Override public int getTotalRecords() { return counts().getTotalRecords(); }
+    @Override public int getServiceRecords() { return counts().getServiceRecords(); }
+    @Override public int getUsefulRecords() { return counts().getUsefulRecords(); }
+    @Override public int getUnknownRecords() { return counts().getUnknownRecords(); }
+    @Override public int getLongRecords() { return counts().getTypeCounts()[0]; }
+    @Override public int getDoubleRecords() { return counts().getTypeCounts()[1]; }
+    @Override public int getCodeRecords() { return counts().getTypeCounts()[2]; }
+    @Override public int getPointRecords() { return counts().getTypeCounts()[3]; }
+    @Override public int getPointLess4() { return counts().getPointLess4(); }
+    @Override public int getPointGreater4() { return counts().getPointGreater4(); }
+    @Override public int getCodeLess8() { return counts().getCodeLess8(); }
+    @Override public int getCodeGreater8() { return counts().getCodeGreater8(); }
+    @Override public long getPointBytes() { return counts().getPointBytes(); }
+
+    @Override
+    public synchronized int getMissingNames() {
+        counts();
+        return missingNames;
+    }
+
+    @Override
+    public synchronized long getNameMisses() {
+        counts();
+        return nameMisses;
+    }
+
+    @Override
+    public int getDimensionMisses() {
+        AbstractTmReader r = reader.get();
+        return r == null || r.dim == null ? 0 : r.dim.countMisses(counts().getDimensionCounts());
+    }
+
+    @Override
+    public long getStoreBytes() {
+        AbstractTmReader r = reader.get();
+        if (!(r instanceof ReadTMIColumnar)) {
+            return -1;
+        }
+        long bytes = storeBytes;
+        if (!loading && bytes >= 0) {
+            return bytes;
+        }
+        TmCounts counts = counts();
+        return (long) (counts.getUsefulRecords() + counts.getUnknownRecords()) * STORE_RECORD_BYTES
+                + counts.getPointBytes();
+    }
+
+    @Override public double getDictionaryLoadMillis() { return millis(Phase.DICTIONARY); }
+    @Override public double getDecodeMillis() { return millis(Phase.DECODE); }
+    @Override public double getGroupingMillis() { return millis(Phase.GROUPING); }
+    @Override public double getUiBuildMillis() { return millis(Phase.UI); }
+
+    private double millis(Phase phase) {
+        return phaseNanos.get(phase.ordinal()) / 1e6;
+    }
+}
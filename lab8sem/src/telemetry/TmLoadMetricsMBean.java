@@ -0,0 +1,59 @@
+package telemetry;
+
+/**
+ * Показатели загрузки ТМ-файла для JMX (JConsole, локальный агент).
+ * Объект: {@link TmLoadMetrics#OBJECT_NAME}.
+ */
+public interface TmLoadMetricsMBean {
+    /** Загружаемый (или последний загруженный) файл */
+    String getFile();
+
+    /** Идёт ли загрузка */
+    boolean isLoading();
+
+    long getFileSize();
+
+    /** Прочитано байт всеми декодерами загрузки */
+    long getBytesRead();
+
+    /** Смещение в файле, до которого дочитан текущий файл */
+    long getFileOffset();
+
+    /** Записей в секунду за время разбора */
+    double getRecordsPerSecond();
+
+    int getTotalRecords();
+    int getServiceRecords();
+    int getUsefulRecords();
+    int getUnknownRecords();
+    int getLongRecords();
+    int getDoubleRecords();
+    int getCodeRecords();
+    int getPointRecords();
+    int getPointLess4();
+    int getPointGreater4();
+    int getCodeLess8();
+    int getCodeGreater8();
+
+    /** Байт данных Point */
+    long getPointBytes();
+
+    /** Параметров, которых нет в справочнике параметров */
+    int getMissingNames();
+
+    /** Записей параметров, которых нет в справочнике параметров */
+    long getNameMisses();
+
+    /** Записей с кодом размерности, которого нет в таблице размерностей */
+    int getDimensionMisses();
+
+    /** Память хранилища записей, байт (во время загрузки - оценка по числу записей; -1 - хранилища нет) */
+    long getStoreBytes();
+
+    // Длительность этапов последней загрузки, мс
+
+    double getDictionaryLoadMillis();
+    double getDecodeMillis();
+    double getGroupingMillis();
+    double getUiBuildMillis();
+}
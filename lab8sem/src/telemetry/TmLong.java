@@ -10,4 +10,19 @@ public class TmLong extends TmDat {
     public String getValueAsString() {
         return value + " " + dimension;
     }
+
+    @Override
+    public String getValueText() {
+        return String.valueOf(value);
+    }
+
+    @Override
+    public void appendValueAsString(StringBuilder sb) {
+        sb.append(value).append(' ').append(dimension);
+    }
+
+    @Override
+    public void appendValueText(StringBuilder sb) {
+        sb.append(value);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Декодер ТМ-файла, отображающий файл в память (FileChannel.map).
+ * Файлы больше 2 ГБ отображаются последовательными окнами; каждое следующее окно
+ * начинается с первой записи, не поместившейся целиком в предыдущее.
+ * Буферы, передаваемые в onPoint, - это само отображение, поэтому обработчик
+ * может хранить их срезы без копирования.
+ */
+public class TmMappedDecoder extends TmDecoder {
+    /** Размер окна отображения по умолчанию */
+    private static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private final int windowSize;
+
+    public TmMappedDecoder(TmRecordListener listener) {
+        this(listener, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize размер окна отображения в байтах
+     */
+    public TmMappedDecoder(TmRecordListener listener, int windowSize) {
+        super(listener);
+        if (windowSize < MAX_RECORD_SIZE) {
+            // Окно должно вмещать самую длинную запись Point
+            throw new IllegalArgumentException("Окно отображения меньше " + MAX_RECORD_SIZE + " байт");
+        }
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    protected void read(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        long start = 0;
+        while (start < fileSize) {
+            long size = Math.min(windowSize, fileSize - start);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            decode(window);
+            if (start + size == fileSize) {
+                // Неполная запись в конце файла отбрасывается
+                break;
+            }
+            start += window.position();
+        }
+        counts.setBytesNum(fileSize);
+    }
+}
@@ -0,0 +1,82 @@
+package telemetry;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ТМ-файл, отображённый в память сегментами по 1 ГБ, с чтением по 64-битным смещениям.
+ * Подходит для файлов больше 2 ГБ; страницы подгружаются системой при обращении.
+ * Поля заголовков читаются побайтно, поэтому запись может пересекать границу сегментов.
+ */
+public class TmMappedFile implements AutoCloseable {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final long size;
+    private MappedByteBuffer[] segments;
+
+    private TmMappedFile(long size, MappedByteBuffer[] segments) {
+        this.size = size;
+        this.segments = segments;
+    }
+
+    /** Отображает файл только для чтения */
+    public static TmMappedFile open(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+            return new TmMappedFile(size, segments);
+        }
+    }
+
+    public long size() { return size; }
+
+    /** Байт без знака */
+    public int u8(long offset) {
+        return segments[(int) (offset >>> SEGMENT_BITS)].get((int) (offset & SEGMENT_MASK)) & 0xFF;
+    }
+
+    /** Двухбайтовое число без знака (big-endian) */
+    public int u16(long offset) {
+        return u8(offset) << 8 | u8(offset + 1);
+    }
+
+    /** Четырёхбайтовое число (big-endian) */
+    public int s32(long offset) {
+        return u16(offset) << 16 | u16(offset + 2);
+    }
+
+    /** Восьмибайтовое число (big-endian) */
+    public long s64(long offset) {
+        return (long) s32(offset) << 32 | (s32(offset + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Длина записи, начинающейся со смещения, по правилам {@link TmDecoder}
+     * @return -1, если запись не помещается в файл (неполная запись в конце)
+     */
+    public int recordLength(long offset) {
+        if (size - offset < TmDecoder.HEADER_SIZE) {
+            return -1;
+        }
+        int length = TmDecoder.RECORD_SIZE;
+        if (u16(offset) != TmDecoder.SYSTEM_MESSAGE_PARAM && (u8(offset + 7) & 0x0F) == 3) {
+            length = TmDecoder.HEADER_SIZE + Math.max(u16(offset + 10), 1);
+        }
+        return size - offset < length ? -1 : length;
+    }
+
+    /** Освобождает ссылки на отображения; память возвращается после сборки мусора */
+    @Override
+    public void close() {
+        segments = null;
+    }
+}
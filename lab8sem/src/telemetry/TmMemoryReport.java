@@ -0,0 +1,75 @@
+package telemetry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+
+/**
+ * Сравнение памяти, занимаемой загруженным сеансом, при хранении
+ * записей объектами TmDat (ReadTMIBuffered), по столбцам (ReadTMIColumnar)
+ * по столбцам вне кучи (в куче остаются только объекты рядов) и в сжатых рядах
+ * (для них выводится и степень сжатия рядов без данных Point).
+ * Запуск: java telemetry.TmMemoryReport файл.KNP [KNP-...dat.xml] [dimens.ion]
+ */
+public class TmMemoryReport {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Использование: TmMemoryReport файл.KNP [файл.dat.xml] [dimens.ion]");
+            return;
+        }
+        String tmFile = args[0];
+        String xmlFile = args.length > 1 ? args[1] : "KNP-173.14.33.58.dat.xml";
+        String dimFile = args.length > 2 ? args[2] : "dimens.ion";
+
+        Dim dim = new Dim();
+        dim.load(dimFile);
+        DatXML datXML = new DatXML();
+        datXML.load(xmlFile);
+
+        long objects = measure(new ReadTMIBuffered(), tmFile, dim, datXML);
+        ReadTMIColumnar columnsReader = new ReadTMIColumnar();
+        long columns = measure(columnsReader, tmFile, dim, datXML);
+        long columnSeries = columnsReader.getStore().getSeriesBytes();
+        columnsReader = null;
+        ReadTMIColumnar offHeapReader = new ReadTMIColumnar();
+        TmOffHeapMemory memory = TmOffHeapMemory.createDefault();
+        offHeapReader.setStoreMemory(memory);
+        long offHeap = measure(offHeapReader, tmFile, dim, datXML);
+        long offHeapBytes = memory.getAllocatedBytes();
+        offHeapReader.release();
+        ReadTMIColumnar compressedReader = new ReadTMIColumnar();
+        compressedReader.setCompressed(true);
+        long compressed = measure(compressedReader, tmFile, dim, datXML);
+        long compressedSeries = compressedReader.getStore().getSeriesBytes();
+        int records = compressedReader.getUsefulRecords() + compressedReader.getUnknownRecords();
+
+        System.out.printf("TmDat-объекты: %,d байт%n", objects);
+        System.out.printf("Столбцы:       %,d байт (%.1f%%)%n", columns, 100.0 * columns / objects);
+        System.out.printf("Вне кучи:      %,d байт в куче (%.1f%%), %,d байт вне кучи%n",
+                offHeap, 100.0 * offHeap / objects, offHeapBytes);
+        System.out.printf("Сжатые ряды:   %,d байт (%.1f%%)%n", compressed, 100.0 * compressed / objects);
+        System.out.printf("Ряды без данных Point: %,d -> %,d байт, сжатие %.2f, %.1f бит на запись%n",
+                columnSeries, compressedSeries, (double) columnSeries / compressedSeries,
+                records == 0 ? 0.0 : 8.0 * compressedSeries / records);
+    }
+
+    /** Прирост занятой кучи после загрузки файла */
+    private static long measure(TmReader reader, String tmFile, Dim dim, DatXML datXML) throws Exception {
+        long before = usedHeap();
+        reader.load(tmFile, dim, datXML);
+        long after = usedHeap();
+        System.out.printf("%s: записей %,d, параметров %,d%n", reader.getClass().getSimpleName(),
+                reader.getTotalRecords(), reader.getRecordsByName().size());
+        Reference.reachabilityFence(reader);
+        return after - before;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
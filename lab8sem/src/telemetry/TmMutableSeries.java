@@ -0,0 +1,26 @@
+package telemetry;
+
+/**
+ * Пополняемый временной ряд хранилища {@link TmColumnStore}:
+ * в куче ({@link TmColumnSeries}) или вне кучи ({@link TmOffHeapSeries}).
+ * Ссылки на данные Point относятся к области хранилища, которому принадлежит ряд.
+ */
+public interface TmMutableSeries extends TmSeries {
+    /** Добавляет запись в конец ряда */
+    void add(long time, int valueType, int attribute, int dimensionCode, long rawValue);
+
+    /** Добавляет в конец n записей, заданных столбцами */
+    void addColumns(int n, long[] times, long[] values, byte[] types, byte[] attributes, byte[] dimensions);
+
+    /**
+     * Упорядочивает записи по времени; записи с одинаковым временем
+     * сохраняют порядок поступления
+     */
+    void sortByTime();
+
+    /** Освобождает запас памяти сверх фактического размера */
+    void trimToSize();
+
+    /** Память, занятая рядом, в байтах */
+    long getAllocatedBytes();
+}
@@ -0,0 +1,236 @@
+package telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Память вне кучи для хранилища записей: прямые буферы или отображение
+ * временного файла (файл удаляется при освобождении).
+ * Небольшие буферы нарезаются из крупных блоков (SLAB_SIZE), чтобы число
+ * отображений не зависело от числа рядов. Их размер округляется до степени двойки,
+ * освобождённые буферы складываются в списки по размерам и выдаются снова
+ * (ряды растут копированием, и без этого блоки заполнялись бы брошенными буферами).
+ * Крупные буферы получают собственный блок и освобождаются сразу,
+ * все блоки - при {@link #close}.
+ *
+ * Освобождение явное: память блока отдаётся сразу (sun.misc.Unsafe.invokeCleaner,
+ * если доступен, иначе - сборщиком мусора). Поэтому читать буферы после
+ * освобождения нельзя; хранилища проверяют {@link #checkOpen}, а данные Point
+ * отдают копиями.
+ */
+public class TmOffHeapMemory implements Closeable {
+    /** Системное свойство: каталог для файла отображения (без него - прямые буферы) */
+    public static final String DIR_PROPERTY = "telemetry.offheap.dir";
+    private static final int SLAB_SIZE = 16 << 20;
+    /** Буферы крупнее этого получают собственный блок */
+    private static final int LARGE_SIZE = SLAB_SIZE / 4;
+    private static final int MIN_SHIFT = 6;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Память будет освобождена сборщиком мусора
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private long fileSize = 0;
+    /** Все блоки, кроме крупных буферов */
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    /** Крупные буферы (каждый - свой блок) */
+    private final Map<ByteBuffer, Boolean> large = new IdentityHashMap<>();
+    /** Свободные небольшие буферы по показателю степени размера */
+    private final List<List<ByteBuffer>> freeLists = new ArrayList<>();
+    private ByteBuffer current;
+    private int used = 0;
+    private long allocated = 0;
+    private long live = 0;
+    private volatile boolean closed = false;
+
+    private TmOffHeapMemory(Path file) throws IOException {
+        this.file = file;
+        this.channel = file == null ? null : FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+
+    /** Прямые буферы (их объём ограничен -XX:MaxDirectMemorySize, по умолчанию равным -Xmx) */
+    public static TmOffHeapMemory direct() {
+        try {
+            return new TmOffHeapMemory(null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // без файла не бывает
+        }
+    }
+
+    /** Отображение временного файла в каталоге dir */
+    public static TmOffHeapMemory mapped(Path dir) throws IOException {
+        Path file = Files.createTempFile(dir, "tm-store-", ".bin");
+        file.toFile().deleteOnExit();
+        return new TmOffHeapMemory(file);
+    }
+
+    /** Отображение файла в каталоге из {@link #DIR_PROPERTY}, если он задан, иначе прямые буферы */
+    public static TmOffHeapMemory createDefault() throws IOException {
+        String dir = System.getProperty(DIR_PROPERTY);
+        return dir == null || dir.isEmpty() ? direct() : mapped(Paths.get(dir));
+    }
+
+    /** Новая память того же вида (для вспомогательных хранилищ) */
+    public TmOffHeapMemory newMemory() throws IOException {
+        return file == null ? direct() : mapped(file.getParent());
+    }
+
+    /** Ёмкость буфера, который {@link #allocate} выдаст на запрос size байт */
+    public static int capacityFor(int size) {
+        if (size > LARGE_SIZE) {
+            return (size + 7) & ~7;
+        }
+        return 1 << Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+    }
+
+    /**
+     * Выделяет буфер не меньше size байт (ёмкость небольших буферов - степень двойки).
+     * Порядок байт - родной для платформы, содержимое повторно выданного буфера не обнуляется.
+     */
+    public synchronized ByteBuffer allocate(int size) {
+        checkOpen();
+        ByteBuffer buffer;
+        int capacity = capacityFor(size);
+        if (size > LARGE_SIZE) {
+            buffer = newSlab(capacity);
+            large.put(buffer, Boolean.TRUE);
+        } else {
+            int shift = Integer.numberOfTrailingZeros(capacity);
+            while (freeLists.size() <= shift) {
+                freeLists.add(new ArrayList<>());
+            }
+            List<ByteBuffer> free = freeLists.get(shift);
+            if (!free.isEmpty()) {
+                buffer = free.remove(free.size() - 1);
+            } else {
+                if (current == null || used + capacity > current.capacity()) {
+                    current = newSlab(SLAB_SIZE);
+                    slabs.add(current);
+                    used = 0;
+                }
+                buffer = current.slice(used, capacity).order(ByteOrder.nativeOrder());
+                used += capacity;
+            }
+        }
+        live += buffer.capacity();
+        return buffer;
+    }
+
+    private ByteBuffer newSlab(int size) {
+        ByteBuffer buffer;
+        if (channel == null) {
+            buffer = ByteBuffer.allocateDirect(size);
+        } else {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось отобразить " + file, e);
+            }
+            fileSize += size;
+        }
+        allocated += size;
+        return buffer;
+    }
+
+    /**
+     * Освобождает буфер, выделенный {@link #allocate}: крупный отдаётся сразу,
+     * небольшой остаётся для следующих выделений того же размера
+     */
+    public synchronized void free(ByteBuffer buffer) {
+        if (closed) {
+            return;
+        }
+        live -= buffer.capacity();
+        if (large.remove(buffer) != null) {
+            allocated -= buffer.capacity();
+            release(buffer);
+        } else {
+            freeLists.get(Integer.numberOfTrailingZeros(buffer.capacity())).add(buffer);
+        }
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                // Останется сборщику мусора
+            }
+        }
+    }
+
+    /** Проверяет, что память не освобождена */
+    public void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Память хранилища освобождена");
+        }
+    }
+
+    public boolean isClosed() { return closed; }
+
+    /** Отображается ли файл (иначе - прямые буферы) */
+    public boolean isMapped() { return file != null; }
+
+    /** Занятая блоками память, байт */
+    public synchronized long getAllocatedBytes() { return allocated; }
+
+    /** Память выданных и не освобождённых буферов, байт */
+    public synchronized long getLiveBytes() { return live; }
+
+    /** Освобождает всю память и удаляет файл отображения */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (ByteBuffer slab : slabs) {
+            release(slab);
+        }
+        for (ByteBuffer buffer : large.keySet()) {
+            release(buffer);
+        }
+        slabs.clear();
+        large.clear();
+        freeLists.clear();
+        current = null;
+        allocated = 0;
+        live = 0;
+        if (channel != null) {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+    }
+}
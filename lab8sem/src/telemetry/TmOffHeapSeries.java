@@ -0,0 +1,192 @@
+package telemetry;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Временной ряд параметра вне кучи: один буфер {@link TmOffHeapMemory} на ряд,
+ * разделённый на столбцы. На запись 14 байт: время (32 бита без знака),
+ * "сырое" значение (64 бита), тип с атрибутом (как в байте 7 записи файла)
+ * и код размерности.
+ * При росте ряд копируется в буфер в 1.5 раза больше, старый освобождается.
+ * Упорядочивание по времени строит перестановку в куче (временно, 8 байт на запись).
+ */
+public class TmOffHeapSeries implements TmMutableSeries {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int RECORD_BYTES = 4 + 8 + 1 + 1;
+    /** Наибольшая ёмкость, при которой ряд помещается в один буфер (чётная) */
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE / RECORD_BYTES) & ~1;
+
+    private final TmOffHeapMemory memory;
+    private final TmPointArena arena;
+    private ByteBuffer buffer;
+    private int capacity;
+    // Начала столбцов в буфере
+    private int valuesStart;
+    private int metaStart;
+    private int dimensionsStart;
+    private int size = 0;
+    /** Записи упорядочены по времени (при добавлении проверяется только соседняя пара) */
+    private boolean sorted = true;
+
+    public TmOffHeapSeries(TmOffHeapMemory memory, TmPointArena arena) {
+        this.memory = memory;
+        this.arena = arena;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Выделяет буфер не меньше чем на minCapacity записей; ёмкость чётная,
+     * чтобы значения были выровнены на 8, и занимает весь выданный буфер
+     */
+    private void allocate(int minCapacity) {
+        this.buffer = memory.allocate(minCapacity * RECORD_BYTES);
+        int capacity = Math.min(MAX_CAPACITY, buffer.capacity() / RECORD_BYTES) & ~1;
+        this.capacity = capacity;
+        this.valuesStart = 4 * capacity;
+        this.metaStart = 12 * capacity;
+        this.dimensionsStart = 13 * capacity;
+    }
+
+    @Override
+    public void add(long time, int valueType, int attribute, int dimensionCode, long rawValue) {
+        checkTime(time);
+        if (size == capacity) {
+            grow(size + 1);
+        }
+        if (size > 0 && time < getTime(size - 1)) {
+            sorted = false;
+        }
+        put(size, time, valueType, attribute, dimensionCode, rawValue);
+        size++;
+    }
+
+    private void put(int index, long time, int valueType, int attribute, int dimensionCode, long rawValue) {
+        buffer.putInt(4 * index, (int) time);
+        buffer.putLong(valuesStart + 8 * index, rawValue);
+        buffer.put(metaStart + index, (byte) (valueType & 0x0F | attribute << 4));
+        buffer.put(dimensionsStart + index, (byte) dimensionCode);
+    }
+
+    private static void checkTime(long time) {
+        if (time < 0 || time > 0xFFFF_FFFFL) {
+            throw new IllegalArgumentException("Время записи вне 32 разрядов: " + time);
+        }
+    }
+
+    /**
+     * Добавляет в конец n записей, заданных столбцами.
+     * Ссылки на данные Point должны относиться к области этого ряда.
+     */
+    @Override
+    public void addColumns(int n, long[] times, long[] values, byte[] types, byte[] attributes, byte[] dimensions) {
+        if (n == 0) {
+            return;
+        }
+        if (size + n > capacity) {
+            grow(size + n);
+        }
+        long previous = size > 0 ? getTime(size - 1) : Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            checkTime(times[i]);
+            if (times[i] < previous) {
+                sorted = false;
+            }
+            previous = times[i];
+            put(size + i, times[i], types[i], attributes[i], dimensions[i], values[i]);
+        }
+        size += n;
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Ряд вне кучи превысил " + MAX_CAPACITY + " записей");
+        }
+        long grown = Math.max(minCapacity, (long) capacity + (capacity >> 1));
+        resize((int) Math.min(MAX_CAPACITY, (grown + 1) & ~1L));
+    }
+
+    /** Переносит записи в новый буфер ёмкостью newCapacity и освобождает старый */
+    private void resize(int newCapacity) {
+        ByteBuffer old = buffer;
+        int oldValues = valuesStart, oldMeta = metaStart, oldDimensions = dimensionsStart;
+        allocate(newCapacity);
+        buffer.put(0, old, 0, 4 * size);
+        buffer.put(valuesStart, old, oldValues, 8 * size);
+        buffer.put(metaStart, old, oldMeta, size);
+        buffer.put(dimensionsStart, old, oldDimensions, size);
+        memory.free(old);
+    }
+
+    /**
+     * Упорядочивает записи по времени; записи с одинаковым временем
+     * сохраняют порядок поступления. Упорядоченный ряд не трогается.
+     */
+    @Override
+    public void sortByTime() {
+        if (sorted) {
+            return;
+        }
+        // Время занимает 32 бита, номер записи - 31: сортируем упакованные пары
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = getTime(i) << 31 | i;
+        }
+        Arrays.sort(order);
+        ByteBuffer old = buffer;
+        int oldValues = valuesStart, oldMeta = metaStart, oldDimensions = dimensionsStart;
+        allocate(capacity);
+        for (int i = 0; i < size; i++) {
+            int from = (int) (order[i] & 0x7FFF_FFFF);
+            buffer.putInt(4 * i, old.getInt(4 * from));
+            buffer.putLong(valuesStart + 8 * i, old.getLong(oldValues + 8 * from));
+            buffer.put(metaStart + i, old.get(oldMeta + from));
+            buffer.put(dimensionsStart + i, old.get(oldDimensions + from));
+        }
+        memory.free(old);
+        sorted = true;
+    }
+
+    /** Переносит записи в буфер по фактическому размеру */
+    @Override
+    public void trimToSize() {
+        int trimmed = Math.max((size + 1) & ~1, 2);
+        if (TmOffHeapMemory.capacityFor(trimmed * RECORD_BYTES) < buffer.capacity()) {
+            resize(trimmed);
+        }
+    }
+
+    /** Память, занятая буфером ряда, в байтах */
+    @Override
+    public long getAllocatedBytes() {
+        return buffer.capacity();
+    }
+
+    /** Буфер ряда; после освобождения памяти хранилища читать его нельзя */
+    private ByteBuffer buffer() {
+        memory.checkOpen();
+        return buffer;
+    }
+
+    @Override public int size() { return size; }
+    @Override public boolean isSortedByTime() { return sorted; }
+    @Override public long getTime(int index) { return buffer().getInt(4 * checkIndex(index)) & 0xFFFF_FFFFL; }
+    @Override public int getValueType(int index) { return buffer().get(metaStart + checkIndex(index)) & 0x0F; }
+    @Override public int getAttribute(int index) { return (buffer().get(metaStart + checkIndex(index)) & 0xFF) >> 4; }
+    @Override public int getDimensionCode(int index) { return buffer().get(dimensionsStart + checkIndex(index)) & 0xFF; }
+    @Override public long getRawValue(int index) { return buffer().getLong(valuesStart + 8 * checkIndex(index)); }
+
+    @Override
+    public ByteBuffer getPointData(int index) {
+        long raw = getRawValue(index);
+        return arena.view(TmSeries.pointOffset(raw), (int) (raw >>> 48));
+    }
+
+    /** Буфер длиннее ряда, поэтому индексы сверяются с размером, как у массивов TmColumnSeries */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+}
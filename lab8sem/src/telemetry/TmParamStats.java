@@ -0,0 +1,277 @@
+package telemetry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Статистика записей одного параметра: количество по типам и по размерам Point/Code,
+ * первое и последнее время, частота записей, числовые агрегаты значений Long и Double
+ * (среднее и дисперсия по Уэлфорду, минимум и максимум со временем)
+ * и количество смен значения Long/Double/Code.
+ *
+ * Накапливается по одной записи, поэтому {@link TmDecoder} ведёт её для каждого
+ * параметра прямо при разборе; статистики частей файла сливаются {@link #merge}.
+ * Нечисловые значения Double (NaN, бесконечность) в агрегаты не входят.
+ */
+public class TmParamStats {
+    private int total = 0;
+    private int longCount = 0;
+    private int doubleCount = 0;
+    private int codeCount = 0;
+    private int pointCount = 0;
+    private int unknownCount = 0;
+    private int pointLess4 = 0;
+    private int pointGreater4 = 0;
+    private int codeLess8 = 0;
+    private int codeGreater8 = 0;
+
+    // Время: самое раннее и самое позднее
+    private long firstTime = Long.MAX_VALUE;
+    private long lastTime = Long.MIN_VALUE;
+
+    // Числовые агрегаты
+    private int valueCount = 0;
+    private double mean = 0;
+    private double m2 = 0;
+    private double min = Double.NaN;
+    private long minTime = -1;
+    private double max = Double.NaN;
+    private long maxTime = -1;
+
+    // Смены значения в порядке файла
+    private int changeSamples = 0;
+    private int changes = 0;
+    private double firstValue;
+    private double lastValue;
+
+    /** Подсчитывает статистику по списку записей параметра */
+    public static TmParamStats compute(List<TmDat> records) {
+        TmParamStats stats = new TmParamStats();
+        for (TmDat rec : records) {
+            long time = rec.getTime();
+            if (rec instanceof TmUnknown) {
+                stats.addUnknown(time);
+                continue;
+            }
+            switch (rec.getValueType()) {
+                case 0: stats.addLong(time, ((TmLong) rec).getValue()); break;
+                case 1: stats.addDouble(time, ((TmDouble) rec).getValue()); break;
+                case 2: {
+                    TmCode c = (TmCode) rec;
+                    stats.addCode(time, c.getCodeLength(), c.getCodeValue());
+                    break;
+                }
+                case 3: stats.addPoint(time, ((TmPoint) rec).getDataLength()); break;
+                default: stats.addUnknown(time);
+            }
+        }
+        return stats;
+    }
+
+    public void addLong(long time, int value) {
+        addTime(time);
+        longCount++;
+        addValue(time, value);
+        addChange(value);
+    }
+
+    public void addDouble(long time, double value) {
+        addTime(time);
+        doubleCount++;
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            addValue(time, value);
+        }
+        addChange(value);
+    }
+
+    public void addCode(long time, int codeLength, int value) {
+        addTime(time);
+        codeCount++;
+        if (codeLength < 8) codeLess8++;
+        else if (codeLength > 8) codeGreater8++;
+        addChange(value);
+    }
+
+    public void addPoint(long time, int dataLength) {
+        addTime(time);
+        pointCount++;
+        if (dataLength < 4) pointLess4++;
+        else if (dataLength > 4) pointGreater4++;
+    }
+
+    public void addUnknown(long time) {
+        addTime(time);
+        unknownCount++;
+    }
+
+    private void addTime(long time) {
+        total++;
+        if (time < firstTime) firstTime = time;
+        if (time > lastTime) lastTime = time;
+    }
+
+    private void addValue(long time, double value) {
+        valueCount++;
+        double delta = value - mean;
+        mean += delta / valueCount;
+        m2 += delta * (value - mean);
+        if (valueCount == 1 || value < min) {
+            min = value;
+            minTime = time;
+        }
+        if (valueCount == 1 || value > max) {
+            max = value;
+            maxTime = time;
+        }
+    }
+
+    private void addChange(double value) {
+        if (changeSamples == 0) {
+            firstValue = value;
+        } else if (Double.doubleToLongBits(value) != Double.doubleToLongBits(lastValue)) {
+            changes++;
+        }
+        lastValue = value;
+        changeSamples++;
+    }
+
+    /**
+     * Добавляет статистику записей, следующих в файле после учтённых
+     * (порядок важен только для количества смен значения)
+     */
+    public void merge(TmParamStats other) {
+        total += other.total;
+        longCount += other.longCount;
+        doubleCount += other.doubleCount;
+        codeCount += other.codeCount;
+        pointCount += other.pointCount;
+        unknownCount += other.unknownCount;
+        pointLess4 += other.pointLess4;
+        pointGreater4 += other.pointGreater4;
+        codeLess8 += other.codeLess8;
+        codeGreater8 += other.codeGreater8;
+        firstTime = Math.min(firstTime, other.firstTime);
+        lastTime = Math.max(lastTime, other.lastTime);
+
+        if (other.valueCount > 0) {
+            if (valueCount == 0) {
+                mean = other.mean;
+                m2 = other.m2;
+                min = other.min;
+                minTime = other.minTime;
+                max = other.max;
+                maxTime = other.maxTime;
+            } else {
+                // Объединение дисперсий (Чан и др.)
+                double n = (double) valueCount + other.valueCount;
+                double delta = other.mean - mean;
+                mean += delta * other.valueCount / n;
+                m2 += other.m2 + delta * delta * valueCount * other.valueCount / n;
+                if (other.min < min) {
+                    min = other.min;
+                    minTime = other.minTime;
+                }
+                if (other.max > max) {
+                    max = other.max;
+                    maxTime = other.maxTime;
+                }
+            }
+            valueCount += other.valueCount;
+        }
+
+        if (other.changeSamples > 0) {
+            if (changeSamples == 0) {
+                firstValue = other.firstValue;
+            } else if (Double.doubleToLongBits(other.firstValue) != Double.doubleToLongBits(lastValue)) {
+                changes++;
+            }
+            changes += other.changes;
+            lastValue = other.lastValue;
+            changeSamples += other.changeSamples;
+        }
+    }
+
+    /** Сохраняет статистику (для индекса файла) */
+    public void write(DataOutput out) throws IOException {
+        for (int count : new int[]{total, longCount, doubleCount, codeCount, pointCount, unknownCount,
+                pointLess4, pointGreater4, codeLess8, codeGreater8, valueCount, changeSamples, changes}) {
+            out.writeInt(count);
+        }
+        out.writeLong(firstTime);
+        out.writeLong(lastTime);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+        out.writeDouble(min);
+        out.writeLong(minTime);
+        out.writeDouble(max);
+        out.writeLong(maxTime);
+        out.writeDouble(firstValue);
+        out.writeDouble(lastValue);
+    }
+
+    /** Читает статистику, сохранённую {@link #write} */
+    public static TmParamStats read(DataInput in) throws IOException {
+        TmParamStats stats = new TmParamStats();
+        stats.total = in.readInt();
+        stats.longCount = in.readInt();
+        stats.doubleCount = in.readInt();
+        stats.codeCount = in.readInt();
+        stats.pointCount = in.readInt();
+        stats.unknownCount = in.readInt();
+        stats.pointLess4 = in.readInt();
+        stats.pointGreater4 = in.readInt();
+        stats.codeLess8 = in.readInt();
+        stats.codeGreater8 = in.readInt();
+        stats.valueCount = in.readInt();
+        stats.changeSamples = in.readInt();
+        stats.changes = in.readInt();
+        stats.firstTime = in.readLong();
+        stats.lastTime = in.readLong();
+        stats.mean = in.readDouble();
+        stats.m2 = in.readDouble();
+        stats.min = in.readDouble();
+        stats.minTime = in.readLong();
+        stats.max = in.readDouble();
+        stats.maxTime = in.readLong();
+        stats.firstValue = in.readDouble();
+        stats.lastValue = in.readDouble();
+        return stats;
+    }
+
+    public int getTotal() { return total; }
+    public int getLongCount() { return longCount; }
+    public int getDoubleCount() { return doubleCount; }
+    public int getCodeCount() { return codeCount; }
+    public int getPointCount() { return pointCount; }
+    public int getUnknownCount() { return unknownCount; }
+    public int getPointLess4() { return pointLess4; }
+    public int getPointGreater4() { return pointGreater4; }
+    public int getCodeLess8() { return codeLess8; }
+    public int getCodeGreater8() { return codeGreater8; }
+
+    /** Самое раннее время записи (-1, если записей нет) */
+    public long getFirstTime() { return total > 0 ? firstTime : -1; }
+    /** Самое позднее время записи (-1, если записей нет) */
+    public long getLastTime() { return total > 0 ? lastTime : -1; }
+
+    /** Средняя частота записей, записей в секунду (0, если интервал пуст) */
+    public double getSampleRate() {
+        long span = lastTime - firstTime;
+        return total > 1 && span > 0 ? (total - 1) * 1000.0 / span : 0;
+    }
+
+    /** Количество значений Long и Double, вошедших в агрегаты */
+    public int getValueCount() { return valueCount; }
+    public double getMean() { return valueCount > 0 ? mean : Double.NaN; }
+    /** Несмещённая дисперсия */
+    public double getVariance() { return valueCount > 1 ? m2 / (valueCount - 1) : Double.NaN; }
+    public double getStdDev() { return Math.sqrt(getVariance()); }
+    public double getMin() { return min; }
+    public long getMinTime() { return minTime; }
+    public double getMax() { return max; }
+    public long getMaxTime() { return maxTime; }
+    /** Количество смен значения Long/Double/Code относительно предыдущей записи параметра */
+    public int getChanges() { return changes; }
+}
@@ -1,9 +1,12 @@
 package telemetry;
 
+import java.nio.ByteBuffer;
+
 public class TmPoint extends TmDat {
     private int elementSize;   // размер элемента (байт 8)
     private int dataLength;    // длина массива в байтах (байты 10-11)
     private byte[] data;       // сами данные
+    private ByteBuffer dataView; // либо срез отображённого в память файла (без копирования)
 
     public int getElementSize() { return elementSize; }
     public void setElementSize(int elementSize) { this.elementSize = elementSize; }
@@ -11,12 +14,51 @@ public class TmPoint extends TmDat {
     public int getDataLength() { return dataLength; }
     public void setDataLength(int dataLength) { this.dataLength = dataLength; }
 
-    public byte[] getData() { return data; }
-    public void setData(byte[] data) { this.data = data; }
+    /**
+     * Возвращает данные массивом. Если запись хранит только срез файла,
+     * при каждом вызове создаётся копия; для чтения без копирования
+     * используйте {@link #getDataBuffer()}.
+     */
+    public byte[] getData() {
+        if (data == null && dataView != null) {
+            byte[] copy = new byte[dataView.remaining()];
+            dataView.duplicate().get(copy);
+            return copy;
+        }
+        return data;
+    }
+    public void setData(byte[] data) {
+        this.data = data;
+        this.dataView = null;
+    }
+
+    /** Данные в виде буфера только для чтения (срез отображения файла или обёртка массива). */
+    public ByteBuffer getDataBuffer() {
+        if (dataView != null) {
+            return dataView.duplicate();
+        }
+        return data == null ? null : ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+    public void setDataView(ByteBuffer dataView) {
+        this.dataView = dataView;
+        this.data = null;
+    }
 
     @Override
     public String getValueAsString() {
         // По заданию значение не выдаём, только информацию о длине
-        return String.format("Point array: %d bytes (element size %d)", dataLength, elementSize);
+        StringBuilder sb = new StringBuilder(48);
+        appendValueAsString(sb);
+        return sb.toString();
+    }
+
+    // Как "Point array: %d bytes (element size %d)"
+    @Override
+    public void appendValueAsString(StringBuilder sb) {
+        sb.append("Point array: ");
+        TmFormat.appendInt(sb, dataLength);
+        sb.append(" bytes (element size ");
+        TmFormat.appendInt(sb, elementSize);
+        sb.append(')');
     }
 }
@@ -0,0 +1,87 @@
+package telemetry;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Общая область для данных записей Point.
+ * Данные складываются подряд в страницы по 1 МБ; запись не пересекает границу страницы.
+ * Смещение в области - 48-битное число (номер страницы и смещение в ней).
+ * Страницы лежат в куче или, если задана память {@link TmOffHeapMemory}, вне её.
+ */
+public class TmPointArena {
+    private static final int PAGE_SHIFT = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private final TmOffHeapMemory memory;
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private ByteBuffer current;
+    private int used = 0;
+
+    /** Область в куче */
+    public TmPointArena() {
+        this(null);
+    }
+
+    /**
+     * @param memory память для страниц или null для страниц в куче
+     */
+    public TmPointArena(TmOffHeapMemory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * Копирует данные в область.
+     * @return смещение данных в области
+     */
+    public long add(ByteBuffer src, int offset, int length) {
+        if (current == null || used + length > current.capacity()) {
+            current = memory == null ? ByteBuffer.wrap(new byte[PAGE_SIZE]) : memory.allocate(PAGE_SIZE);
+            pages.add(current);
+            used = 0;
+        }
+        long result = ((long) (pages.size() - 1) << PAGE_SHIFT) | used;
+        current.put(used, src, offset, length);
+        used += length;
+        return result;
+    }
+
+    /**
+     * Данные только для чтения: в куче - срез страницы без копирования,
+     * вне кучи - копия в куче, чтобы срез не пережил освобождение памяти
+     */
+    public ByteBuffer view(long offset, int length) {
+        ByteBuffer page = pages.get((int) (offset >>> PAGE_SHIFT));
+        int start = (int) (offset & (PAGE_SIZE - 1));
+        if (memory == null) {
+            return page.slice(start, length).asReadOnlyBuffer();
+        }
+        memory.checkOpen();
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(0, page, start, length);
+        return copy.asReadOnlyBuffer();
+    }
+
+    /** Обрезает последнюю страницу до занятой части */
+    public void trimToSize() {
+        if (current != null && used < current.capacity()) {
+            ByteBuffer trimmed = memory == null ? ByteBuffer.wrap(new byte[used]) : memory.allocate(used);
+            trimmed.put(0, current, 0, used);
+            if (memory != null) {
+                memory.free(current);
+            }
+            current = trimmed;
+            pages.set(pages.size() - 1, current);
+        }
+    }
+
+    /** Занятая областью память в байтах */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (ByteBuffer page : pages) {
+            bytes += page.capacity();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,84 @@
+package telemetry;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Общий интерфейс загрузчиков ТМ-файла (.KNP).
+ * Позволяет окну просмотра работать с любой реализацией декодера.
+ */
+public interface TmReader {
+
+    /**
+     * Загружает данные из ТМ-файла
+     * @param filename путь к файлу
+     * @param dim объект с размерностями
+     * @param datXML объект с данными из XML
+     * @throws IOException при ошибках чтения
+     */
+    void load(String filename, Dim dim, DatXML datXML) throws IOException;
+
+    /** Записи, сгруппированные по имени параметра (имена упорядочены). */
+    Map<String, List<TmDat>> getRecordsByName();
+
+    /**
+     * Записи параметра со временем в [from, to] (включительно), упорядоченные по времени.
+     * Реализация по умолчанию просматривает все записи параметра.
+     * @param name имя параметра, как в {@link #getRecordsByName()}
+     */
+    default List<TmDat> query(String name, long from, long to) {
+        List<TmDat> records = getRecordsByName().get(name);
+        if (records == null) {
+            return Collections.emptyList();
+        }
+        List<TmDat> result = new ArrayList<>();
+        for (TmDat record : records) {
+            if (record.getTime() >= from && record.getTime() <= to) {
+                result.add(record);
+            }
+        }
+        result.sort(Comparator.comparingLong(TmDat::getTime));
+        return result;
+    }
+
+    int getTotalRecords();
+
+    int getServiceRecords();
+
+    int getUsefulRecords();
+
+    int getUnknownRecords();
+
+    /** Количество полезных записей по типам: 0-Long, 1-Double, 2-Code, 3-Point. */
+    int[] getTypeCounts();
+
+    int getPointLess4();
+
+    int getPointGreater4();
+
+    int getCodeLess8();
+
+    int getCodeGreater8();
+
+    /** Количество записей (кроме служебных) по кодам размерности: 256 элементов */
+    int[] getDimensionCounts();
+
+    /**
+     * Статистика параметра (null, если параметра нет).
+     * По умолчанию подсчитывается проходом по записям; загрузчики на {@link TmDecoder}
+     * берут статистику, накопленную при разборе.
+     */
+    default TmParamStats getParamStats(String name) {
+        List<TmDat> records = getRecordsByName().get(name);
+        return records == null ? null : TmParamStats.compute(records);
+    }
+
+    /** Статистика всех параметров, упорядоченная по именам */
+    default Map<String, TmParamStats> getAllParamStats() {
+        Map<String, TmParamStats> result = new TreeMap<>();
+        for (Map.Entry<String, List<TmDat>> entry : getRecordsByName().entrySet()) {
+            result.put(entry.getKey(), TmParamStats.compute(entry.getValue()));
+        }
+        return result;
+    }
+}
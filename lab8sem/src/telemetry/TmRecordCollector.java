@@ -0,0 +1,114 @@
+package telemetry;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Обработчик записей, собирающий их в объекты TmDat -
+ * прежнее поведение ReadTMI: список всех записей и группировка по имени параметра.
+ */
+public class TmRecordCollector implements TmRecordListener {
+    private final Dim dim;
+    /** Хранить ли срезы буфера вместо копий данных Point (для отображённых файлов) */
+    private final boolean pointViews;
+
+    // Результаты
+    private final List<TmDat> allRecords = new ArrayList<>();
+    private final TmRecordGroups groups;
+    /** Отображение "имя -> записи"; строится при первом запросе после добавления записей */
+    private Map<String, List<TmDat>> recordsByName;
+
+    public TmRecordCollector(Dim dim, DatXML datXML) {
+        this(dim, datXML, false);
+    }
+
+    /**
+     * @param pointViews true - записи Point ссылаются на буфер декодера без копирования;
+     *                   допустимо только с {@link TmMappedDecoder}
+     */
+    public TmRecordCollector(Dim dim, DatXML datXML, boolean pointViews) {
+        this.dim = dim;
+        this.pointViews = pointViews;
+        this.groups = new TmRecordGroups(datXML);
+    }
+
+    @Override
+    public void onLong(int param, long time, int dimensionCode, int attribute, int value) {
+        TmLong record = new TmLong();
+        fillCommonFields(record, param, time, dimensionCode, attribute, 0);
+        record.setValue(value);
+        addRecord(record);
+    }
+
+    @Override
+    public void onDouble(int param, long time, int dimensionCode, int attribute, double value) {
+        TmDouble record = new TmDouble();
+        fillCommonFields(record, param, time, dimensionCode, attribute, 1);
+        record.setValue(value);
+        addRecord(record);
+    }
+
+    @Override
+    public void onCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value) {
+        TmCode record = new TmCode();
+        fillCommonFields(record, param, time, dimensionCode, attribute, 2);
+        record.setCodeLength(codeLength);
+        record.setCodeValue(value);
+        addRecord(record);
+    }
+
+    @Override
+    public void onPoint(int param, long time, int dimensionCode, int attribute, int elementSize,
+                        ByteBuffer buf, int offset, int dataLength) {
+        // Размер элемента, как и в ReadTMI, в записи не заполняется
+        TmPoint record = new TmPoint();
+        fillCommonFields(record, param, time, dimensionCode, attribute, 3);
+        record.setDataLength(dataLength);
+        if (pointViews) {
+            record.setDataView(buf.slice(offset, dataLength).asReadOnlyBuffer());
+        } else {
+            byte[] data = new byte[dataLength];
+            buf.get(offset, data);
+            record.setData(data);
+        }
+        addRecord(record);
+    }
+
+    @Override
+    public void onUnknown(int param, long time, int dimensionCode, int attribute, int valueType) {
+        TmUnknown record = new TmUnknown();
+        fillCommonFields(record, param, time, dimensionCode, attribute, valueType);
+        addRecord(record);
+    }
+
+    /**
+     * Заполняет общие поля записи
+     */
+    private void fillCommonFields(TmDat record, int param, long time, int dimensionCode,
+                                  int attribute, int valueType) {
+        record.setNumber(param);
+        record.setName(groups.name(TmColumnStore.key(param, valueType > 3)));
+        record.setTime(time);
+        record.setDimension(dim.getDimensionString(dimensionCode));
+        record.setAttribute(attribute);
+        record.setValueType(valueType);
+    }
+
+    /**
+     * Добавляет запись в коллекции
+     */
+    private void addRecord(TmDat record) {
+        allRecords.add(record);
+        groups.add(TmColumnStore.key(record.getNumber(), record.getValueType() > 3), record);
+        recordsByName = null;
+    }
+
+    public List<TmDat> getAllRecords() { return allRecords; }
+
+    public Map<String, List<TmDat>> getRecordsByName() {
+        if (recordsByName == null) {
+            recordsByName = groups.toRecordsByName();
+        }
+        return recordsByName;
+    }
+}
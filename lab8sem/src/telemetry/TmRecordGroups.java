@@ -0,0 +1,73 @@
+package telemetry;
+
+import java.util.*;
+
+/**
+ * Группировка записей по параметрам с ключом - номером параметра
+ * ({@link TmColumnStore#key}, с признаком неизвестного типа).
+ * Ключ напрямую индексирует массив, поэтому добавление записи не сравнивает строк.
+ * Имя ряда определяется по справочнику один раз при первой встрече ключа,
+ * отображение "имя -> записи", упорядоченное по именам, строится один раз в конце.
+ * Ключи с одинаковым именем попадают в один список, как при группировке по имени.
+ */
+public class TmRecordGroups {
+    private static final int KEY_COUNT = 2 * TmColumnStore.UNKNOWN_FLAG;
+
+    private final DatXML datXML;
+    /** Номер группы ключа плюс один (0 - ключ ещё не встречался) */
+    private final int[] groupOfKey = new int[KEY_COUNT];
+    /** Используется только при первой встрече ключа */
+    private final Map<String, Integer> groupOfName = new HashMap<>();
+    private String[] names = new String[64];
+    private List<List<TmDat>> groups = new ArrayList<>();
+
+    public TmRecordGroups(DatXML datXML) {
+        this.datXML = datXML;
+    }
+
+    private int group(int key) {
+        int g = groupOfKey[key] - 1;
+        if (g < 0) {
+            String name = TmColumnStore.seriesName(key, datXML);
+            Integer existing = groupOfName.get(name);
+            if (existing != null) {
+                g = existing;
+            } else {
+                g = groups.size();
+                groups.add(new ArrayList<>());
+                if (g == names.length) {
+                    names = Arrays.copyOf(names, g * 2);
+                }
+                names[g] = name;
+                groupOfName.put(name, g);
+            }
+            groupOfKey[key] = g + 1;
+        }
+        return g;
+    }
+
+    /** Имя ряда для записей ключа (одна и та же строка для всех записей) */
+    public String name(int key) {
+        int g = group(key);
+        return names[g];
+    }
+
+    /** Добавляет запись в группу ключа */
+    public void add(int key, TmDat record) {
+        groups.get(group(key)).add(record);
+    }
+
+    /**
+     * Отображение "имя -> записи", упорядоченное по именам.
+     * Группы без записей (имя запрошено, запись не добавлена) пропускаются.
+     */
+    public Map<String, List<TmDat>> toRecordsByName() {
+        Map<String, List<TmDat>> result = new TreeMap<>();
+        for (int g = 0; g < groups.size(); g++) {
+            if (!groups.get(g).isEmpty()) {
+                result.put(names[g], groups.get(g));
+            }
+        }
+        return result;
+    }
+}
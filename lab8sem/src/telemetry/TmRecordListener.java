@@ -0,0 +1,38 @@
+package telemetry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Получатель записей, разобранных {@link TmDecoder}.
+ * Записи передаются по одной в порядке следования в файле, поля - примитивами,
+ * поэтому декодер сам ничего не накапливает: обработчик решает, что хранить.
+ * По умолчанию все обработчики ничего не делают.
+ */
+public interface TmRecordListener {
+
+    /** Служебная запись (номер параметра 0xFFFF) */
+    default void onService(long time, int messageType, int valueType) {
+    }
+
+    default void onLong(int param, long time, int dimensionCode, int attribute, int value) {
+    }
+
+    default void onDouble(int param, long time, int dimensionCode, int attribute, double value) {
+    }
+
+    default void onCode(int param, long time, int dimensionCode, int attribute, int codeLength, int value) {
+    }
+
+    /**
+     * Запись Point. Данные лежат в буфере начиная с offset. Буфер чтения
+     * переиспользуется после возврата из метода (кроме {@link TmMappedDecoder},
+     * где это отображение файла), так что данные нужно скопировать или обработать сразу.
+     */
+    default void onPoint(int param, long time, int dimensionCode, int attribute, int elementSize,
+                         ByteBuffer buf, int offset, int dataLength) {
+    }
+
+    /** Запись с неизвестным типом значения (4..15) */
+    default void onUnknown(int param, long time, int dimensionCode, int attribute, int valueType) {
+    }
+}
@@ -0,0 +1,91 @@
+package telemetry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Временной ряд одного параметра в столбцовом виде.
+ * Значение записи хранится как "сырое" 64-битное число, способ его
+ * толкования зависит от типа значения:
+ * Long и Code - 32-разрядное значение (для Code в битах 32-39 лежит длина кода),
+ * Double - биты числа, Point - ссылка на данные (длина в битах 48-63).
+ */
+public interface TmSeries {
+    /** Количество записей в ряду */
+    int size();
+
+    long getTime(int index);
+
+    /** Тип значения (0..3, у записей неизвестного типа - 4..15) */
+    int getValueType(int index);
+
+    int getAttribute(int index);
+
+    int getDimensionCode(int index);
+
+    long getRawValue(int index);
+
+    /** Данные записи Point (буфер только для чтения) */
+    ByteBuffer getPointData(int index);
+
+    /** Записи упорядочены по времени */
+    boolean isSortedByTime();
+
+    /**
+     * Индекс первой записи со временем не меньше time
+     * (ряд должен быть упорядочен по времени)
+     */
+    default int lowerBound(long time) {
+        int low = 0, high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTime(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Индекс первой записи со временем больше time
+     * (ряд должен быть упорядочен по времени)
+     */
+    default int upperBound(long time) {
+        return time == Long.MAX_VALUE ? size() : lowerBound(time + 1);
+    }
+
+    default int getLongValue(int index) {
+        return (int) getRawValue(index);
+    }
+
+    default double getDoubleValue(int index) {
+        return Double.longBitsToDouble(getRawValue(index));
+    }
+
+    default int getCodeValue(int index) {
+        return (int) getRawValue(index);
+    }
+
+    default int getCodeLength(int index) {
+        return (int) (getRawValue(index) >>> 32) & 0xFF;
+    }
+
+    default int getPointLength(int index) {
+        return (int) (getRawValue(index) >>> 48);
+    }
+
+    // Упаковка значений в "сырое" представление
+
+    static long packCode(int codeLength, int value) {
+        return ((long) codeLength << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    static long packPoint(long offset, int dataLength) {
+        return ((long) dataLength << 48) | offset;
+    }
+
+    static long pointOffset(long rawValue) {
+        return rawValue & 0xFFFF_FFFF_FFFFL;
+    }
+}
@@ -0,0 +1,113 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичный снимок справочника, сохраняемый рядом с исходным файлом ("имя.snap").
+ * В заголовке записаны вид снимка, размер, время изменения и CRC32 исходного файла;
+ * снимок используется, только пока они совпадают. Снимок читается отображением
+ * файла в память, тело разбирает сам справочник.
+ */
+public final class TmSnapshotFile {
+    /** Расширение файла снимка */
+    public static final String EXTENSION = ".snap";
+    private static final int MAGIC = 0x544D534E; // "TMSN"
+    private static final int VERSION = 1;
+
+    /** Вид снимка: справочник параметров */
+    public static final int KIND_DAT_XML = 1;
+    /** Вид снимка: таблица размерностей */
+    public static final int KIND_DIM = 2;
+
+    /** Тело снимка */
+    public interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private TmSnapshotFile() {
+    }
+
+    public static Path snapshotPath(String source) {
+        return Paths.get(source + EXTENSION);
+    }
+
+    /**
+     * Отображает снимок исходного файла, если он есть и действителен
+     * @return буфер, установленный на начало тела, или null
+     */
+    public static ByteBuffer open(String source, int kind) throws IOException {
+        Path snapshot = snapshotPath(source);
+        if (!Files.exists(snapshot)) {
+            return null;
+        }
+        Path file = Paths.get(source);
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buf.remaining() < 36 || buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getInt() != kind) {
+            return null;
+        }
+        long size = buf.getLong();
+        long modified = buf.getLong();
+        long hash = buf.getLong();
+        if (size != Files.size(file) || modified != Files.getLastModifiedTime(file).toMillis()
+                || hash != crc(file)) {
+            return null;
+        }
+        return buf;
+    }
+
+    /** Записывает снимок исходного файла (через временный файл) */
+    public static void write(String source, int kind, Body body) throws IOException {
+        Path file = Paths.get(source);
+        Path snapshot = snapshotPath(source);
+        Path tmp = Paths.get(snapshot + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(kind);
+            out.writeLong(Files.size(file));
+            out.writeLong(Files.getLastModifiedTime(file).toMillis());
+            out.writeLong(crc(file));
+            body.write(out);
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        return crc.getValue();
+    }
+
+    // Массивы int в теле снимка: количество, затем элементы
+
+    public static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    public static int[] readInts(ByteBuffer buf) {
+        return getInts(buf, buf.getInt());
+    }
+
+    /** Читает count чисел int с текущей позиции буфера */
+    static int[] getInts(ByteBuffer buf, int count) {
+        int[] values = new int[count];
+        IntBuffer ints = buf.asIntBuffer();
+        ints.get(values);
+        buf.position(buf.position() + 4 * count);
+        return values;
+    }
+}
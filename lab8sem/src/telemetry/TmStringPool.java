@@ -0,0 +1,113 @@
+package telemetry;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Пул строк справочника: каждая различная строка хранится один раз
+ * и задаётся номером. Пул, прочитанный из снимка ({@link TmSnapshotFile}),
+ * декодирует строку из отображённого файла только при первом обращении к ней.
+ */
+public class TmStringPool {
+    /** Номер отсутствующей строки */
+    public static final int NONE = -1;
+
+    private final Map<String, Integer> ids;
+    private String[] strings;
+    private int size;
+
+    // Строки в отображённом снимке: смещения начал (и конца последней) в data
+    private final ByteBuffer data;
+    private final int[] offsets;
+
+    public TmStringPool() {
+        this.ids = new HashMap<>();
+        this.strings = new String[64];
+        this.data = null;
+        this.offsets = null;
+    }
+
+    private TmStringPool(ByteBuffer data, int[] offsets) {
+        this.ids = null;
+        this.size = offsets.length - 1;
+        this.strings = new String[size];
+        this.data = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Добавляет строку (повторная строка получает прежний номер)
+     * @return номер строки или NONE для null
+     */
+    public int add(String s) {
+        if (s == null) {
+            return NONE;
+        }
+        if (ids == null) {
+            throw new IllegalStateException("Пул из снимка только для чтения");
+        }
+        Integer id = ids.get(s);
+        if (id != null) {
+            return id;
+        }
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+        strings[size] = s;
+        ids.put(s, size);
+        return size++;
+    }
+
+    /** Строка по номеру или null для NONE */
+    public String get(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        String s = strings[id];
+        if (s == null) {
+            byte[] bytes = new byte[offsets[id + 1] - offsets[id]];
+            data.get(offsets[id], bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Записывает пул: количество, смещения и байты строк в UTF-8 */
+    public void write(DataOutputStream out) throws IOException {
+        byte[][] encoded = new byte[size][];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            encoded[i] = get(i).getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+        }
+        out.writeInt(size);
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            out.writeInt(offset);
+            offset += encoded[i].length;
+        }
+        out.writeInt(total);
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Пул поверх буфера снимка без декодирования строк;
+     * позиция буфера переходит за конец пула
+     */
+    public static TmStringPool map(ByteBuffer buf) {
+        int count = buf.getInt();
+        int[] offsets = TmSnapshotFile.getInts(buf, count + 1);
+        ByteBuffer data = buf.slice(buf.position(), offsets[count]);
+        buf.position(buf.position() + offsets[count]);
+        return new TmStringPool(data, offsets);
+    }
+}
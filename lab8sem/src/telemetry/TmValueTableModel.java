@@ -0,0 +1,67 @@
+package telemetry;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+
+/**
+ * Модель таблицы значений параметра поверх списка записей ряда.
+ * Строки не хранятся: текст ячейки формируется при отрисовке,
+ * поэтому открытие ряда из миллионов записей не зависит от его размера.
+ */
+public class TmValueTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"Время", "Значение", "Размерность", "Атрибут"};
+
+    private final String name;
+    private final List<TmDat> records;
+
+    // Последняя запрошенная запись: ячейки строки отрисовываются подряд,
+    // а представления рядов создают объект записи при каждом обращении
+    private int lastRow = -1;
+    private TmDat lastRecord;
+
+    public TmValueTableModel(String name, List<TmDat> records) {
+        this.name = name;
+        this.records = records;
+    }
+
+    public String getName() { return name; }
+
+    public List<TmDat> getRecords() { return records; }
+
+    @Override
+    public int getRowCount() {
+        return records.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        TmDat record = getRecord(row);
+        switch (column) {
+            case 0: return TmDat.formatTime(record.getTime());
+            case 1: return record.getValueText();
+            case 2: return record.getDimension();
+            case 3: return record.getAttribute();
+            default: return null;
+        }
+    }
+
+    /** Запись строки таблицы */
+    public TmDat getRecord(int row) {
+        if (row != lastRow) {
+            lastRecord = records.get(row);
+            lastRow = row;
+        }
+        return lastRecord;
+    }
+}